@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.LogExporter;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatTextFactory;
+import net.daverix.logcatviewer.ParseException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures LogcatTextFactory.create, which builds the text that is shared, on large selections,
+ * against streaming the same text through a LogExporter with and without compression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ExportBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int selectionSize;
+
+    private List<LogItem> mItems;
+    private LogcatTextFactory mTextFactory;
+    private LogExporter mExporter;
+    private LogExporter mCompressingExporter;
+    private final CountingOutputStream mOutputStream = new CountingOutputStream();
+
+    @Setup
+    public void setUp() throws ParseException {
+        LogItemFactory factory = new LogcatItemFactory();
+        mItems = new ArrayList<LogItem>(selectionSize);
+        for(String line : new LogcatCorpus(42, 0).generate(selectionSize)) {
+            mItems.add(factory.create(line));
+        }
+        mTextFactory = new LogcatTextFactory();
+        mExporter = new LogExporter(new LogcatTextFactory());
+        mCompressingExporter = new LogExporter(new LogcatTextFactory());
+        mCompressingExporter.setCompressed(true);
+    }
+
+    @Benchmark
+    public String create() {
+        return mTextFactory.create(mItems);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        mExporter.export(mItems, mOutputStream, null);
+        return mOutputStream.mCount;
+    }
+
+    @Benchmark
+    public long exportCompressed() throws IOException {
+        mCompressingExporter.export(mItems, mOutputStream, null);
+        return mOutputStream.mCount;
+    }
+
+    /**
+     * Only counts the bytes, so the export is measured without the file system
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long mCount;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+}
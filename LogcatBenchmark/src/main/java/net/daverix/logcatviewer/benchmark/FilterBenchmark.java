@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogPriorityFilter;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.tests.StoreLogHandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures LogPriorityFilter.getFilteredItems on stores of different sizes, both for a new
+ * filter that has to index every item and for a filter that is already up to date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FilterBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int itemCount;
+
+    private StoreLogHandler mLogHandler;
+    private LogPriorityFilter mFilter;
+
+    @Setup
+    public void setUp() throws ParseException {
+        LogStore store = new ColumnarLogStore(itemCount, Long.MAX_VALUE);
+        LogItemFactory factory = new LogcatItemFactory();
+        for(String line : new LogcatCorpus(42, 0).generate(itemCount)) {
+            store.append(factory.create(line));
+        }
+        mLogHandler = new StoreLogHandler(store);
+        mFilter = new LogPriorityFilter(mLogHandler);
+        mFilter.getFilteredItems(Priority.VERBOSE);
+    }
+
+    @Benchmark
+    public List<LogItem> newFilter() {
+        return new LogPriorityFilter(mLogHandler).getFilteredItems(Priority.WARNING);
+    }
+
+    @Benchmark
+    public List<LogItem> verbose() {
+        return mFilter.getFilteredItems(Priority.VERBOSE);
+    }
+
+    @Benchmark
+    public List<LogItem> warning() {
+        return mFilter.getFilteredItems(Priority.WARNING);
+    }
+}
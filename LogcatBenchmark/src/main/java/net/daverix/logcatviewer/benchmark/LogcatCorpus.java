@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.SyntheticLogSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a reproducible logcat corpus in the "-v time" format with a
+ * {@link SyntheticLogSource} that starts at a fixed time. The same seed always gives the same
+ * lines, so numbers from different runs can be compared.
+ */
+public class LogcatCorpus {
+    // 10-12 15:30 in the default time zone of the source
+    private static final long START_TIME = 1381591800000L;
+
+    private final SyntheticLogSource mSource;
+
+    /**
+     * @param seed seed for the random generator
+     * @param stackTraceRatio share of entries, between 0 and 1, that are multi-line stack traces
+     */
+    public LogcatCorpus(long seed, double stackTraceRatio) {
+        mSource = new SyntheticLogSource(seed, 0);
+        mSource.setStackTraceRatio(stackTraceRatio);
+        mSource.setStartTime(START_TIME);
+    }
+
+    /**
+     * Generates count lines, the last stack trace can be cut short.
+     */
+    public List<String> generate(int count) {
+        mSource.setLineLimit(count);
+        List<String> lines = new ArrayList<String>(count);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(mSource.open(), "UTF-8"));
+            try {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // the lines are generated in memory
+            throw new IllegalStateException("could not generate the corpus", e);
+        }
+        return lines;
+    }
+}
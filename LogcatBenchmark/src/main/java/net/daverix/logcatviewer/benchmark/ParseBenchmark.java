@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.RegexLogcatItemFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many lines per millisecond LogcatItemFactory parses, with the regex based
+ * factory it replaced as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    private String[] mLines;
+    private int mIndex;
+    private LogItemFactory mFastFactory;
+    private LogItemFactory mRegexFactory;
+
+    @Setup
+    public void setUp() {
+        mLines = new LogcatCorpus(42, 0.02).generate(10000).toArray(new String[0]);
+        mFastFactory = new LogcatItemFactory();
+        mRegexFactory = new RegexLogcatItemFactory();
+    }
+
+    @Benchmark
+    public LogItem fastFactory() throws ParseException {
+        return mFastFactory.create(nextLine());
+    }
+
+    @Benchmark
+    public LogItem regexFactory() throws ParseException {
+        return mRegexFactory.create(nextLine());
+    }
+
+    private String nextLine() {
+        String line = mLines[mIndex];
+        mIndex = (mIndex + 1) % mLines.length;
+        return line;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogSearchIndex;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.ParseException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read loop of LogcatHandler: parsing, merging of multi-line entries such as
+ * stack traces, appending to the store and optionally indexing for search. Scores are
+ * nanoseconds per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+    private static final int LINE_COUNT = 10000;
+
+    private String[] mLines;
+
+    @Setup
+    public void setUp() {
+        mLines = new LogcatCorpus(42, 0.05).generate(LINE_COUNT).toArray(new String[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public LogStore read() throws ParseException {
+        return read(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public LogStore readAndIndex() throws ParseException {
+        return read(new LogSearchIndex());
+    }
+
+    private LogStore read(LogSearchIndex searchIndex) throws ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, searchIndex, null);
+        for(int i = 0; i < LINE_COUNT; i++) {
+            reader.readLine(mLines[i]);
+        }
+        reader.flush();
+        return store;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.benchmark;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogPipeline;
+import net.daverix.logcatviewer.LogSearchIndex;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.SyntheticLogSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end ingestion from a SyntheticLogSource that emits as fast as it can: decoding
+ * the stream, parsing, merging, storing and indexing. Scores are nanoseconds per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceBenchmark {
+    private static final int LINE_COUNT = 100000;
+
+    @Param({"0.0", "0.05"})
+    public double stackTraceRatio;
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public LogStore ingest() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, new LogSearchIndex(), null);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(createSource().open(), "UTF-8"));
+        try {
+            logcatReader.read(reader);
+        } finally {
+            reader.close();
+        }
+        return store;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public LogStore ingestBytes() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, new LogSearchIndex(), null);
+        InputStream inputStream = createSource().open();
+        try {
+            logcatReader.read(Channels.newChannel(inputStream));
+        } finally {
+            inputStream.close();
+        }
+        return store;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINE_COUNT)
+    public LogStore ingestPipeline() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, new LogSearchIndex(), null);
+        InputStream inputStream = createSource().open();
+        try {
+            new LogPipeline(new LogcatItemFactory()).read(Channels.newChannel(inputStream), logcatReader);
+        } finally {
+            inputStream.close();
+        }
+        return store;
+    }
+
+    private SyntheticLogSource createSource() {
+        SyntheticLogSource source = new SyntheticLogSource(42, 0);
+        source.setStackTraceRatio(stackTraceRatio);
+        source.setLineLimit(LINE_COUNT);
+        return source;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link LogStore} that keeps the recent items in another store and writes every item to a
+ * {@link LogArchive} as well. {@link #restore()} takes over the most recent archived items with
+ * their sequence numbers, so a restarted service shows its history without reading logcat again.
+ * Items that have been evicted from the store can still be looked up with {@link #get(long)} as
+ * long as they are in the archive.
+ *
+ * Opening the archive and restoring the items reads from the storage, so both are left to
+ * {@link #restore()} which should be called on a background thread. The first append restores
+ * the items if it hasn't been done yet.
+ *
+ * If the archive can't be opened or written to, for example when the storage is full, the store
+ * goes on without it, see {@link #getArchiveError()}.
+ */
+public class ArchiveLogStore implements LogStore {
+    private final LogStore mStore;
+    private final File mDirectory;
+    private final TagPool mTagPool;
+    private volatile LogArchive mArchive;
+    private volatile IOException mArchiveError;
+    private boolean mRestored;
+    private volatile boolean mClosed;
+
+    /**
+     * @param store where the recent items are kept, it is cleared if there are archived items
+     * @param archive where all items are written
+     */
+    public ArchiveLogStore(LogStore store, LogArchive archive) {
+        if(store == null)
+            throw new IllegalArgumentException("store is null");
+
+        if(archive == null)
+            throw new IllegalArgumentException("archive is null");
+
+        mStore = store;
+        mDirectory = null;
+        mTagPool = null;
+        mArchive = archive;
+    }
+
+    /**
+     * Opens the archive in the directory when {@link #restore()} is called, so it can be created
+     * on the main thread.
+     *
+     * @param store where the recent items are kept, it is cleared if there are archived items
+     * @param directory directory of the {@link LogArchive}
+     * @param tagPool pool the tags of the archived items are shared through
+     */
+    public ArchiveLogStore(LogStore store, File directory, TagPool tagPool) {
+        if(store == null)
+            throw new IllegalArgumentException("store is null");
+
+        if(directory == null)
+            throw new IllegalArgumentException("directory is null");
+
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mStore = store;
+        mDirectory = directory;
+        mTagPool = tagPool;
+    }
+
+    /**
+     * Opens the archive if needed and takes over the most recent archived items. Only the first
+     * call does anything. Decodes up to {@link #getCapacity()} items, so don't call it on the
+     * main thread.
+     */
+    public synchronized void restore() {
+        if(mRestored)
+            return;
+
+        mRestored = true;
+        if(mArchive == null) {
+            try {
+                mArchive = new LogArchive(mDirectory, mTagPool);
+            } catch (IOException e) {
+                mArchiveError = e;
+                return;
+            }
+        }
+
+        long nextSequence = mArchive.getNextSequence();
+        if(nextSequence < mStore.getNextSequence()) {
+            // the numbers can't be taken over, start the archive over instead
+            mArchive.clear();
+            return;
+        }
+
+        long firstSequence = Math.max(mArchive.getFirstSequence(), nextSequence - mStore.getCapacity());
+        mStore.clear(firstSequence);
+        for(LogItem item : mArchive.read(firstSequence, (int) (nextSequence - firstSequence))) {
+            mStore.append(item);
+        }
+    }
+
+    /**
+     * @return the archive the items are written to, null if it hasn't been opened yet
+     */
+    public LogArchive getArchive() {
+        return mArchive;
+    }
+
+    /**
+     * Closes the archive, items appended after this are only kept in the store.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        if(mArchive != null) {
+            mArchive.close();
+        }
+    }
+
+    /**
+     * @return the error that stopped items from being archived or null
+     */
+    public IOException getArchiveError() {
+        return mArchiveError;
+    }
+
+    @Override
+    public synchronized long append(LogItem item) {
+        restore();
+        long sequence = mStore.append(item);
+        archive(sequence, item);
+        return sequence;
+    }
+
+    @Override
+    public synchronized void updateMessage(long sequence, String message) {
+        mStore.updateMessage(sequence, message);
+
+        // only the last item gets lines added, the archive replaces its record
+        LogItem item = mStore.get(sequence);
+        if(item != null && sequence == mStore.getNextSequence() - 1) {
+            archive(sequence, item);
+        }
+    }
+
+    private void archive(long sequence, LogItem item) {
+        if(mArchiveError != null || mArchive == null || mClosed)
+            return;
+
+        try {
+            mArchive.write(sequence, item);
+        } catch (IOException e) {
+            mArchiveError = e;
+        }
+    }
+
+    @Override
+    public LogItem get(long sequence) {
+        LogItem item = mStore.get(sequence);
+        if(item == null && sequence < mStore.getFirstSequence()) {
+            LogArchive archive = mArchive;
+            if(archive != null && !mClosed) {
+                item = archive.get(sequence);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * @return copy of the items in the store, not the whole archive
+     */
+    @Override
+    public List<LogItem> getItems() {
+        return mStore.getItems();
+    }
+
+    @Override
+    public List<LogItem> getItemsSince(long sequence) {
+        return mStore.getItemsSince(sequence);
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return mStore.getFirstSequence();
+    }
+
+    @Override
+    public long getNextSequence() {
+        return mStore.getNextSequence();
+    }
+
+    @Override
+    public int size() {
+        return mStore.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return mStore.getCapacity();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return mStore.getEvictedCount();
+    }
+
+    @Override
+    public long getDroppedUpdateCount() {
+        return mStore.getDroppedUpdateCount();
+    }
+
+    /**
+     * Removes all items from the store and the archive.
+     */
+    @Override
+    public synchronized void clear() {
+        restore();
+        mStore.clear();
+        if(mArchive != null && !mClosed) {
+            mArchive.clear();
+        }
+    }
+
+    @Override
+    public synchronized void clear(long nextSequence) {
+        restore();
+        mStore.clear(nextSequence);
+        if(mArchive != null && !mClosed) {
+            mArchive.clear();
+        }
+    }
+}
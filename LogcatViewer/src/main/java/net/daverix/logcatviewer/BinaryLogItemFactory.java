@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the logger_entry records written by "logcat -B" instead of parsing text. Each record
+ * is a little-endian header followed by a payload of a priority byte, the tag and the message,
+ * both terminated by a zero byte:
+ *
+ * <pre>
+ * uint16 payload length
+ * uint16 header size, 0 in the first version where the header is always 20 bytes
+ * int32  pid
+ * int32  tid
+ * int32  seconds
+ * int32  nanoseconds
+ * ...    more fields in later versions, skipped using the header size
+ * </pre>
+ *
+ * Compared to the "-v time" text this keeps the year, the thread id and tags with any characters,
+ * and multi-line messages arrive as one record so they never have to be merged.
+ */
+public class BinaryLogItemFactory implements LogItemFactory {
+    private static final int V1_HEADER_SIZE = 20;
+
+    // android_LogPriority, starting at ANDROID_LOG_VERBOSE
+    private static final int FIRST_PRIORITY = 2;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final TagPool mTagPool;
+
+    public BinaryLogItemFactory() {
+        this(new TagPool());
+    }
+
+    public BinaryLogItemFactory(TagPool tagPool) {
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mTagPool = tagPool;
+    }
+
+    /**
+     * Binary records have no text form, use {@link #create(ByteBuffer)}.
+     */
+    @Override
+    public LogItem create(String line) throws ParseException {
+        throw new ParseException("binary log entries can't be parsed from a line");
+    }
+
+    /**
+     * Decodes the record at the position of the buffer and moves the position past it.
+     *
+     * @param buffer buffer holding the records read from "logcat -B"
+     * @return the decoded item or null if the buffer doesn't hold the whole record yet, the
+     *         position is not changed then
+     * @throws ParseException if the record is malformed, the position is moved past it using its
+     *         payload length so the next record can still be read
+     */
+    public LogItem create(ByteBuffer buffer) throws ParseException {
+        if(buffer == null)
+            throw new ParseException("buffer is null");
+
+        final int start = buffer.position();
+        final int remaining = buffer.remaining();
+        if(remaining < 4)
+            return null;
+
+        int payloadLength = getUnsignedShort(buffer, start);
+        int headerSize = getUnsignedShort(buffer, start + 2);
+        if(headerSize == 0) {
+            headerSize = V1_HEADER_SIZE;
+        }
+
+        // a record with a broken header size is skipped as if it had the first version header
+        int invalidHeaderSize = -1;
+        if(headerSize < V1_HEADER_SIZE) {
+            invalidHeaderSize = headerSize;
+            headerSize = V1_HEADER_SIZE;
+        }
+
+        if(remaining < headerSize + payloadLength)
+            return null;
+
+        if(invalidHeaderSize >= 0) {
+            buffer.position(start + headerSize + payloadLength);
+            throw new ParseException("invalid log entry header size " + invalidHeaderSize);
+        }
+
+        int pid = getInt(buffer, start + 4);
+        int tid = getInt(buffer, start + 8);
+        long seconds = getInt(buffer, start + 12) & 0xFFFFFFFFL;
+        int nanos = getInt(buffer, start + 16);
+
+        final int payloadStart = start + headerSize;
+        final int payloadEnd = payloadStart + payloadLength;
+        if(payloadLength < 1) {
+            buffer.position(payloadEnd);
+            throw new ParseException("log entry without payload");
+        }
+
+        Priority priority = getPriority(buffer.get(payloadStart));
+
+        int tagStart = payloadStart + 1;
+        int tagEnd = indexOfZero(buffer, tagStart, payloadEnd);
+        int messageStart = Math.min(tagEnd + 1, payloadEnd);
+        int messageEnd = indexOfZero(buffer, messageStart, payloadEnd);
+        while(messageEnd > messageStart && buffer.get(messageEnd - 1) == '\n') {
+            messageEnd--;
+        }
+
+        String tag = mTagPool.intern(buffer, tagStart, tagEnd);
+        byte[] message = new byte[messageEnd - messageStart];
+        buffer.position(messageStart);
+        buffer.get(message);
+        buffer.position(payloadEnd);
+
+        long timestamp = seconds * 1000 + nanos / 1000000;
+        return new LogcatItem(priority, tag, timestamp, message, pid, tid);
+    }
+
+    private static int indexOfZero(ByteBuffer buffer, int start, int end) {
+        for(int i = start; i < end; i++) {
+            if(buffer.get(i) == 0)
+                return i;
+        }
+        return end;
+    }
+
+    private static Priority getPriority(byte priority) {
+        // unknown and default priorities are shown as verbose
+        int index = Math.max(0, priority - FIRST_PRIORITY);
+        return PRIORITIES[Math.min(index, Priority.SILENT.ordinal())];
+    }
+
+    private static int getUnsignedShort(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8;
+    }
+
+    private static int getInt(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xFF) |
+                (buffer.get(index + 1) & 0xFF) << 8 |
+                (buffer.get(index + 2) & 0xFF) << 16 |
+                (buffer.get(index + 3) & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the binary output of "logcat -B" running on the device. Use it together with a
+ * {@link BinaryLogItemFactory}.
+ */
+public class BinaryLogSource implements ResumableLogSource, FilterableLogSource {
+    private final ProcessLogSource mProcessLogSource;
+
+    public BinaryLogSource() {
+        mProcessLogSource = new ProcessLogSource("logcat", "-B");
+    }
+
+    /**
+     * @see ProcessLogSource#setStartTimeSupported(boolean)
+     */
+    public void setStartTimeSupported(boolean startTimeSupported) {
+        mProcessLogSource.setStartTimeSupported(startTimeSupported);
+    }
+
+    /**
+     * @see ProcessLogSource#setPidFilterSupported(boolean)
+     */
+    public void setPidFilterSupported(boolean pidFilterSupported) {
+        mProcessLogSource.setPidFilterSupported(pidFilterSupported);
+    }
+
+    @Override
+    public boolean setFilterSpec(LogFilterSpec spec) {
+        return mProcessLogSource.setFilterSpec(spec);
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return mProcessLogSource.open();
+    }
+
+    @Override
+    public InputStream open(long startMillis) throws IOException {
+        return mProcessLogSource.open(startMillis);
+    }
+}
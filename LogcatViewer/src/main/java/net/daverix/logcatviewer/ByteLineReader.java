@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Splits the bytes read from a channel into lines without decoding them. The bytes are read into
+ * a reusable direct buffer which grows when a single line doesn't fit.
+ */
+class ByteLineReader {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private ByteLineReader() {
+    }
+
+    /**
+     * Reads lines until the end of the channel or until the thread is interrupted. A last line
+     * without line terminator is handed over as well.
+     *
+     * @param channel the channel to read from
+     * @param handler gets every line without its "\n" or "\r\n" terminator
+     * @return true if the end of the channel was reached, false if the thread was interrupted
+     */
+    public static boolean read(ReadableByteChannel channel, LineHandler handler) throws IOException, ParseException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        int scanned = 0;
+        try {
+            while(channel.read(buffer) >= 0) {
+                int limit = buffer.position();
+                int lineStart = 0;
+                for(int i = scanned; i < limit; i++) {
+                    if(buffer.get(i) == '\n') {
+                        handler.onLine(buffer, lineStart, trimCarriageReturn(buffer, lineStart, i));
+                        lineStart = i + 1;
+                    }
+                }
+
+                // keep the start of an unfinished line, grow the buffer if it is full of it
+                buffer.limit(limit);
+                buffer.position(lineStart);
+                buffer.compact();
+                scanned = buffer.position();
+                if(!buffer.hasRemaining()) {
+                    buffer = grow(buffer);
+                }
+                handler.onLinesRead();
+
+                if(Thread.interrupted()) {
+                    return false;
+                }
+            }
+        } catch (ClosedByInterruptException e) {
+            return false;
+        }
+
+        if(buffer.position() > 0) {
+            handler.onLine(buffer, 0, trimCarriageReturn(buffer, 0, buffer.position()));
+        }
+        return true;
+    }
+
+    /**
+     * @return a buffer twice as large holding the bytes before the position of the given one,
+     *         positioned after them
+     */
+    static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static int trimCarriageReturn(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] prefix) {
+        if(end - start < prefix.length)
+            return false;
+
+        for(int i = 0; i < prefix.length; i++) {
+            if(buffer.get(start + i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the lines that are read
+     */
+    public interface LineHandler {
+        /**
+         * @param buffer buffer holding the line, it is reused for the next line
+         * @param start index of the first byte of the line
+         * @param end index after the last byte of the line
+         */
+        public void onLine(ByteBuffer buffer, int start, int end) throws IOException, ParseException;
+
+        /**
+         * Called after the lines of every read from the channel have been handed over, before
+         * reading again which may block.
+         */
+        public void onLinesRead() throws IOException, ParseException;
+    }
+}
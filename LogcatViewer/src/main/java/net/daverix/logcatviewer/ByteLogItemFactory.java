@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LogItemFactory} that can also parse lines straight from the bytes read from logcat,
+ * without decoding them to a String first.
+ */
+public interface ByteLogItemFactory extends LogItemFactory {
+    /**
+     * @param buffer buffer holding the UTF-8 encoded line, its position and limit are left as
+     *               they are
+     * @param start index of the first byte of the line
+     * @param end index after the last byte of the line, without line terminator
+     * @return the parsed log item, it must not refer to the buffer as it is reused
+     */
+    public LogItem create(ByteBuffer buffer, int start, int end) throws ParseException;
+
+    /**
+     * Same as {@link #create(ByteBuffer, int, int)} but reports a line that can't be parsed
+     * through the result instead of throwing.
+     *
+     * @param result where the item or the reason the line couldn't be parsed is put
+     * @return the status of the result, {@link ParseResult#OK} if the line was parsed
+     */
+    public int create(ByteBuffer buffer, int start, int end, ParseResult result);
+}
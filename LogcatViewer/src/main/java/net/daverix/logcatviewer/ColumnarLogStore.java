@@ -0,0 +1,776 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link LogStore} that keeps the fields of the items in parallel primitive arrays instead of
+ * one object per item. Tags are stored as ids into a {@link TagPool} and messages are UTF-8
+ * encoded into shared chunks of bytes. A chunk is compressed when it is full, log messages repeat
+ * a lot so they take a fraction of the bytes, and the last few chunks that are read are kept
+ * inflated. The {@link LogItem}s handed out are small views of an index in the arrays that are
+ * created on demand and read the fields from the store. A message is decoded again every time it
+ * is asked for, which inflates a whole chunk if it isn't one of the last few read, so keep it
+ * when it is needed more than once like {@link LogRowCache} does.
+ *
+ * Reading never takes a lock. The arrays are split into segments that are never reused, and a
+ * volatile high-water mark is raised after an item has been written, so a reader that has seen
+ * the mark sees every item below it. The location of a message is one atomic value that is
+ * replaced when the message is updated, and a chunk of message bytes is never written again
+ * where a message has been written, only replaced by the same bytes compressed.
+ * {@link #getItems()} and {@link #getItemsSince(long)} don't copy anything, they return a view of
+ * the segments that were there when it was taken.
+ *
+ * The oldest items are evicted when the maximum number of items or the byte budget is exceeded.
+ * Writing is serialized by the lock of the store.
+ */
+public class ColumnarLogStore implements LogStore {
+    static final int SEGMENT_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // the length of a message location that stands for a chunk of its own
+    private static final int WHOLE_CHUNK = 0xFFFF;
+    // chunks kept inflated for reading, a few so rows around the shown ones don't inflate again
+    private static final int INFLATED_CHUNK_COUNT = 4;
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final LogBuffer[] BUFFERS = LogBuffer.values();
+
+    private final int mCapacity;
+    private final int mSegmentSize;
+    private final long mByteBudget;
+    private final TagPool mTagPool;
+
+    // written before the high-water mark, a segment found in a slot is checked against the
+    // sequence numbers it should hold
+    private volatile Segment[] mSegments;
+    private volatile MessageTable mMessageTable;
+    private final AtomicReferenceArray<Inflated> mInflated = new AtomicReferenceArray<Inflated>(INFLATED_CHUNK_COUNT);
+    private volatile String[] mTags = new String[64];
+    private volatile long mFirstSequence;
+    private volatile long mNextSequence;
+    private volatile long mEvictedCount;
+    private volatile long mDroppedUpdateCount;
+    private volatile long mChunkBytes;
+    // odd while the store is being cleared, readers try again if it changed while they read
+    private volatile int mGeneration;
+
+    // the message arena, only used while holding the lock, chunk numbers keep increasing as
+    // chunks are added and freed
+    private int[] mChunkReferences = new int[16];
+    private int mChunkCount;
+    private int mChunkUsed;
+
+    public ColumnarLogStore(int capacity, long byteBudget) {
+        this(capacity, byteBudget, new TagPool());
+    }
+
+    /**
+     * @param capacity maximum number of items
+     * @param byteBudget maximum number of bytes used for messages
+     * @param tagPool pool for the tags, share it with the {@link LogItemFactory} to avoid keeping
+     *                the tags twice
+     */
+    public ColumnarLogStore(int capacity, long byteBudget, TagPool tagPool) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("capacity must be greater than zero");
+
+        if(byteBudget <= 0)
+            throw new IllegalArgumentException("byteBudget must be greater than zero");
+
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mCapacity = capacity;
+        mSegmentSize = Math.min(capacity, SEGMENT_SIZE);
+        mByteBudget = byteBudget;
+        mTagPool = tagPool;
+        mSegments = createSegments();
+        mMessageTable = new MessageTable(0, new Chunk[16]);
+    }
+
+    private Segment[] createSegments() {
+        // the items kept never span more segments than this, so a slot is only reused when all
+        // items of its segment have been evicted
+        return new Segment[(mCapacity + mSegmentSize - 1) / mSegmentSize + 1];
+    }
+
+    @Override
+    public synchronized long append(LogItem item) {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        long sequence = mNextSequence;
+        if(sequence - mFirstSequence == mCapacity) {
+            evictOldest();
+        }
+
+        Segment[] segments = mSegments;
+        long base = sequence - sequence % mSegmentSize;
+        int slot = getSlot(segments, sequence);
+        Segment segment = segments[slot];
+        if(segment == null || segment.mBase != base) {
+            segment = new Segment(base, mSegmentSize);
+            segments[slot] = segment;
+        }
+
+        int index = (int) (sequence - base);
+        segment.mTimestamps[index] = item.getTimestampMillis();
+        segment.mPids[index] = item.getPid();
+        segment.mTids[index] = item.getTid();
+        segment.mPriorities[index] = (byte) item.getPriority().ordinal();
+        segment.mBuffers[index] = (byte) item.getBuffer().ordinal();
+        segment.mTagIds[index] = addTag(item.getTag());
+        byte[] messageBytes = item instanceof LogcatItem ? ((LogcatItem) item).getMessageBytes() : null;
+        if(messageBytes != null) {
+            // parsed straight from the bytes read from logcat, no need to decode and encode again
+            writeMessage(segment, index, messageBytes);
+        }
+        else {
+            writeMessage(segment, index, item.getMessage());
+        }
+
+        // publishes the item and its segment
+        mNextSequence = sequence + 1;
+
+        if(item instanceof LogcatItem) {
+            ((LogcatItem) item).setSequence(sequence);
+        }
+        trimToByteBudget();
+        return sequence;
+    }
+
+    /**
+     * @return the id of the tag, also in the tags the readers look ids up in
+     */
+    private int addTag(String tag) {
+        tag = mTagPool.intern(tag);
+        int id = mTagPool.getId(tag);
+
+        String[] tags = mTags;
+        if(id >= tags.length) {
+            tags = Arrays.copyOf(tags, Math.max(tags.length * 2, id + 1));
+            tags[id] = tag;
+            mTags = tags;
+        }
+        else if(tags[id] == null) {
+            tags[id] = tag;
+        }
+        return id;
+    }
+
+    @Override
+    public synchronized void updateMessage(long sequence, String message) {
+        Segment segment = getSegment(mSegments, sequence);
+        if(segment == null || sequence < mFirstSequence || sequence >= mNextSequence) {
+            mDroppedUpdateCount++;
+            return;
+        }
+
+        int index = (int) (sequence - segment.mBase);
+        long previous = segment.mMessages.get(index);
+        writeMessage(segment, index, message);
+        releaseChunk(getChunkNumber(previous));
+        trimToByteBudget();
+    }
+
+    @Override
+    public LogItem get(long sequence) {
+        while(true) {
+            int generation = mGeneration;
+            LogItem item = null;
+            // the high-water mark is read before the segment
+            if(sequence < mNextSequence && sequence >= mFirstSequence) {
+                Segment segment = getSegment(mSegments, sequence);
+                if(segment != null) {
+                    item = new ColumnarLogItem(this, segment, (int) (sequence - segment.mBase));
+                }
+            }
+
+            if(generation % 2 == 0 && generation == mGeneration)
+                return item;
+        }
+    }
+
+    /**
+     * @return the decoded message or an empty one if the item has been evicted and the chunk
+     *         of its message freed
+     */
+    private String getMessage(Segment segment, int index) {
+        while(true) {
+            long location = segment.mMessages.get(index);
+            Chunk chunk = mMessageTable.get(getChunkNumber(location));
+            if(chunk != null)
+                return decode(chunk, getOffset(location), getLength(location, chunk));
+
+            // the chunk has been freed, either the message was updated or the item evicted
+            if(location == segment.mMessages.get(index))
+                return "";
+        }
+    }
+
+    @Override
+    public List<LogItem> getItems() {
+        return getItemsSince(-1);
+    }
+
+    @Override
+    public List<LogItem> getItemsSince(long sequence) {
+        while(true) {
+            int generation = mGeneration;
+            long next = mNextSequence;
+            Segment[] segments = mSegments;
+            long first = Math.max(mFirstSequence, sequence + 1);
+            if(first >= next)
+                return Collections.emptyList();
+
+            long firstBase = first - first % mSegmentSize;
+            Segment[] snapshotSegments = new Segment[(int) ((next - 1 - firstBase) / mSegmentSize + 1)];
+            for(int i = 0; i < snapshotSegments.length; i++) {
+                Segment segment = getSegment(segments, firstBase + (long) i * mSegmentSize);
+                if(segment == null) {
+                    // evicted while reading, start after it
+                    first = firstBase + (long) (i + 1) * mSegmentSize;
+                }
+                snapshotSegments[i] = segment;
+            }
+
+            if(generation % 2 == 0 && generation == mGeneration) {
+                int offset = (int) ((first - firstBase) / mSegmentSize);
+                Segment[] kept = new Segment[snapshotSegments.length - offset];
+                System.arraycopy(snapshotSegments, offset, kept, 0, kept.length);
+                return new Snapshot(kept, (int) (first % mSegmentSize), (int) Math.max(0, next - first));
+            }
+        }
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return mFirstSequence;
+    }
+
+    @Override
+    public long getNextSequence() {
+        return mNextSequence;
+    }
+
+    @Override
+    public int size() {
+        while(true) {
+            int generation = mGeneration;
+            long next = mNextSequence;
+            long first = mFirstSequence;
+            if(generation % 2 == 0 && generation == mGeneration)
+                return (int) (next - first);
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    @Override
+    public long getDroppedUpdateCount() {
+        return mDroppedUpdateCount;
+    }
+
+    /**
+     * @return number of bytes allocated for messages
+     */
+    public long getMessageBytes() {
+        return mChunkBytes;
+    }
+
+    @Override
+    public synchronized void clear() {
+        clear(mNextSequence);
+    }
+
+    @Override
+    public synchronized void clear(long nextSequence) {
+        if(nextSequence < mNextSequence)
+            throw new IllegalArgumentException("nextSequence must not be lower than " + mNextSequence);
+
+        mGeneration++;
+        mSegments = createSegments();
+        mMessageTable = new MessageTable(mMessageTable.mFirstNumber + mChunkCount, new Chunk[16]);
+        mChunkReferences = new int[16];
+        mChunkCount = 0;
+        mChunkUsed = 0;
+        mChunkBytes = 0;
+        mFirstSequence = nextSequence;
+        mNextSequence = nextSequence;
+        mGeneration++;
+    }
+
+    private void trimToByteBudget() {
+        // the newest item is always kept even if it alone is over budget
+        while(mChunkBytes > mByteBudget && mNextSequence - mFirstSequence > 1) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        long first = mFirstSequence;
+        Segment segment = getSegment(mSegments, first);
+        mFirstSequence = first + 1;
+        mEvictedCount++;
+        releaseChunk(getChunkNumber(segment.mMessages.get((int) (first - segment.mBase))));
+    }
+
+    private void writeMessage(Segment segment, int index, String message) {
+        if(message == null) {
+            message = "";
+        }
+
+        int length = getEncodedLength(message);
+        byte[] chunk = reserve(length);
+        encode(message, chunk, mChunkUsed);
+        commitMessage(segment, index, length);
+    }
+
+    private void writeMessage(Segment segment, int index, byte[] message) {
+        byte[] chunk = reserve(message.length);
+        System.arraycopy(message, 0, chunk, mChunkUsed, message.length);
+        commitMessage(segment, index, message.length);
+    }
+
+    /**
+     * @return the chunk the next message of the given length should be written to at
+     *         mChunkUsed
+     */
+    private byte[] reserve(int length) {
+        if(length >= WHOLE_CHUNK) {
+            // too long for a location within a chunk
+            addChunk(length);
+        }
+        else if(mChunkCount == 0 || mChunkUsed + length > getLastChunk().length) {
+            addChunk(CHUNK_SIZE);
+        }
+        return getLastChunk();
+    }
+
+    private byte[] getLastChunk() {
+        return mMessageTable.mChunks[mChunkCount - 1].mBytes;
+    }
+
+    /**
+     * Publishes the location of the message written at mChunkUsed of the last chunk.
+     */
+    private void commitMessage(Segment segment, int index, int length) {
+        int chunkNumber = mMessageTable.mFirstNumber + mChunkCount - 1;
+        long location = (long) chunkNumber << 32 | (long) (mChunkUsed & 0xFFFF) << 16 |
+                (length >= WHOLE_CHUNK ? WHOLE_CHUNK : length);
+        segment.mMessages.set(index, location);
+        mChunkReferences[mChunkCount - 1]++;
+        mChunkUsed += length;
+    }
+
+    private void addChunk(int size) {
+        if(mChunkCount > 0) {
+            compressLastChunk();
+        }
+
+        MessageTable table = mMessageTable;
+        if(mChunkCount == table.mChunks.length) {
+            table = new MessageTable(table.mFirstNumber, Arrays.copyOf(table.mChunks, mChunkCount * 2));
+            mChunkReferences = Arrays.copyOf(mChunkReferences, mChunkCount * 2);
+        }
+
+        // readers find it once a location refers to it
+        table.mChunks[mChunkCount] = new Chunk(table.mFirstNumber + mChunkCount, new byte[size], size, false);
+        mMessageTable = table;
+        mChunkReferences[mChunkCount] = 0;
+        mChunkCount++;
+        mChunkBytes += size;
+        mChunkUsed = 0;
+    }
+
+    /**
+     * Replaces the last chunk with its used bytes compressed, nothing more is written to it.
+     * Readers that already have the chunk go on reading the uncompressed bytes.
+     */
+    private void compressLastChunk() {
+        Chunk chunk = mMessageTable.mChunks[mChunkCount - 1];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(chunk.mBytes, 0, mChunkUsed);
+            deflater.finish();
+            byte[] compressed = new byte[mChunkUsed];
+            int length = 0;
+            while(!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+
+            // not worth it, or it didn't even fit
+            if(!deflater.finished() || length > mChunkUsed / 2)
+                return;
+
+            mMessageTable.mChunks[mChunkCount - 1] = new Chunk(chunk.mNumber, Arrays.copyOf(compressed, length),
+                    mChunkUsed, true);
+            mChunkBytes += length - chunk.mBytes.length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the message at the offset of the chunk, inflated if it is compressed
+     */
+    private String decode(Chunk chunk, int offset, int length) {
+        byte[] bytes = chunk.mBytes;
+        if(chunk.mCompressed) {
+            bytes = inflate(chunk);
+        }
+        return new String(bytes, offset, length, UTF_8);
+    }
+
+    private byte[] inflate(Chunk chunk) {
+        int slot = chunk.mNumber % INFLATED_CHUNK_COUNT;
+        Inflated inflated = mInflated.get(slot);
+        if(inflated != null && inflated.mChunk == chunk)
+            return inflated.mBytes;
+
+        byte[] bytes = new byte[chunk.mLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(chunk.mBytes);
+            int length = 0;
+            while(length < bytes.length && !inflater.finished()) {
+                length += inflater.inflate(bytes, length, bytes.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("compressed messages are corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        // other threads may replace it at the same time, then one of them is kept
+        mInflated.set(slot, new Inflated(chunk, bytes));
+        return bytes;
+    }
+
+    /**
+     * Drops a reference to a chunk and frees the chunks at the start that are no longer used.
+     * The chunk currently written to is always kept. A table that readers may hold is never
+     * changed where it has chunks, the chunks that are kept are moved to a new one.
+     */
+    private void releaseChunk(int chunkNumber) {
+        MessageTable table = mMessageTable;
+        mChunkReferences[chunkNumber - table.mFirstNumber]--;
+
+        int free = 0;
+        while(free < mChunkCount - 1 && mChunkReferences[free] == 0) {
+            mChunkBytes -= table.mChunks[free].mBytes.length;
+            free++;
+        }
+
+        if(free > 0) {
+            Chunk[] chunks = new Chunk[table.mChunks.length];
+            System.arraycopy(table.mChunks, free, chunks, 0, mChunkCount - free);
+            System.arraycopy(mChunkReferences, free, mChunkReferences, 0, mChunkCount - free);
+            mChunkCount -= free;
+            mMessageTable = new MessageTable(table.mFirstNumber + free, chunks);
+        }
+    }
+
+    private static int getChunkNumber(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int getOffset(long location) {
+        return (int) (location >>> 16) & 0xFFFF;
+    }
+
+    private static int getLength(long location, Chunk chunk) {
+        int length = (int) location & 0xFFFF;
+        return length == WHOLE_CHUNK ? chunk.mLength : length;
+    }
+
+    private int getSlot(Segment[] segments, long sequence) {
+        return (int) ((sequence / mSegmentSize) % segments.length);
+    }
+
+    /**
+     * @return the segment holding the sequence number or null if it has been replaced by a
+     *         newer one
+     */
+    private Segment getSegment(Segment[] segments, long sequence) {
+        Segment segment = segments[getSlot(segments, sequence)];
+        return segment != null && segment.mBase == sequence - sequence % mSegmentSize ? segment : null;
+    }
+
+    private static int getEncodedLength(String text) {
+        int length = 0;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c < 0x80) {
+                length++;
+            }
+            else if(c < 0x800) {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < text.length() &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void encode(String text, byte[] buffer, int offset) {
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c < 0x80) {
+                buffer[offset++] = (byte) c;
+            }
+            else if(c < 0x800) {
+                buffer[offset++] = (byte) (0xC0 | (c >> 6));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < text.length() &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else {
+                buffer[offset++] = (byte) (0xE0 | (c >> 12));
+                buffer[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * The fields of the items from a sequence number on, never reused for other items
+     */
+    private static class Segment {
+        private final long mBase;
+        private final long[] mTimestamps;
+        private final int[] mPids;
+        private final int[] mTids;
+        private final byte[] mPriorities;
+        private final byte[] mBuffers;
+        private final int[] mTagIds;
+        // chunk number, offset and length of the message, replaced when it is updated
+        private final AtomicLongArray mMessages;
+
+        public Segment(long base, int size) {
+            mBase = base;
+            mTimestamps = new long[size];
+            mPids = new int[size];
+            mTids = new int[size];
+            mPriorities = new byte[size];
+            mBuffers = new byte[size];
+            mTagIds = new int[size];
+            mMessages = new AtomicLongArray(size);
+        }
+    }
+
+    /**
+     * Bytes of the message arena, the messages are written to it until it is full and compressed
+     */
+    private static class Chunk {
+        private final int mNumber;
+        private final byte[] mBytes;
+        // number of bytes when inflated, or the size of a chunk that isn't compressed
+        private final int mLength;
+        private final boolean mCompressed;
+
+        public Chunk(int number, byte[] bytes, int length, boolean compressed) {
+            mNumber = number;
+            mBytes = bytes;
+            mLength = length;
+            mCompressed = compressed;
+        }
+    }
+
+    /**
+     * The bytes of a compressed chunk
+     */
+    private static class Inflated {
+        private final Chunk mChunk;
+        private final byte[] mBytes;
+
+        public Inflated(Chunk chunk, byte[] bytes) {
+            mChunk = chunk;
+            mBytes = bytes;
+        }
+    }
+
+    /**
+     * The chunks of the message arena from a chunk number on
+     */
+    private static class MessageTable {
+        private final int mFirstNumber;
+        private final Chunk[] mChunks;
+
+        public MessageTable(int firstNumber, Chunk[] chunks) {
+            mFirstNumber = firstNumber;
+            mChunks = chunks;
+        }
+
+        /**
+         * @return the chunk or null if it has been freed
+         */
+        public Chunk get(int number) {
+            int index = number - mFirstNumber;
+            return index >= 0 && index < mChunks.length ? mChunks[index] : null;
+        }
+    }
+
+    /**
+     * Items of the store at the time it was taken, reading them needs no lock
+     */
+    private class Snapshot extends AbstractList<LogItem> implements RandomAccess {
+        private final Segment[] mSnapshotSegments;
+        private final int mOffset;
+        private final int mSize;
+
+        public Snapshot(Segment[] segments, int offset, int size) {
+            mSnapshotSegments = segments;
+            mOffset = offset;
+            mSize = size;
+        }
+
+        @Override
+        public LogItem get(int location) {
+            if(location < 0 || location >= mSize)
+                throw new IndexOutOfBoundsException("location " + location + " is not below " + mSize);
+
+            int index = mOffset + location;
+            return new ColumnarLogItem(ColumnarLogStore.this, mSnapshotSegments[index / mSegmentSize],
+                    index % mSegmentSize);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * View of one item in the store, it only knows where the fields are so the views held by an
+     * adapter stay small. The segment is never reused, so the fields can still be read after the
+     * item has been evicted, but the message is gone once the chunk it was written to is freed.
+     */
+    private static class ColumnarLogItem implements LogItem {
+        private final ColumnarLogStore mStore;
+        private final Segment mSegment;
+        private final int mIndex;
+
+        public ColumnarLogItem(ColumnarLogStore store, Segment segment, int index) {
+            mStore = store;
+            mSegment = segment;
+            mIndex = index;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return PRIORITIES[mSegment.mPriorities[mIndex]];
+        }
+
+        @Override
+        public String getTag() {
+            return mStore.mTags[mSegment.mTagIds[mIndex]];
+        }
+
+        @Override
+        @Deprecated
+        public Date getDate() {
+            return new Date(getTimestampMillis());
+        }
+
+        @Override
+        public long getTimestampMillis() {
+            return mSegment.mTimestamps[mIndex];
+        }
+
+        /**
+         * @return the message decoded from the store, the chunk it is in is inflated first if it
+         *         is compressed and not one of the last few read
+         */
+        @Override
+        public String getMessage() {
+            return mStore.getMessage(mSegment, mIndex);
+        }
+
+        @Override
+        public void setMessage(String message) {
+            mStore.updateMessage(getSequence(), message);
+        }
+
+        @Override
+        public int getPid() {
+            return mSegment.mPids[mIndex];
+        }
+
+        @Override
+        public int getTid() {
+            return mSegment.mTids[mIndex];
+        }
+
+        @Override
+        public long getSequence() {
+            return mSegment.mBase + mIndex;
+        }
+
+        @Override
+        public LogBuffer getBuffer() {
+            return BUFFERS[mSegment.mBuffers[mIndex]];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ColumnarLogItem &&
+                    ((ColumnarLogItem) o).mSegment == mSegment &&
+                    ((ColumnarLogItem) o).mIndex == mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            long sequence = getSequence();
+            return (int) (sequence ^ (sequence >>> 32));
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filters log items with a {@link LogFilterSpec}. The spec is compiled into a fixed chain of
+ * clauses and for every read item the index of the first clause it fails is remembered. When the
+ * spec changes only the items that got past the first changed clause are evaluated again, and new
+ * items are evaluated once when they are read. When lines are added to the message of an item
+ * only the message clauses are evaluated again.
+ *
+ * This class is not thread safe, use it from the main thread.
+ */
+public class CompositeLogFilter implements LogFilter {
+    private static final int CLAUSE_PIDS = 0;
+    private static final int CLAUSE_INCLUDED_TAGS = 1;
+    private static final int CLAUSE_EXCLUDED_TAGS = 2;
+    private static final int CLAUSE_MESSAGE_TEXT = 3;
+    private static final int CLAUSE_MESSAGE_REGEX = 4;
+    private static final int CLAUSE_COUNT = 5;
+
+    /**
+     * Result of an item that passes all clauses
+     */
+    private static final byte MATCHES = CLAUSE_COUNT;
+
+    private final LogHandler mLogHandler;
+    private final Clause[] mClauses = new Clause[CLAUSE_COUNT];
+    private LogFilterSpec mSpec;
+    private long mLastSequence = -1;
+
+    private byte[] mResults = new byte[1024];
+    private long mResultsFirstSequence;
+    private int mResultsOffset;
+    private int mResultsCount;
+
+    public CompositeLogFilter(LogHandler logHandler, LogFilterSpec spec) {
+        if(logHandler == null)
+            throw new IllegalArgumentException("logHandler is null");
+
+        if(spec == null)
+            throw new IllegalArgumentException("spec is null");
+
+        mLogHandler = logHandler;
+        mSpec = new LogFilterSpec(spec);
+        compile(0);
+    }
+
+    public LogFilterSpec getSpec() {
+        return new LogFilterSpec(mSpec);
+    }
+
+    /**
+     * Changes the spec. Items that failed a clause before the first changed one are not evaluated
+     * again.
+     *
+     * @param spec the new spec
+     * @throws java.util.regex.PatternSyntaxException if the message regex is invalid
+     */
+    public void setSpec(LogFilterSpec spec) {
+        if(spec == null)
+            throw new IllegalArgumentException("spec is null");
+
+        LogFilterSpec oldSpec = mSpec;
+        mSpec = new LogFilterSpec(spec);
+
+        int firstChanged = getFirstChangedClause(oldSpec, mSpec);
+        if(firstChanged == CLAUSE_COUNT)
+            return;
+
+        compile(firstChanged);
+
+        for(int i = 0; i < mResultsCount; i++) {
+            int index = mResultsOffset + i;
+            if(mResults[index] < firstChanged)
+                continue;
+
+            LogItem item = mLogHandler.getItem(mResultsFirstSequence + i);
+            if(item != null) {
+                mResults[index] = evaluate(item, firstChanged);
+            }
+        }
+    }
+
+    @Override
+    public List<LogItem> getFilteredItems(Priority logLevel) {
+        readNewItems(null, logLevel);
+
+        Priority minPriority = getMinPriority(logLevel);
+        List<LogItem> filtered = new ArrayList<LogItem>();
+        for(int i = 0; i < mResultsCount; i++) {
+            if(mResults[mResultsOffset + i] != MATCHES)
+                continue;
+
+            LogItem item = mLogHandler.getItem(mResultsFirstSequence + i);
+            if(item != null && LogPriorityFilter.isInLogLevel(item.getPriority(), minPriority)) {
+                filtered.add(item);
+            }
+        }
+        return filtered;
+    }
+
+    @Override
+    public List<LogItem> getNewFilteredItems(Priority logLevel) {
+        List<LogItem> filtered = new ArrayList<LogItem>();
+        readNewItems(filtered, logLevel);
+        return filtered;
+    }
+
+    /**
+     * An item that matched and doesn't match any more with the added lines, which only a regex
+     * can cause, is left out the next time all items are filtered.
+     */
+    @Override
+    public List<LogItem> getUpdatedFilteredItems(List<LogItem> items, Priority logLevel) {
+        Priority minPriority = getMinPriority(logLevel);
+        List<LogItem> filtered = new ArrayList<LogItem>();
+        for(LogItem item : items) {
+            long position = item.getSequence() - mResultsFirstSequence;
+            if(position < 0 || position >= mResultsCount)
+                continue;
+
+            // the clauses before the message ones don't look at the message
+            int index = mResultsOffset + (int) position;
+            if(mResults[index] < CLAUSE_MESSAGE_TEXT)
+                continue;
+
+            mResults[index] = evaluate(item, CLAUSE_MESSAGE_TEXT);
+            if(mResults[index] == MATCHES &&
+                    LogPriorityFilter.isInLogLevel(item.getPriority(), minPriority)) {
+                filtered.add(item);
+            }
+        }
+        return filtered;
+    }
+
+    private void readNewItems(List<LogItem> filtered, Priority logLevel) {
+        trimResultsBefore(mLogHandler.getFirstSequence());
+
+        Priority minPriority = getMinPriority(logLevel);
+        List<LogItem> items = mLogHandler.getItemsSince(mLastSequence);
+        for(LogItem item : items) {
+            byte result = evaluate(item, 0);
+            addResult(item.getSequence(), result);
+
+            if(filtered != null && result == MATCHES &&
+                    LogPriorityFilter.isInLogLevel(item.getPriority(), minPriority)) {
+                filtered.add(item);
+            }
+        }
+
+        if(!items.isEmpty()) {
+            mLastSequence = items.get(items.size() - 1).getSequence();
+        }
+    }
+
+    private Priority getMinPriority(Priority logLevel) {
+        Priority specPriority = mSpec.getMinPriority();
+        return specPriority.ordinal() > logLevel.ordinal() ? specPriority : logLevel;
+    }
+
+    private byte evaluate(LogItem item, int firstClause) {
+        for(int i = firstClause; i < CLAUSE_COUNT; i++) {
+            Clause clause = mClauses[i];
+            if(clause != null && !clause.matches(item))
+                return (byte) i;
+        }
+        return MATCHES;
+    }
+
+    private void addResult(long sequence, byte result) {
+        if(mResultsCount > 0 && sequence != mResultsFirstSequence + mResultsCount) {
+            // there is a gap, everything before it has been dropped
+            mResultsCount = 0;
+        }
+
+        if(mResultsCount == 0) {
+            mResultsFirstSequence = sequence;
+            mResultsOffset = 0;
+        }
+
+        if(mResultsOffset + mResultsCount == mResults.length) {
+            byte[] results = mResults;
+            if(mResultsCount > mResults.length / 2) {
+                results = new byte[mResults.length * 2];
+            }
+            System.arraycopy(mResults, mResultsOffset, results, 0, mResultsCount);
+            mResults = results;
+            mResultsOffset = 0;
+        }
+
+        mResults[mResultsOffset + mResultsCount] = result;
+        mResultsCount++;
+    }
+
+    private void trimResultsBefore(long sequence) {
+        int count = (int) Math.min(mResultsCount, Math.max(0, sequence - mResultsFirstSequence));
+        mResultsOffset += count;
+        mResultsCount -= count;
+        mResultsFirstSequence += count;
+    }
+
+    private static int getFirstChangedClause(LogFilterSpec oldSpec, LogFilterSpec newSpec) {
+        if(!oldSpec.hasSamePids(newSpec))
+            return CLAUSE_PIDS;
+
+        if(!oldSpec.getIncludedTags().equals(newSpec.getIncludedTags()))
+            return CLAUSE_INCLUDED_TAGS;
+
+        if(!oldSpec.getExcludedTags().equals(newSpec.getExcludedTags()))
+            return CLAUSE_EXCLUDED_TAGS;
+
+        if(!equals(oldSpec.getMessageText(), newSpec.getMessageText()))
+            return CLAUSE_MESSAGE_TEXT;
+
+        if(!equals(oldSpec.getMessageRegex(), newSpec.getMessageRegex()))
+            return CLAUSE_MESSAGE_REGEX;
+
+        return CLAUSE_COUNT;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void compile(int firstClause) {
+        for(int i = firstClause; i < CLAUSE_COUNT; i++) {
+            mClauses[i] = createClause(i);
+        }
+    }
+
+    private Clause createClause(int clause) {
+        switch (clause) {
+            case CLAUSE_PIDS:
+                int[] pids = mSpec.getPids();
+                return pids.length == 0 ? null : new PidClause(pids);
+            case CLAUSE_INCLUDED_TAGS:
+                Set<String> included = mSpec.getIncludedTags();
+                return included.isEmpty() ? null : new TagClause(included, true);
+            case CLAUSE_EXCLUDED_TAGS:
+                Set<String> excluded = mSpec.getExcludedTags();
+                return excluded.isEmpty() ? null : new TagClause(excluded, false);
+            case CLAUSE_MESSAGE_TEXT:
+                String text = mSpec.getMessageText();
+                return text == null ? null : new MessageTextClause(text);
+            case CLAUSE_MESSAGE_REGEX:
+                String regex = mSpec.getMessageRegex();
+                return regex == null ? null : new MessageRegexClause(regex);
+            default:
+                throw new IllegalArgumentException("unknown clause " + clause);
+        }
+    }
+
+    private interface Clause {
+        public boolean matches(LogItem item);
+    }
+
+    private static class PidClause implements Clause {
+        private final IntSet mPids;
+
+        public PidClause(int[] pids) {
+            mPids = new IntSet(pids);
+        }
+
+        @Override
+        public boolean matches(LogItem item) {
+            return mPids.contains(item.getPid());
+        }
+    }
+
+    private static class TagClause implements Clause {
+        private final Set<String> mTags;
+        private final boolean mInclude;
+
+        public TagClause(Set<String> tags, boolean include) {
+            mTags = tags;
+            mInclude = include;
+        }
+
+        @Override
+        public boolean matches(LogItem item) {
+            // tags from the item factories are shared instances with their hash code already cached
+            return mTags.contains(item.getTag()) == mInclude;
+        }
+    }
+
+    private static class MessageTextClause implements Clause {
+        private final String mText;
+
+        public MessageTextClause(String text) {
+            mText = text;
+        }
+
+        @Override
+        public boolean matches(LogItem item) {
+            String message = item.getMessage();
+            int last = message.length() - mText.length();
+            for(int i = 0; i <= last; i++) {
+                if(message.regionMatches(true, i, mText, 0, mText.length()))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static class MessageRegexClause implements Clause {
+        private final Matcher mMatcher;
+
+        public MessageRegexClause(String regex) {
+            mMatcher = Pattern.compile(regex).matcher("");
+        }
+
+        @Override
+        public boolean matches(LogItem item) {
+            return mMatcher.reset(item.getMessage()).find();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+
+/**
+ * Replays a captured "-v time" log file. Lines are paced by their timestamps, either at the
+ * original speed or faster, so a recorded log storm can be reproduced without a device.
+ */
+public class FileReplayLogSource implements LogSource {
+    private final File mFile;
+    private final double mSpeed;
+
+    /**
+     * @param file the captured log
+     * @param speed 1 to replay at the original speed, 10 for ten times faster and 0 to replay as
+     *              fast as the reader can keep up
+     */
+    public FileReplayLogSource(File file, double speed) {
+        if(file == null)
+            throw new IllegalArgumentException("file is null");
+
+        if(speed < 0)
+            throw new IllegalArgumentException("speed must not be negative");
+
+        mFile = file;
+        mSpeed = speed;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+        return new ReplayInputStream(reader, mSpeed);
+    }
+
+    /**
+     * Parses the "MM-dd HH:mm:ss.SSS" prefix of a line.
+     *
+     * @return the timestamp in milliseconds or Long.MIN_VALUE if the line doesn't start with one
+     */
+    static long parseTimestamp(String line, LogTimestampResolver resolver) {
+        int i = 0;
+        int length = line.length();
+        int month = 0;
+        int monthDigits = 0;
+        while(i < length && monthDigits < 2 && isDigit(line.charAt(i))) {
+            month = month * 10 + line.charAt(i++) - '0';
+            monthDigits++;
+        }
+        if(monthDigits == 0 || i >= length || line.charAt(i++) != '-')
+            return Long.MIN_VALUE;
+
+        int day = 0;
+        int dayDigits = 0;
+        while(i < length && dayDigits < 2 && isDigit(line.charAt(i))) {
+            day = day * 10 + line.charAt(i++) - '0';
+            dayDigits++;
+        }
+        if(dayDigits == 0 || i + 13 > length || line.charAt(i) != ' ' || line.charAt(i + 3) != ':'
+                || line.charAt(i + 6) != ':' || line.charAt(i + 9) != '.')
+            return Long.MIN_VALUE;
+
+        int hour = parseDigits(line, i + 1, 2);
+        int minute = parseDigits(line, i + 4, 2);
+        int second = parseDigits(line, i + 7, 2);
+        int millis = parseDigits(line, i + 10, 3);
+        if(hour < 0 || minute < 0 || second < 0 || millis < 0)
+            return Long.MIN_VALUE;
+
+        return resolver.resolve(month, day, hour, minute, second, millis);
+    }
+
+    private static int parseDigits(String line, int start, int count) {
+        int value = 0;
+        for(int i = start; i < start + count; i++) {
+            char c = line.charAt(i);
+            if(!isDigit(c))
+                return -1;
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static class ReplayInputStream extends LineInputStream {
+        private final BufferedReader mReader;
+        private final double mSpeed;
+        private final LogTimestampResolver mResolver = new LogTimestampResolver();
+        private long mFirstTimestamp = Long.MIN_VALUE;
+        private long mStartNanos;
+
+        public ReplayInputStream(BufferedReader reader, double speed) {
+            mReader = reader;
+            mSpeed = speed;
+        }
+
+        @Override
+        protected String readNextLine() throws IOException {
+            String line = mReader.readLine();
+            if(line == null || mSpeed == 0)
+                return line;
+
+            long timestamp = parseTimestamp(line, mResolver);
+            if(timestamp == Long.MIN_VALUE)
+                return line;
+
+            if(mFirstTimestamp == Long.MIN_VALUE) {
+                mFirstTimestamp = timestamp;
+                mStartNanos = System.nanoTime();
+                return line;
+            }
+
+            long dueNanos = (long) ((timestamp - mFirstTimestamp) * 1000000 / mSpeed);
+            long waitNanos = dueNanos - (System.nanoTime() - mStartNanos);
+            if(waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("replay interrupted");
+                }
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mReader.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * A {@link LogSource} that can leave out the lines a {@link LogFilterSpec} doesn't match, so they
+ * are never read, parsed or stored. What can't be left out by the source is still read, the
+ * spec has to be applied to the items as well.
+ */
+public interface FilterableLogSource extends LogSource {
+    /**
+     * Takes effect the next time the source is opened.
+     *
+     * @param spec the lines to read or null to read everything
+     * @return true if the source leaves out other lines than before and has to be opened again
+     */
+    public boolean setFilterSpec(LogFilterSpec spec);
+}
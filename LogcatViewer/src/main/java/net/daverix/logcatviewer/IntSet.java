@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints using open addressing, avoids boxing when checking pids.
+ */
+class IntSet {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] mTable;
+    private int mSize;
+    private boolean mContainsFree;
+
+    public IntSet(int[] values) {
+        int capacity = 8;
+        while(capacity < values.length * 2) {
+            capacity *= 2;
+        }
+
+        mTable = new int[capacity];
+        Arrays.fill(mTable, FREE);
+
+        for(int value : values) {
+            add(value);
+        }
+    }
+
+    private void add(int value) {
+        if(value == FREE) {
+            if(!mContainsFree) {
+                mContainsFree = true;
+                mSize++;
+            }
+            return;
+        }
+
+        int mask = mTable.length - 1;
+        int i = mix(value) & mask;
+        while(mTable[i] != FREE) {
+            if(mTable[i] == value)
+                return;
+
+            i = (i + 1) & mask;
+        }
+        mTable[i] = value;
+        mSize++;
+    }
+
+    public boolean contains(int value) {
+        if(value == FREE)
+            return mContainsFree;
+
+        int mask = mTable.length - 1;
+        for(int i = mix(value) & mask; mTable[i] != FREE; i = (i + 1) & mask) {
+            if(mTable[i] == value)
+                return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * InputStream that serves text one line at a time, so sources can generate or pace their output
+ * line by line. {@link #available()} only counts the current line, which keeps readers from
+ * waiting for the next one before they return what they have.
+ */
+abstract class LineInputStream extends InputStream {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] mLine = EMPTY;
+    private int mPosition;
+    private boolean mEnd;
+
+    /**
+     * @return the next line without line terminator or null at the end of the stream
+     */
+    protected abstract String readNextLine() throws IOException;
+
+    @Override
+    public int read() throws IOException {
+        if(!fill())
+            return -1;
+
+        return mLine[mPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if(length == 0)
+            return 0;
+
+        if(!fill())
+            return -1;
+
+        int count = Math.min(length, mLine.length - mPosition);
+        System.arraycopy(mLine, mPosition, buffer, offset, count);
+        mPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return mLine.length - mPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mEnd = true;
+        mLine = EMPTY;
+        mPosition = 0;
+    }
+
+    private boolean fill() throws IOException {
+        while(mPosition == mLine.length) {
+            if(mEnd)
+                return false;
+
+            String line = readNextLine();
+            if(line == null) {
+                mEnd = true;
+                return false;
+            }
+
+            mLine = (line + "\n").getBytes(UTF_8);
+            mPosition = 0;
+        }
+        return true;
+    }
+}
@@ -22,16 +22,35 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.Calendar;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Shows log items in the order of their sequence numbers, which are also their stable ids. The
+ * items are kept in a window over a list: new items are appended at the end and evicted items
+ * are dropped from the start by moving the window, the list is only compacted now and then.
+ *
+ * Rows remember what they show, so when the list view binds all visible rows again after a
+ * change only the rows of items that changed are updated. Items that only got lines added to
+ * their message don't change the rows, update them with {@link #updateRow(ListView, long)}
+ * instead of notifying the whole list, or with {@link #updateMessage(long)} before notifying it.
+ *
+ * The message, header, timestamp and color of the recently shown items are kept in a
+ * {@link LogRowCache} so scrolling back and forth over them doesn't decode or allocate.
+ */
 public class LogAdapter extends BaseAdapter {
+    // a few screens of rows in both directions
+    private static final int ROW_CACHE_SIZE = 512;
+
     private final Context mContext;
     private List<LogItem> mItems;
+    // index of the first shown item in mItems
+    private int mStart;
     private LayoutInflater mInflater;
+    private final LogRowCache mRowCache = new LogRowCache(ROW_CACHE_SIZE);
 
     public LogAdapter(Context context, List<LogItem> items) {
         super();
@@ -43,7 +62,7 @@ public class LogAdapter extends BaseAdapter {
             throw new IllegalArgumentException("items is null");
 
         mContext = context;
-        mItems = items;
+        mItems = new ArrayList<LogItem>(items);
     }
 
     @Override
@@ -52,22 +71,151 @@ public class LogAdapter extends BaseAdapter {
     }
 
     public void setItems(List<LogItem> items) {
-        mItems = items;
+        mItems = new ArrayList<LogItem>(items);
+        mStart = 0;
+        // updates to the messages may have been missed while the items weren't followed
+        mRowCache.clear();
+    }
+
+    /**
+     * Appends items after the current ones.
+     *
+     * @param items the items to add, with higher sequence numbers than the current ones
+     * @return true if items were added and the list view has to be notified
+     */
+    public boolean addItems(List<LogItem> items) {
+        return mItems.addAll(items);
+    }
+
+    /**
+     * Inserts the items that aren't shown yet between the current ones, for items that match a
+     * filter once lines have been added to their message.
+     *
+     * @param items the items to show, oldest first
+     * @return true if items were added and the list view has to be notified
+     */
+    public boolean addUpdatedItems(List<LogItem> items) {
+        boolean added = false;
+        for(LogItem item : items) {
+            int index = findIndex(item.getSequence());
+            if(index < 0) {
+                mItems.add(-index - 1, item);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes the items at the start that have a lower sequence number than the given one.
+     *
+     * @param sequence sequence number of the first item to keep
+     * @return true if items were removed and the list view has to be notified
+     */
+    public boolean removeItemsBefore(long sequence) {
+        int start = findIndex(sequence);
+        if(start < 0) {
+            start = -start - 1;
+        }
+
+        if(start == mStart)
+            return false;
+
+        mStart = start;
+        if(mStart > mItems.size() / 2) {
+            // the removed items are only let go of when most of the list is removed
+            mItems.subList(0, mStart).clear();
+            mStart = 0;
+        }
+        return true;
+    }
+
+    /**
+     * @param sequence sequence number of an item
+     * @return the position of the item or -1 if it isn't shown
+     */
+    public int getPosition(long sequence) {
+        int index = findIndex(sequence);
+        return index < 0 ? -1 : index - mStart;
+    }
+
+    /**
+     * @return index of the item in mItems or -(insertion point) - 1 like
+     *         {@link java.util.Collections#binarySearch(List, Object)}
+     */
+    private int findIndex(long sequence) {
+        int low = mStart;
+        int high = mItems.size() - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleSequence = mItems.get(middle).getSequence();
+            if(middleSequence < sequence) {
+                low = middle + 1;
+            }
+            else if(middleSequence > sequence) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Reads the message of an item again the next time its row is bound, for items that got
+     * lines added to their message.
+     *
+     * @param sequence sequence number of the changed item
+     * @return the position of the item or -1 if it isn't shown
+     */
+    public int updateMessage(long sequence) {
+        int position = getPosition(sequence);
+        if(position >= 0) {
+            mRowCache.updateMessage(getItem(position));
+        }
+        return position;
+    }
+
+    /**
+     * Binds the row of an item again if it is visible, for items that have changed without
+     * anything being added or removed.
+     *
+     * @param listView the list view using this adapter
+     * @param sequence sequence number of the changed item
+     */
+    public void updateRow(ListView listView, long sequence) {
+        int position = updateMessage(sequence);
+        if(position < 0)
+            return;
+
+        int firstVisible = listView.getFirstVisiblePosition();
+        if(position < firstVisible || position > listView.getLastVisiblePosition())
+            return;
+
+        View view = listView.getChildAt(position - firstVisible);
+        if(view != null) {
+            getView(position, view, listView);
+        }
     }
 
     @Override
     public int getCount() {
-        return mItems.size();
+        return mItems.size() - mStart;
     }
 
     @Override
     public LogItem getItem(int position) {
-        return mItems.get(position);
+        return mItems.get(mStart + position);
     }
 
+    /**
+     * @return the sequence number of the item, it doesn't change when lines are added to its
+     *         message
+     */
     @Override
     public long getItemId(int position) {
-        return getItem(position).hashCode();
+        return getItem(position).getSequence();
     }
 
     private LayoutInflater getInflater() {
@@ -90,6 +238,8 @@ public class LogAdapter extends BaseAdapter {
             holder.message = (TextView) convertView.findViewById(R.id.textMessage);
             holder.date = (TextView) convertView.findViewById(R.id.textDate);
             holder.tag = (TextView) convertView.findViewById(R.id.textTag);
+            holder.sequence = -1;
+            holder.dateChars = new char[LogTimestampFormatter.LENGTH];
 
             convertView.setTag(holder);
         }
@@ -98,60 +248,36 @@ public class LogAdapter extends BaseAdapter {
         }
 
         LogItem item = getItem(position);
-        holder.message.setText(item.getMessage());
-        holder.tag.setText(getPriorityString(item.getPriority()) + "/" + item.getTag());
-        holder.date.setText(getDateString(item.getDate()));
-        holder.message.setTextColor(getColor(item.getPriority()));
-
-        return convertView;
-    }
-
-    private String getPriorityString(Priority priority) {
-        switch (priority) {
-            case ERROR:     return "E";
-            case DEBUG:     return "D";
-            case FATAL:     return "F";
-            case INFO:      return "I";
-            case SILENT:    return "S";
-            case VERBOSE:   return "V";
-            case WARNING:   return "W";
-            default:        return "UNKNOWN";
+        LogRowCache.Row row = mRowCache.get(item);
+        String message = row.getMessage();
+        if(holder.sequence == item.getSequence()) {
+            // the same item, only its message may have been updated
+            if(message != holder.shownMessage) {
+                holder.message.setText(message);
+                holder.shownMessage = message;
+            }
+            return convertView;
         }
-    }
 
-    private String getDateString(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-
-        return String.format("%02d-%02d %02d:%02d:%02d.%03d",
-                cal.get(Calendar.MONTH)+1,
-                cal.get(Calendar.DAY_OF_MONTH),
-                cal.get(Calendar.HOUR_OF_DAY),
-                cal.get(Calendar.MINUTE),
-                cal.get(Calendar.SECOND),
-                cal.get(Calendar.MILLISECOND));
-    }
-
-    private int getColor(Priority priority) {
-        switch (priority) {
-            case FATAL:
-            case ERROR:
-                return 0xFFCC0000; //red
-            case WARNING:
-                return 0xFFFF8800; //orange
-            case INFO:
-                return 0xFF669900; //green
-            case DEBUG:
-                return 0xFF0099CC; //blue
-            case VERBOSE:
-            default:
-                return 0xFF333333; //gray
-        }
+        holder.sequence = item.getSequence();
+        holder.shownMessage = message;
+        holder.message.setText(message);
+        holder.tag.setText(row.getHeader());
+        // the text view keeps the array, the one of the row is reused for another item
+        int dateLength = row.getDateLength();
+        System.arraycopy(row.getDate(), 0, holder.dateChars, 0, dateLength);
+        holder.date.setText(holder.dateChars, 0, dateLength);
+        holder.message.setTextColor(row.getColor());
+
+        return convertView;
     }
 
     private static class ViewHolder {
         public TextView date;
         public TextView tag;
         public TextView message;
+        public long sequence;
+        public String shownMessage;
+        public char[] dateChars;
     }
 }
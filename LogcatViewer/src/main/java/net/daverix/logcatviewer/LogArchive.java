@@ -0,0 +1,585 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only archive of log items in fixed-size segment files, so the history survives the
+ * process. The segments are memory mapped, writing an item is a copy into the page cache and
+ * reopening an archive maps the files instead of parsing anything. What has been written is kept
+ * by the system even if the process is killed right after, {@link #force()} is only needed to
+ * survive losing power.
+ *
+ * Every segment starts with a header holding the sequence number and timestamp of its first
+ * record, followed by records of:
+ *
+ * <pre>
+ * int    length of the record including this field, 0 after the last record
+ * long   sequence number
+ * long   timestamp in milliseconds
+ * int    pid
+ * int    tid
+ * byte   priority in the low four bits, buffer in the high four bits
+ * short  length of the tag
+ * byte[] tag, UTF-8
+ * byte[] message, UTF-8, the rest of the record
+ * </pre>
+ *
+ * The length is written last so a record is either complete or not there at all. Writing an item
+ * again with the same sequence number, after lines have been added to its message, replaces the
+ * record before it. Every {@link #INDEX_INTERVAL}th item of a segment is kept in a sparse index
+ * in memory, which is built when the segment is written or first read. When the segments take up
+ * more than the size limit the oldest ones are deleted.
+ *
+ * This class is thread safe.
+ */
+public class LogArchive {
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    static final int INDEX_INTERVAL = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAGIC = 0x4c434131; // "LCA1"
+    private static final int SEGMENT_HEADER_SIZE = 4 + 8 + 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 1 + 2;
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final LogBuffer[] BUFFERS = LogBuffer.values();
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final long mMaxBytes;
+    private final TagPool mTagPool;
+    private final List<Segment> mSegments = new ArrayList<Segment>();
+    private long mNextSequence;
+    private boolean mClosed;
+
+    public LogArchive(File directory, TagPool tagPool) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_BYTES, tagPool);
+    }
+
+    /**
+     * Opens the archive in the directory, creating it if it doesn't exist. Files that aren't
+     * segments of an archive are deleted.
+     *
+     * @param directory directory holding the segment files
+     * @param segmentSize size of every segment file, larger messages are cut to fit
+     * @param maxBytes the oldest segments are deleted to stay below this size
+     * @param tagPool pool the tags of the read items are shared through
+     */
+    public LogArchive(File directory, int segmentSize, long maxBytes, TagPool tagPool) throws IOException {
+        if(directory == null)
+            throw new IllegalArgumentException("directory is null");
+
+        if(segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + 1024)
+            throw new IllegalArgumentException("segmentSize is too small");
+
+        if(maxBytes < segmentSize)
+            throw new IllegalArgumentException("maxBytes must not be lower than segmentSize");
+
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mMaxBytes = maxBytes;
+        mTagPool = tagPool;
+        open();
+    }
+
+    private void open() throws IOException {
+        if(!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("Can't create archive directory " + mDirectory);
+
+        File[] files = mDirectory.listFiles();
+        if(files == null)
+            throw new IOException("Can't list archive directory " + mDirectory);
+
+        // the names are the zero padded first sequence numbers so they sort in order
+        Arrays.sort(files);
+        for(File file : files) {
+            if(!file.getName().endsWith(SEGMENT_SUFFIX))
+                continue;
+
+            Segment segment = Segment.open(file);
+            if(segment == null) {
+                deleteFile(file);
+            }
+            else {
+                mSegments.add(segment);
+            }
+        }
+
+        Segment last = getLastSegment();
+        if(last != null) {
+            last.buildIndex();
+            mNextSequence = last.mLastSequence >= 0 ? last.mLastSequence + 1 : last.mFirstSequence;
+        }
+    }
+
+    /**
+     * Writes an item. Items must be written in the order of their sequence numbers, except that
+     * the last item may be written again to replace it.
+     *
+     * @param sequence sequence number of the item, the one of the item itself is not used
+     * @param item the item to write
+     */
+    public synchronized void write(long sequence, LogItem item) throws IOException {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        if(mClosed)
+            throw new IllegalStateException("archive is closed");
+
+        boolean replace = !mSegments.isEmpty() && sequence == mNextSequence - 1;
+        if(!replace && (sequence < mNextSequence || !mSegments.isEmpty() && sequence > mNextSequence))
+            throw new IllegalArgumentException("sequence " + sequence + " is out of order, expected " + mNextSequence);
+
+        byte[] tag = item.getTag().getBytes(UTF_8);
+        byte[] message = item instanceof LogcatItem ? ((LogcatItem) item).getMessageBytes() : null;
+        if(message == null) {
+            message = item.getMessage().getBytes(UTF_8);
+        }
+
+        int tagLength = getCutLength(tag, Short.MAX_VALUE);
+        int maxMessageLength = mSegmentSize - SEGMENT_HEADER_SIZE - RECORD_HEADER_SIZE - tagLength;
+        int messageLength = getCutLength(message, maxMessageLength);
+        int length = RECORD_HEADER_SIZE + tagLength + messageLength;
+
+        Segment segment = getLastSegment();
+        if(segment == null || segment.mEnd + length > segment.mBuffer.capacity()) {
+            segment = createSegment(sequence, item.getTimestampMillis());
+        }
+
+        ByteBuffer buffer = segment.mBuffer;
+        int offset = segment.mEnd;
+        buffer.putLong(offset + 4, sequence);
+        buffer.putLong(offset + 12, item.getTimestampMillis());
+        buffer.putInt(offset + 20, item.getPid());
+        buffer.putInt(offset + 24, item.getTid());
+        buffer.put(offset + 28, (byte) (item.getBuffer().ordinal() << 4 | item.getPriority().ordinal()));
+        buffer.putShort(offset + 29, (short) tagLength);
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.put(tag, 0, tagLength);
+        buffer.put(message, 0, messageLength);
+        buffer.putInt(offset, length);
+
+        segment.add(offset, length, sequence, item.getTimestampMillis());
+        mNextSequence = sequence + 1;
+        trimToMaxBytes();
+    }
+
+    /**
+     * @param sequence sequence number of the item
+     * @return the item or null if it isn't in the archive
+     */
+    public synchronized LogItem get(long sequence) {
+        Segment segment = findSegment(sequence);
+        if(segment == null)
+            return null;
+
+        int offset = segment.find(sequence);
+        return offset < 0 ? null : read(segment, offset);
+    }
+
+    /**
+     * @param sequence sequence number of the first item to read
+     * @param maxCount most number of items to read
+     * @return the archived items from the given sequence number on, oldest first
+     */
+    public synchronized List<LogItem> read(long sequence, int maxCount) {
+        List<LogItem> items = new ArrayList<LogItem>();
+        sequence = Math.max(sequence, getFirstSequence());
+        int segmentIndex = mSegments.indexOf(findSegment(sequence));
+        if(segmentIndex < 0)
+            return items;
+
+        int offset = mSegments.get(segmentIndex).find(sequence);
+        for(; segmentIndex < mSegments.size(); segmentIndex++) {
+            Segment segment = mSegments.get(segmentIndex);
+            segment.buildIndex();
+            if(offset < 0) {
+                offset = SEGMENT_HEADER_SIZE;
+            }
+
+            for(; offset < segment.mEnd; offset += segment.mBuffer.getInt(offset)) {
+                long recordSequence = segment.mBuffer.getLong(offset + 4);
+                if(recordSequence < sequence)
+                    continue;
+
+                LogItem item = read(segment, offset);
+                if(!items.isEmpty() && items.get(items.size() - 1).getSequence() == recordSequence) {
+                    // written again when lines were added to the message
+                    items.set(items.size() - 1, item);
+                }
+                else if(items.size() == maxCount) {
+                    return items;
+                }
+                else {
+                    items.add(item);
+                }
+            }
+            offset = -1;
+        }
+        return items;
+    }
+
+    /**
+     * Looks up the first item logged at or after the given time, assuming the items are written
+     * about in the order they were logged.
+     *
+     * @param timestampMillis the time
+     * @return sequence number of the item or {@link #getNextSequence()} if there is none
+     */
+    public synchronized long findSequence(long timestampMillis) {
+        int segmentIndex = 0;
+        while(segmentIndex + 1 < mSegments.size() &&
+                mSegments.get(segmentIndex + 1).mFirstTimestamp <= timestampMillis) {
+            segmentIndex++;
+        }
+
+        for(; segmentIndex < mSegments.size(); segmentIndex++) {
+            Segment segment = mSegments.get(segmentIndex);
+            segment.buildIndex();
+            int offset = SEGMENT_HEADER_SIZE;
+            for(int i = 1; i < segment.mIndexCount && segment.mIndexTimestamps[i] < timestampMillis; i++) {
+                offset = segment.mIndexOffsets[i];
+            }
+
+            for(; offset < segment.mEnd; offset += segment.mBuffer.getInt(offset)) {
+                if(segment.mBuffer.getLong(offset + 12) >= timestampMillis)
+                    return segment.mBuffer.getLong(offset + 4);
+            }
+        }
+        return mNextSequence;
+    }
+
+    /**
+     * @return sequence number of the oldest archived item
+     */
+    public synchronized long getFirstSequence() {
+        return mSegments.isEmpty() ? mNextSequence : mSegments.get(0).mFirstSequence;
+    }
+
+    /**
+     * @return sequence number the next written item is expected to have
+     */
+    public synchronized long getNextSequence() {
+        return mNextSequence;
+    }
+
+    /**
+     * @return number of bytes the segment files take up
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for(Segment segment : mSegments) {
+            size += segment.mBuffer.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * Writes what has been written to the storage device.
+     */
+    public synchronized void force() {
+        Segment segment = getLastSegment();
+        if(segment != null) {
+            segment.mBuffer.force();
+        }
+    }
+
+    /**
+     * Deletes all segments without resetting the sequence numbers.
+     */
+    public synchronized void clear() {
+        while(!mSegments.isEmpty()) {
+            removeOldestSegment();
+        }
+    }
+
+    /**
+     * Forces and closes the segment files, the archive can't be used afterwards.
+     */
+    public synchronized void close() {
+        if(mClosed)
+            return;
+
+        force();
+        for(Segment segment : mSegments) {
+            segment.close();
+        }
+        mClosed = true;
+    }
+
+    private Segment getLastSegment() {
+        return mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+    }
+
+    private Segment findSegment(long sequence) {
+        if(sequence < getFirstSequence() || sequence >= mNextSequence)
+            return null;
+
+        int low = 0;
+        int high = mSegments.size() - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(mSegments.get(middle).mFirstSequence <= sequence) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return mSegments.get(low);
+    }
+
+    private Segment createSegment(long firstSequence, long firstTimestamp) throws IOException {
+        Segment last = getLastSegment();
+        if(last != null && (last.mLastSequence < 0 || last.mFirstSequence == firstSequence)) {
+            // left empty by a crash right after it was created, or only holding the item that
+            // is written again
+            mSegments.remove(mSegments.size() - 1);
+            last.close();
+            deleteFile(last.mFile);
+        }
+
+        File file = new File(mDirectory, String.format(Locale.US, "%016x", firstSequence) + SEGMENT_SUFFIX);
+        Segment segment = Segment.create(file, mSegmentSize, firstSequence, firstTimestamp);
+        mSegments.add(segment);
+        return segment;
+    }
+
+    private void trimToMaxBytes() {
+        while(mSegments.size() > 1 && getSize() > mMaxBytes) {
+            removeOldestSegment();
+        }
+    }
+
+    private void removeOldestSegment() {
+        Segment segment = mSegments.remove(0);
+        segment.close();
+        deleteFile(segment.mFile);
+    }
+
+    private LogItem read(Segment segment, int offset) {
+        ByteBuffer buffer = segment.mBuffer;
+        int length = buffer.getInt(offset);
+        int priority = buffer.get(offset + 28) & 0x0f;
+        int logBuffer = (buffer.get(offset + 28) & 0xf0) >> 4;
+        int tagLength = buffer.getShort(offset + 29);
+        int tagStart = offset + RECORD_HEADER_SIZE;
+
+        ByteBuffer message = buffer.duplicate();
+        message.position(tagStart + tagLength);
+        byte[] messageBytes = new byte[length - RECORD_HEADER_SIZE - tagLength];
+        message.get(messageBytes);
+
+        LogcatItem item = new LogcatItem(PRIORITIES[Math.min(Math.max(priority, 0), PRIORITIES.length - 1)],
+                mTagPool.intern(buffer, tagStart, tagStart + tagLength),
+                buffer.getLong(offset + 12), messageBytes, buffer.getInt(offset + 20), buffer.getInt(offset + 24));
+        item.setSequence(buffer.getLong(offset + 4));
+        item.setBuffer(BUFFERS[Math.min(logBuffer, BUFFERS.length - 1)]);
+        return item;
+    }
+
+    /**
+     * @return the number of bytes of the message that fit in the given length without cutting a
+     *         character in half
+     */
+    private static int getCutLength(byte[] message, int maxLength) {
+        if(message.length <= maxLength)
+            return message.length;
+
+        int length = maxLength;
+        while(length > 0 && (message[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    private static void deleteFile(File file) {
+        if(!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static class Segment {
+        private final File mFile;
+        private final RandomAccessFile mRandomAccessFile;
+        private final MappedByteBuffer mBuffer;
+        private final long mFirstSequence;
+        private final long mFirstTimestamp;
+        private int mEnd = SEGMENT_HEADER_SIZE;
+        private long mLastSequence = -1;
+        private int mItemCount;
+        private boolean mIndexed;
+
+        // sparse index of every INDEX_INTERVAL:th item
+        private long[] mIndexSequences = new long[16];
+        private long[] mIndexTimestamps = new long[16];
+        private int[] mIndexOffsets = new int[16];
+        private int mIndexCount;
+
+        private Segment(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+            mFile = file;
+            mRandomAccessFile = randomAccessFile;
+            mBuffer = buffer;
+            mFirstSequence = buffer.getLong(4);
+            mFirstTimestamp = buffer.getLong(12);
+        }
+
+        public static Segment create(File file, int size, long firstSequence, long firstTimestamp) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(0);
+                randomAccessFile.setLength(size);
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putLong(4, firstSequence);
+                buffer.putLong(12, firstTimestamp);
+                buffer.putInt(0, MAGIC);
+
+                Segment segment = new Segment(file, randomAccessFile, buffer);
+                segment.mIndexed = true;
+                return segment;
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the segment or null if the file isn't a segment
+         */
+        public static Segment open(File file) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                long size = randomAccessFile.length();
+                if(size < SEGMENT_HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    randomAccessFile.close();
+                    return null;
+                }
+
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if(buffer.getInt(0) != MAGIC) {
+                    randomAccessFile.close();
+                    return null;
+                }
+
+                return new Segment(file, randomAccessFile, buffer);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Finds the end of the records and indexes them, when the segment is first read.
+         */
+        public void buildIndex() {
+            if(mIndexed)
+                return;
+
+            mIndexed = true;
+            int limit = mBuffer.capacity();
+            int offset = SEGMENT_HEADER_SIZE;
+            while(offset + RECORD_HEADER_SIZE <= limit) {
+                int length = mBuffer.getInt(offset);
+                int tagLength = mBuffer.getShort(offset + 29);
+                if(length < RECORD_HEADER_SIZE || length > limit - offset ||
+                        tagLength < 0 || tagLength > length - RECORD_HEADER_SIZE)
+                    break;
+
+                add(offset, length, mBuffer.getLong(offset + 4), mBuffer.getLong(offset + 12));
+                offset += length;
+            }
+        }
+
+        public void add(int offset, int length, long sequence, long timestamp) {
+            mEnd = offset + length;
+            if(sequence == mLastSequence)
+                return;
+
+            if(mItemCount % INDEX_INTERVAL == 0) {
+                if(mIndexCount == mIndexOffsets.length) {
+                    mIndexSequences = Arrays.copyOf(mIndexSequences, mIndexCount * 2);
+                    mIndexTimestamps = Arrays.copyOf(mIndexTimestamps, mIndexCount * 2);
+                    mIndexOffsets = Arrays.copyOf(mIndexOffsets, mIndexCount * 2);
+                }
+                mIndexSequences[mIndexCount] = sequence;
+                mIndexTimestamps[mIndexCount] = timestamp;
+                mIndexOffsets[mIndexCount] = offset;
+                mIndexCount++;
+            }
+            mItemCount++;
+            mLastSequence = sequence;
+        }
+
+        /**
+         * @return offset of the last record written for the sequence number or -1 if there is none
+         */
+        public int find(long sequence) {
+            buildIndex();
+
+            int offset = SEGMENT_HEADER_SIZE;
+            int low = 0;
+            int high = mIndexCount - 1;
+            while(low <= high) {
+                int middle = (low + high) >>> 1;
+                if(mIndexSequences[middle] <= sequence) {
+                    offset = mIndexOffsets[middle];
+                    low = middle + 1;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+
+            int found = -1;
+            for(; offset < mEnd; offset += mBuffer.getInt(offset)) {
+                long recordSequence = mBuffer.getLong(offset + 4);
+                if(recordSequence == sequence) {
+                    found = offset;
+                }
+                else if(recordSequence > sequence) {
+                    break;
+                }
+            }
+            return found;
+        }
+
+        public void close() {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                // the mapping stays valid until it is collected
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * The ring buffers logcat keeps its lines in, see "logcat -b".
+ */
+public enum LogBuffer {
+    MAIN("main"),
+    SYSTEM("system"),
+    CRASH("crash"),
+    EVENTS("events"),
+
+    /**
+     * Items read without selecting a buffer, logcat then mixes the default ones.
+     */
+    UNKNOWN(null);
+
+    private final String mName;
+
+    private LogBuffer(String name) {
+        mName = name;
+    }
+
+    /**
+     * @return the name logcat knows the buffer by or null for {@link #UNKNOWN}
+     */
+    public String getName() {
+        return mName;
+    }
+}
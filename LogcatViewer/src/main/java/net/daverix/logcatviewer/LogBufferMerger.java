@@ -0,0 +1,647 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads several logcat buffers in parallel, one thread per buffer, and merges their items into
+ * one {@link LogcatReader} in the order they were logged. Every item is tagged with the
+ * {@link LogBuffer} it was read from.
+ *
+ * The reader threads parse their lines and collect the lines of a multi-line message into one
+ * item before it is queued. Every buffer has its own bounded {@link SpscQueue}, so a busy buffer
+ * only fills its own queue and the items of another one, like the crash buffer, are never queued
+ * behind its backlog. The merging is done on the calling thread, which takes what every queue has
+ * in turn: an item is handed to the reader when every buffer that is still open has an item
+ * waiting, which makes it the oldest one, or when it has waited for the reorder window, so a
+ * quiet buffer only holds the others back that long.
+ *
+ * What happens when the queue of a buffer is full is decided by the {@link OverloadPolicy}, like
+ * in a {@link LogPipeline}. Items of the crash buffer are never dropped.
+ */
+public class LogBufferMerger {
+    public static final long DEFAULT_REORDER_WINDOW_MILLIS = 50;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final int DEFAULT_SAMPLE_RATE = LogPipeline.DEFAULT_SAMPLE_RATE;
+
+    private static final int MAX_RETAINED_MESSAGE_CAPACITY = 64 * 1024;
+
+    // oldest first, items logged at the same time in the order they were read
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            long lhsTimestamp = lhs.item.getTimestampMillis();
+            long rhsTimestamp = rhs.item.getTimestampMillis();
+            if(lhsTimestamp != rhsTimestamp)
+                return lhsTimestamp < rhsTimestamp ? -1 : 1;
+
+            return lhs.order < rhs.order ? -1 : lhs.order == rhs.order ? 0 : 1;
+        }
+    };
+
+    private Map<LogBuffer, LogItemFactory> mFactories = new EnumMap<LogBuffer, LogItemFactory>(LogBuffer.class);
+    private long mReorderWindowMillis = DEFAULT_REORDER_WINDOW_MILLIS;
+    private int mQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private OverloadPolicy mOverloadPolicy = OverloadPolicy.BLOCK;
+    private int mSampleRate = DEFAULT_SAMPLE_RATE;
+
+    private final AtomicLong mItemCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private volatile Map<LogBuffer, SpscQueue<Entry>> mQueues;
+
+    /**
+     * Sets the buffers to read and the factory used by the thread of each one. Factories usually
+     * keep state that is not thread safe, so they must not be shared. Takes effect the next time
+     * {@link #read} is called.
+     *
+     * @param factories the factory for every buffer to read
+     */
+    public synchronized void setBuffers(Map<LogBuffer, LogItemFactory> factories) {
+        if(factories == null)
+            throw new IllegalArgumentException("factories is null");
+
+        Map<LogBuffer, LogItemFactory> copy = new EnumMap<LogBuffer, LogItemFactory>(LogBuffer.class);
+        for(Map.Entry<LogBuffer, LogItemFactory> entry : factories.entrySet()) {
+            if(entry.getKey() == null || entry.getKey() == LogBuffer.UNKNOWN)
+                throw new IllegalArgumentException("factories must be for named buffers");
+
+            if(entry.getValue() == null)
+                throw new IllegalArgumentException("factories contains null");
+
+            copy.put(entry.getKey(), entry.getValue());
+        }
+        mFactories = copy;
+    }
+
+    /**
+     * @return the buffers to read, empty if none have been set
+     */
+    public synchronized Set<LogBuffer> getBuffers() {
+        return Collections.unmodifiableSet(mFactories.keySet());
+    }
+
+    /**
+     * @param reorderWindowMillis longest time an item waits for items logged before it to be read
+     *                            from the other buffers
+     */
+    public synchronized void setReorderWindowMillis(long reorderWindowMillis) {
+        if(reorderWindowMillis < 0)
+            throw new IllegalArgumentException("reorderWindowMillis must not be negative");
+
+        mReorderWindowMillis = reorderWindowMillis;
+    }
+
+    /**
+     * @param queueCapacity maximum number of items of one buffer waiting to be merged
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if(queueCapacity <= 0)
+            throw new IllegalArgumentException("queueCapacity must be greater than zero");
+
+        mQueueCapacity = queueCapacity;
+    }
+
+    public synchronized void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        if(overloadPolicy == null)
+            throw new IllegalArgumentException("overloadPolicy is null");
+
+        mOverloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * @param sampleRate keep one of this many items while overloaded with {@link OverloadPolicy#SAMPLE}
+     */
+    public synchronized void setSampleRate(int sampleRate) {
+        if(sampleRate <= 0)
+            throw new IllegalArgumentException("sampleRate must be greater than zero");
+
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * Reads the buffers until the end of all channels or until the thread is interrupted. The
+     * reader threads have stopped when this returns, so the factories can be used again. The
+     * channels must stop blocking when a reader thread is interrupted, like the ones from
+     * {@link java.nio.channels.Channels#newChannel(java.io.InputStream)}.
+     *
+     * @param channels the output of logcat in the "-v time" format for every buffer that has
+     *                 been set with {@link #setBuffers(Map)}
+     * @param reader where the items are appended, only used from the calling thread
+     */
+    public void read(Map<LogBuffer, ReadableByteChannel> channels, LogcatReader reader)
+            throws IOException, ParseException {
+        if(channels == null || channels.isEmpty())
+            throw new IllegalArgumentException("channels is empty");
+
+        if(reader == null)
+            throw new IllegalArgumentException("reader is null");
+
+        final Map<LogBuffer, LogItemFactory> factories;
+        final long reorderWindowNanos;
+        final int queueCapacity;
+        final OverloadPolicy overloadPolicy;
+        final int sampleRate;
+        synchronized (this) {
+            factories = mFactories;
+            reorderWindowNanos = TimeUnit.MILLISECONDS.toNanos(mReorderWindowMillis);
+            queueCapacity = mQueueCapacity;
+            overloadPolicy = mOverloadPolicy;
+            sampleRate = mSampleRate;
+        }
+
+        Merger merger = new Merger(channels.keySet(), reorderWindowNanos, reader);
+        Map<LogBuffer, SpscQueue<Entry>> queues = new EnumMap<LogBuffer, SpscQueue<Entry>>(LogBuffer.class);
+        List<BufferReader> bufferReaders = new ArrayList<BufferReader>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(Map.Entry<LogBuffer, ReadableByteChannel> entry : channels.entrySet()) {
+            LogItemFactory factory = factories.get(entry.getKey());
+            if(factory == null)
+                throw new IllegalArgumentException("no factory for the " + entry.getKey() + " buffer");
+
+            SpscQueue<Entry> queue = new SpscQueue<Entry>(queueCapacity);
+            queues.put(entry.getKey(), queue);
+            merger.setQueue(entry.getKey(), queue);
+
+            BufferReader bufferReader = new BufferReader(entry.getKey(), factory, entry.getValue(), queue,
+                    merger, overloadPolicy, sampleRate, reader.getParseFailures());
+            bufferReaders.add(bufferReader);
+            threads.add(new Thread(bufferReader, "LogBufferMerger " + entry.getKey().getName()));
+        }
+        mQueues = queues;
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            merger.merge();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while merging the buffers");
+        } finally {
+            stop(threads);
+        }
+
+        for(BufferReader bufferReader : bufferReaders) {
+            bufferReader.throwError();
+        }
+    }
+
+    /**
+     * Stops the reader threads and waits for them to exit, also when the calling thread has been
+     * interrupted, so no factory is still in use when {@link #read} returns.
+     */
+    private static void stop(List<Thread> threads) {
+        for(Thread thread : threads) {
+            thread.interrupt();
+        }
+
+        boolean interrupted = Thread.interrupted();
+        for(Thread thread : threads) {
+            while(thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return statistics about the buffers, the queue depths are of the current or last read
+     */
+    public Metrics getMetrics() {
+        Map<LogBuffer, SpscQueue<Entry>> queues = mQueues;
+        int[] queueDepths = new int[LogBuffer.values().length];
+        int[] queueMaxDepths = new int[LogBuffer.values().length];
+        if(queues != null) {
+            for(Map.Entry<LogBuffer, SpscQueue<Entry>> entry : queues.entrySet()) {
+                queueDepths[entry.getKey().ordinal()] = entry.getValue().size();
+                queueMaxDepths[entry.getKey().ordinal()] = entry.getValue().getMaxSize();
+            }
+        }
+        return new Metrics(mItemCount.get(), mDroppedCount.get(), queueDepths, queueMaxDepths);
+    }
+
+    /**
+     * An item on its way to the merger, or the end of a buffer if the item is null
+     */
+    private static class Entry {
+        public final LogBuffer buffer;
+        public final LogItem item;
+        public long order;
+        public long queuedNanos;
+
+        public Entry(LogBuffer buffer, LogItem item) {
+            this.buffer = buffer;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Merges the queued items of all buffers into the reader, the state of one call to
+     * {@link #read}
+     */
+    private static class Merger {
+        private final LogBuffer[] mBuffers;
+        private final long mReorderWindowNanos;
+        private final LogcatReader mReader;
+        private final PriorityQueue<Entry> mWaiting = new PriorityQueue<Entry>(64, ORDER);
+        private final SpscQueue<Entry>[] mQueues = SpscQueue.newArray(LogBuffer.values().length);
+        private final int[] mWaitingCounts = new int[LogBuffer.values().length];
+        private final boolean[] mOpen = new boolean[LogBuffer.values().length];
+        private volatile Thread mParkedThread;
+        private int mOpenCount;
+        private long mNextOrder;
+        private LogItem mPrevious;
+
+        public Merger(Set<LogBuffer> buffers, long reorderWindowNanos, LogcatReader reader) {
+            mBuffers = buffers.toArray(new LogBuffer[buffers.size()]);
+            mReorderWindowNanos = reorderWindowNanos;
+            mReader = reader;
+            for(LogBuffer buffer : mBuffers) {
+                mOpen[buffer.ordinal()] = true;
+            }
+            mOpenCount = mBuffers.length;
+        }
+
+        public void setQueue(LogBuffer buffer, SpscQueue<Entry> queue) {
+            mQueues[buffer.ordinal()] = queue;
+        }
+
+        public void merge() throws InterruptedException {
+            while(mOpenCount > 0 || !mWaiting.isEmpty()) {
+                boolean added = takeQueued();
+                long now = System.nanoTime();
+                appendReady(now);
+                if(added)
+                    continue;
+
+                // nothing new, wait for an item or until the oldest one has waited long enough
+                if(mOpenCount == 0 && mWaiting.isEmpty())
+                    break;
+
+                // a multi-line message is updated once it has been collected for the flush interval
+                long timeout = mReader.flushIfDue();
+                if(!mWaiting.isEmpty()) {
+                    long reorderTimeout = mWaiting.peek().queuedNanos + mReorderWindowNanos - now;
+                    if(reorderTimeout <= 0)
+                        continue;
+
+                    if(timeout < 0 || reorderTimeout < timeout) {
+                        timeout = reorderTimeout;
+                    }
+                }
+                park(timeout);
+            }
+            mReader.flush();
+        }
+
+        /**
+         * Takes what the queue of every open buffer has, but not more, so a buffer that is
+         * written faster than it is merged can't keep the others waiting.
+         *
+         * @return true if anything was taken
+         */
+        private boolean takeQueued() {
+            boolean added = false;
+            for(LogBuffer buffer : mBuffers) {
+                if(!mOpen[buffer.ordinal()])
+                    continue;
+
+                SpscQueue<Entry> queue = mQueues[buffer.ordinal()];
+                for(int count = queue.size(); count > 0; count--) {
+                    add(queue.poll());
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        private boolean hasQueued() {
+            for(LogBuffer buffer : mBuffers) {
+                if(mOpen[buffer.ordinal()] && !mQueues[buffer.ordinal()].isEmpty())
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Waits until an item is queued, like {@link SpscQueue} the thread is announced before
+         * the queues are checked again so a wake up is never missed.
+         */
+        private void park(long timeoutNanos) throws InterruptedException {
+            mParkedThread = Thread.currentThread();
+            if(!hasQueued()) {
+                if(timeoutNanos >= 0) {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+                else {
+                    LockSupport.park(this);
+                }
+            }
+            mParkedThread = null;
+
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+
+        /**
+         * Wakes up the merging thread if it waits, called by a reader thread after queuing.
+         */
+        public void wakeUp() {
+            Thread thread = mParkedThread;
+            if(thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void add(Entry entry) {
+            int buffer = entry.buffer.ordinal();
+            if(entry.item == null) {
+                mOpen[buffer] = false;
+                mOpenCount--;
+                return;
+            }
+
+            entry.order = mNextOrder++;
+            entry.queuedNanos = System.nanoTime();
+            mWaiting.add(entry);
+            mWaitingCounts[buffer]++;
+        }
+
+        private void appendReady(long now) {
+            while(!mWaiting.isEmpty()) {
+                Entry oldest = mWaiting.peek();
+                if(!isEveryOpenBufferWaiting() && now - oldest.queuedNanos < mReorderWindowNanos)
+                    return;
+
+                mWaiting.poll();
+                mWaitingCounts[oldest.buffer.ordinal()]--;
+                append(oldest.item);
+            }
+        }
+
+        /**
+         * @return true if an item is waiting for every buffer that may still get new items, then
+         *         nothing older than the oldest waiting item can come
+         */
+        private boolean isEveryOpenBufferWaiting() {
+            for(LogBuffer buffer : mBuffers) {
+                if(mOpen[buffer.ordinal()] && mWaitingCounts[buffer.ordinal()] == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private void append(LogItem item) {
+            // lines of a message that were read after the item was queued come as another item
+            if(LogcatReader.isContinuation(mPrevious, item)) {
+                mReader.appendToLastItem(item);
+            }
+            else {
+                mReader.append(item);
+                mPrevious = item;
+            }
+        }
+    }
+
+    /**
+     * Reads, parses and queues the items of one buffer on its own thread
+     */
+    private class BufferReader implements Runnable, ByteLineReader.LineHandler {
+        private final LogBuffer mBuffer;
+        private final LogItemFactory mFactory;
+        private final ReadableByteChannel mChannel;
+        private final SpscQueue<Entry> mQueue;
+        private final Merger mMerger;
+        private final OverloadPolicy mPolicy;
+        private final int mSampleRate;
+        private final ParseFailures mParseFailures;
+        private final ParseResult mResult = new ParseResult();
+        private LogItem mPending;
+        private StringBuilder mPendingMessage = new StringBuilder();
+        private boolean mHasPendingMessage;
+        private long mOverloadedItems;
+        private volatile Exception mError;
+
+        public BufferReader(LogBuffer buffer, LogItemFactory factory, ReadableByteChannel channel,
+                            SpscQueue<Entry> queue, Merger merger, OverloadPolicy policy, int sampleRate,
+                            ParseFailures parseFailures) {
+            mBuffer = buffer;
+            mFactory = factory;
+            mChannel = channel;
+            mQueue = queue;
+            mMerger = merger;
+            mPolicy = policy;
+            mSampleRate = sampleRate;
+            mParseFailures = parseFailures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if(!ByteLineReader.read(mChannel, this))
+                    return;
+
+                queuePending();
+            } catch (InterruptedIOException e) {
+                // stopped
+                return;
+            } catch (IOException e) {
+                mError = e;
+            } catch (ParseException e) {
+                mError = e;
+            }
+
+            try {
+                mQueue.put(new Entry(mBuffer, null));
+                mMerger.wakeUp();
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        @Override
+        public void onLine(ByteBuffer buffer, int start, int end) throws IOException {
+            if(ByteLineReader.startsWith(buffer, start, end, LogcatReader.BEGINNING_OF_BUFFER))
+                return;
+
+            int status = mResult.parse(mFactory, buffer, start, end);
+            if(status != ParseResult.OK) {
+                mParseFailures.record(status, mResult.getLine());
+            }
+
+            LogItem item = mResult.getItem();
+            if(item instanceof LogcatItem) {
+                ((LogcatItem) item).setBuffer(mBuffer);
+            }
+            if(LogcatReader.isContinuation(mPending, item)) {
+                if(!mHasPendingMessage) {
+                    mPendingMessage.setLength(0);
+                    mPendingMessage.append(mPending.getMessage());
+                    mHasPendingMessage = true;
+                }
+                mPendingMessage.append('\n').append(item.getMessage());
+                return;
+            }
+
+            queuePending();
+            mPending = item;
+        }
+
+        @Override
+        public void onLinesRead() throws IOException {
+            // logcat writes the lines of a message together, it is complete
+            queuePending();
+        }
+
+        private void queuePending() throws InterruptedIOException {
+            if(mPending == null)
+                return;
+
+            if(mHasPendingMessage) {
+                mPending.setMessage(mPendingMessage.toString());
+                mHasPendingMessage = false;
+                if(mPendingMessage.capacity() > MAX_RETAINED_MESSAGE_CAPACITY) {
+                    mPendingMessage = new StringBuilder();
+                }
+            }
+
+            LogItem item = mPending;
+            mPending = null;
+            mItemCount.incrementAndGet();
+
+            Entry entry = new Entry(mBuffer, item);
+            if(!mQueue.offer(entry)) {
+                if(shouldDropWhenFull(item)) {
+                    mDroppedCount.incrementAndGet();
+                    return;
+                }
+
+                try {
+                    mQueue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for the merger");
+                }
+            }
+            mMerger.wakeUp();
+        }
+
+        private boolean shouldDropWhenFull(LogItem item) {
+            if(mBuffer == LogBuffer.CRASH)
+                return false;
+
+            switch (mPolicy) {
+                case DROP_VERBOSE:
+                    return item.getPriority() == Priority.VERBOSE;
+                case SAMPLE:
+                    return mOverloadedItems++ % mSampleRate != 0;
+                case BLOCK:
+                default:
+                    return false;
+            }
+        }
+
+        public void throwError() throws IOException, ParseException {
+            Exception error = mError;
+            if(error instanceof IOException)
+                throw (IOException) error;
+
+            if(error instanceof ParseException)
+                throw (ParseException) error;
+        }
+    }
+
+    /**
+     * Snapshot of the merger statistics
+     */
+    public static class Metrics {
+        private final long mItemCount;
+        private final long mDroppedCount;
+        private final int[] mQueueDepths;
+        private final int[] mQueueMaxDepths;
+
+        public Metrics(long itemCount, long droppedCount, int[] queueDepths, int[] queueMaxDepths) {
+            mItemCount = itemCount;
+            mDroppedCount = droppedCount;
+            mQueueDepths = queueDepths;
+            mQueueMaxDepths = queueMaxDepths;
+        }
+
+        /**
+         * @return number of items read from all buffers, including dropped ones
+         */
+        public long getItemCount() {
+            return mItemCount;
+        }
+
+        /**
+         * @return number of items dropped by the overload policy
+         */
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        /**
+         * @return items of the buffer waiting to be merged
+         */
+        public int getQueueDepth(LogBuffer buffer) {
+            return mQueueDepths[buffer.ordinal()];
+        }
+
+        public int getQueueMaxDepth(LogBuffer buffer) {
+            return mQueueMaxDepths[buffer.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("items: ").append(mItemCount).append(", dropped: ").append(mDroppedCount);
+            for(LogBuffer buffer : LogBuffer.values()) {
+                if(mQueueMaxDepths[buffer.ordinal()] > 0) {
+                    builder.append(", ").append(buffer.getName()).append(" queue: ")
+                            .append(mQueueDepths[buffer.ordinal()])
+                            .append(" (max ").append(mQueueMaxDepths[buffer.ordinal()]).append(")");
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
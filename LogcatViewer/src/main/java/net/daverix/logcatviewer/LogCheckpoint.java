@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where an earlier read stopped, taken from the items in a store. Reading goes on from a little
+ * before the last item, since logcat doesn't write the lines strictly in the order they were
+ * logged, and the items of that overlap that are already in the store are recognized by a
+ * fingerprint of their header and first line and skipped.
+ *
+ * A checkpoint is used up by the reader it is given to.
+ */
+public class LogCheckpoint {
+    public static final long DEFAULT_OVERLAP_MILLIS = 1000;
+
+    // bounds the work for a log storm in the last second
+    private static final int MAX_FINGERPRINTS = 10000;
+
+    private final long mLastTimestamp;
+    private final long mStartMillis;
+    private final long mEndMillis;
+    private final Map<Long, Integer> mFingerprints = new HashMap<Long, Integer>();
+    private int mRemaining;
+
+    private LogCheckpoint(long lastTimestamp, long overlapMillis) {
+        mLastTimestamp = lastTimestamp;
+        mStartMillis = lastTimestamp - overlapMillis;
+        mEndMillis = lastTimestamp + overlapMillis;
+    }
+
+    /**
+     * @param store the store with the items of the earlier read
+     * @param overlapMillis how long before the last item to start reading again
+     * @return the checkpoint or null if the store is empty
+     */
+    public static LogCheckpoint create(LogStore store, long overlapMillis) {
+        if(store == null)
+            throw new IllegalArgumentException("store is null");
+
+        if(overlapMillis < 0)
+            throw new IllegalArgumentException("overlapMillis must not be negative");
+
+        long sequence = store.getNextSequence() - 1;
+        LogItem last = store.get(sequence);
+        if(last == null)
+            return null;
+
+        LogCheckpoint checkpoint = new LogCheckpoint(last.getTimestampMillis(), overlapMillis);
+        // the lines are out of order by less than the overlap, stop a whole overlap before it
+        // instead of going through the rest of the store and its archive
+        long stopMillis = checkpoint.mStartMillis - overlapMillis;
+        LogItem item = last;
+        while(item != null && item.getTimestampMillis() >= stopMillis &&
+                checkpoint.mRemaining < MAX_FINGERPRINTS) {
+            if(item.getTimestampMillis() >= checkpoint.mStartMillis) {
+                checkpoint.add(getFingerprint(item));
+            }
+            item = store.get(--sequence);
+        }
+        return checkpoint;
+    }
+
+    private void add(long fingerprint) {
+        Integer count = mFingerprints.get(fingerprint);
+        mFingerprints.put(fingerprint, count == null ? 1 : count + 1);
+        mRemaining++;
+    }
+
+    /**
+     * @return time to start reading from again
+     */
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    /**
+     * @return time of the last item of the earlier read
+     */
+    public long getLastTimestampMillis() {
+        return mLastTimestamp;
+    }
+
+    /**
+     * Checks a newly read item against the stored ones, an item found in the store is only
+     * matched once.
+     *
+     * @param item an item from the start of the new read, before any lines are added to it
+     * @return true if the item was read before and should be skipped
+     */
+    boolean isRead(LogItem item) {
+        if(item.getTimestampMillis() < mStartMillis)
+            return true;
+
+        if(mRemaining == 0 || item.getTimestampMillis() > mEndMillis)
+            return false;
+
+        long fingerprint = getFingerprint(item);
+        Integer count = mFingerprints.get(fingerprint);
+        if(count == null)
+            return false;
+
+        if(count == 1) {
+            mFingerprints.remove(fingerprint);
+        }
+        else {
+            mFingerprints.put(fingerprint, count - 1);
+        }
+        mRemaining--;
+        return true;
+    }
+
+    /**
+     * @return true if no more items that were read before can come after the given one
+     */
+    boolean isPast(LogItem item) {
+        long timestamp = item.getTimestampMillis();
+        return timestamp > mEndMillis || mRemaining == 0 && timestamp > mLastTimestamp;
+    }
+
+    /**
+     * The stored items may have lines added to their message, only the first line is the same
+     * when it is read again.
+     */
+    private static long getFingerprint(LogItem item) {
+        String message = item.getMessage();
+        int end = message.indexOf('\n');
+        if(end < 0) {
+            end = message.length();
+        }
+
+        long hash = item.getTimestampMillis();
+        hash = hash * 31 + item.getPid();
+        hash = hash * 31 + item.getPriority().ordinal();
+        hash = hash * 31 + item.getTag().hashCode();
+        for(int i = 0; i < end; i++) {
+            hash = hash * 31 + message.charAt(i);
+        }
+        return hash;
+    }
+}
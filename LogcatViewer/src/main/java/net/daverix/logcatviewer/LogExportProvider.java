@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Lets other applications read exported logs through content URIs, so they can be shared without
+ * putting the text in an intent and without making the files readable by everyone. Only the
+ * files in {@link #getExportDirectory(Context)} are served and only for reading.
+ *
+ * Declare it in the manifest of the application with the authority from
+ * {@link #getAuthority(Context)}, the package name followed by ".logexport", not exported and with
+ * grantUriPermissions set. Without it {@link LogFragment} shares the text in the intent.
+ */
+public class LogExportProvider extends ContentProvider {
+    private static final String AUTHORITY_SUFFIX = ".logexport";
+    private static final String EXPORT_DIRECTORY = "logexport";
+    private static final String[] COLUMNS = { OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE };
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * @param context any context of the application
+     * @return the authority of the provider in the application
+     */
+    public static String getAuthority(Context context) {
+        return context.getPackageName() + AUTHORITY_SUFFIX;
+    }
+
+    /**
+     * @param context any context of the application
+     * @return true if the provider is declared in the manifest of the application
+     */
+    public static boolean isAvailable(Context context) {
+        return context.getPackageManager().resolveContentProvider(getAuthority(context), 0) != null;
+    }
+
+    /**
+     * @param context any context of the application
+     * @return the directory in the cache where exported logs are written
+     */
+    public static File getExportDirectory(Context context) {
+        return new File(context.getCacheDir(), EXPORT_DIRECTORY);
+    }
+
+    /**
+     * @param context any context of the application
+     * @param file a file in the export directory
+     * @return the content URI of the file
+     */
+    public static Uri getUri(Context context, File file) {
+        if(file == null)
+            throw new IllegalArgumentException("file is null");
+
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(getAuthority(context))
+                .appendPath(file.getName())
+                .build();
+    }
+
+    private File getFile(Uri uri) throws FileNotFoundException {
+        String name = uri.getLastPathSegment();
+        if(name == null || name.contains("/") || name.startsWith("."))
+            throw new FileNotFoundException("no exported log for " + uri);
+
+        File file = new File(getExportDirectory(getContext()), name);
+        if(!file.isFile())
+            throw new FileNotFoundException("no exported log for " + uri);
+
+        return file;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if(!"r".equals(mode))
+            throw new FileNotFoundException("exported logs can only be read");
+
+        return ParcelFileDescriptor.open(getFile(uri), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        File file;
+        try {
+            file = getFile(uri);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        // applications that receive a shared file ask for its name and size
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, 1);
+        cursor.addRow(new Object[] { file.getName(), file.length() });
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        String name = uri.getLastPathSegment();
+        if(name != null && name.endsWith(".gz"))
+            return "application/gzip";
+
+        return "text/plain";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("exported logs can only be read");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("exported logs can only be read");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("exported logs can only be read");
+    }
+}
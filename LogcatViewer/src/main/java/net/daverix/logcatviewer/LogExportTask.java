@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exports log items to a file in the cache in the background and gives back its content URI from
+ * {@link LogExportProvider}. Earlier exports are deleted first, so the cache only holds the last
+ * one.
+ */
+public class LogExportTask extends AsyncTask<Void, Integer, Uri> {
+    private final Context mContext;
+    private final List<LogItem> mItems;
+    private final LogExporter mExporter;
+    private final Callback mCallback;
+
+    /**
+     * @param context any context of the application
+     * @param items the items to export, must not be changed while exporting
+     * @param exporter writes the items
+     * @param callback notified on the main thread about the progress and the result
+     */
+    public LogExportTask(Context context, List<LogItem> items, LogExporter exporter, Callback callback) {
+        if(context == null)
+            throw new IllegalArgumentException("context is null");
+
+        if(items == null)
+            throw new IllegalArgumentException("items is null");
+
+        if(exporter == null)
+            throw new IllegalArgumentException("exporter is null");
+
+        if(callback == null)
+            throw new IllegalArgumentException("callback is null");
+
+        mContext = context.getApplicationContext();
+        mItems = items;
+        mExporter = exporter;
+        mCallback = callback;
+    }
+
+    @Override
+    protected Uri doInBackground(Void... params) {
+        File directory = LogExportProvider.getExportDirectory(mContext);
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e("LogExportTask", "Could not create " + directory);
+            return null;
+        }
+        deleteExports(directory);
+
+        File file = new File(directory, "log-" + System.currentTimeMillis() + mExporter.getFileExtension());
+        try {
+            mExporter.export(mItems, file, new LogExporter.ProgressListener() {
+                @Override
+                public void onProgress(int exportedCount, int totalCount) {
+                    publishProgress(exportedCount, totalCount);
+                }
+            });
+        } catch (IOException e) {
+            Log.e("LogExportTask", "Error exporting log items", e);
+            return null;
+        }
+
+        return LogExportProvider.getUri(mContext, file);
+    }
+
+    private static void deleteExports(File directory) {
+        File[] files = directory.listFiles();
+        if(files == null)
+            return;
+
+        for(File file : files) {
+            file.delete();
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        mCallback.onExportProgress(values[0], values[1]);
+    }
+
+    @Override
+    protected void onPostExecute(Uri uri) {
+        if(uri != null) {
+            mCallback.onExportFinished(uri, mExporter.getMimeType());
+        }
+        else {
+            mCallback.onExportFailed();
+        }
+    }
+
+    /**
+     * Interface for following an export
+     */
+    public interface Callback {
+        /**
+         * @param exportedCount number of items written
+         * @param totalCount number of items to write
+         */
+        public void onExportProgress(int exportedCount, int totalCount);
+
+        /**
+         * @param uri content URI of the exported file
+         * @param mimeType type of the exported file
+         */
+        public void onExportFinished(Uri uri, String mimeType);
+
+        public void onExportFailed();
+    }
+}
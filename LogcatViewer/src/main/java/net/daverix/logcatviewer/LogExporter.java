@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the text of log items to a stream or file item by item through a {@link LogTextFactory},
+ * so a large selection never has to fit in memory as one string. The text can be gzip compressed.
+ *
+ * Stops with an {@link InterruptedIOException} if the thread is interrupted. A file is written
+ * next to its final name first and only renamed when it is complete, so a file that exists is
+ * never half written.
+ *
+ * Doesn't depend on Android so it can be used and measured on a plain JVM.
+ */
+public class LogExporter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final LogTextFactory mTextFactory;
+    private boolean mCompressed;
+
+    /**
+     * @param textFactory writes the text of the items
+     */
+    public LogExporter(LogTextFactory textFactory) {
+        if(textFactory == null)
+            throw new IllegalArgumentException("textFactory is null");
+
+        mTextFactory = textFactory;
+    }
+
+    /**
+     * @param compressed true to gzip compress the text
+     */
+    public void setCompressed(boolean compressed) {
+        mCompressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return mCompressed;
+    }
+
+    /**
+     * @return the mime type of what is written
+     */
+    public String getMimeType() {
+        return mCompressed ? "application/gzip" : "text/plain";
+    }
+
+    /**
+     * @return the file name extension of what is written
+     */
+    public String getFileExtension() {
+        return mCompressed ? ".txt.gz" : ".txt";
+    }
+
+    /**
+     * Writes the items to a file, replacing it if it exists.
+     *
+     * @param items the items to write
+     * @param file where the items are written
+     * @param listener notified about the progress or null
+     */
+    public void export(List<LogItem> items, File file, ProgressListener listener) throws IOException {
+        if(file == null)
+            throw new IllegalArgumentException("file is null");
+
+        File partFile = new File(file.getPath() + ".part");
+        boolean exported = false;
+        try {
+            FileOutputStream outputStream = new FileOutputStream(partFile);
+            try {
+                export(items, outputStream, listener);
+            } finally {
+                outputStream.close();
+            }
+
+            if(file.exists() && !file.delete())
+                throw new IOException("could not replace " + file);
+
+            if(!partFile.renameTo(file))
+                throw new IOException("could not rename " + partFile + " to " + file);
+
+            exported = true;
+        } finally {
+            if(!exported) {
+                partFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the items to a stream. The stream is not closed, but everything is written to it
+     * when this returns.
+     *
+     * @param items the items to write
+     * @param outputStream where the items are written
+     * @param listener notified about the progress or null
+     */
+    public void export(List<LogItem> items, OutputStream outputStream, ProgressListener listener)
+            throws IOException {
+        if(items == null)
+            throw new IllegalArgumentException("items is null");
+
+        if(outputStream == null)
+            throw new IllegalArgumentException("outputStream is null");
+
+        GZIPOutputStream gzipOutputStream = null;
+        if(mCompressed) {
+            gzipOutputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            outputStream = gzipOutputStream;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8), BUFFER_SIZE);
+        mTextFactory.writeHeader(writer);
+
+        int total = items.size();
+        for(int i = 0; i < total; i++) {
+            mTextFactory.writeItem(items.get(i), writer);
+
+            if((i + 1) % PROGRESS_INTERVAL == 0) {
+                if(Thread.interrupted())
+                    throw new InterruptedIOException("interrupted while exporting");
+
+                if(listener != null) {
+                    listener.onProgress(i + 1, total);
+                }
+            }
+        }
+
+        writer.flush();
+        if(gzipOutputStream != null) {
+            gzipOutputStream.finish();
+        }
+
+        if(listener != null) {
+            listener.onProgress(total, total);
+        }
+    }
+
+    /**
+     * Interface for following an export
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the exporting thread every thousand items and when all items have been written.
+         *
+         * @param exportedCount number of items written
+         * @param totalCount number of items to write
+         */
+        public void onProgress(int exportedCount, int totalCount);
+    }
+}
@@ -21,4 +21,25 @@ import java.util.List;
 
 public interface LogFilter {
     List<LogItem> getFilteredItems(Priority logLevel);
+
+    /**
+     * Filters the items read since the last call to this method or
+     * {@link #getFilteredItems(Priority)}.
+     *
+     * @param logLevel the lowest priority to include
+     * @return the matching new items, oldest first
+     */
+    List<LogItem> getNewFilteredItems(Priority logLevel);
+
+    /**
+     * Filters the items again that were already filtered and have had lines added to their
+     * message since, their message may only match with the lines that were added. Call it before
+     * {@link #getNewFilteredItems(Priority)} with the items given to
+     * {@link LogHandler.OnLogItemReadListener#onLogItemsRead(List)}.
+     *
+     * @param items new and updated items, the ones that haven't been filtered yet are skipped
+     * @param logLevel the lowest priority to include
+     * @return the items that were already filtered and match now, oldest first
+     */
+    List<LogItem> getUpdatedFilteredItems(List<LogItem> items, Priority logLevel);
 }
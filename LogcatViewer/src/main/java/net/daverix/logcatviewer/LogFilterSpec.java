@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes which log items to show: a minimum priority, tags to include or exclude, process ids,
+ * a text the message must contain and a regular expression the message must match. Clauses that
+ * are not set match everything. Pass it to {@link CompositeLogFilter} to use it.
+ */
+public class LogFilterSpec {
+    private Priority mMinPriority = Priority.VERBOSE;
+    private Set<String> mIncludedTags = Collections.emptySet();
+    private Set<String> mExcludedTags = Collections.emptySet();
+    private int[] mPids = new int[0];
+    private String mMessageText;
+    private String mMessageRegex;
+
+    public LogFilterSpec() {
+    }
+
+    public LogFilterSpec(LogFilterSpec other) {
+        mMinPriority = other.mMinPriority;
+        mIncludedTags = other.mIncludedTags;
+        mExcludedTags = other.mExcludedTags;
+        mPids = other.mPids;
+        mMessageText = other.mMessageText;
+        mMessageRegex = other.mMessageRegex;
+    }
+
+    public Priority getMinPriority() {
+        return mMinPriority;
+    }
+
+    public void setMinPriority(Priority minPriority) {
+        if(minPriority == null)
+            throw new IllegalArgumentException("minPriority is null");
+
+        mMinPriority = minPriority;
+    }
+
+    public Set<String> getIncludedTags() {
+        return mIncludedTags;
+    }
+
+    /**
+     * @param tags only show items with one of these tags, empty to show all tags
+     */
+    public void setIncludedTags(Set<String> tags) {
+        mIncludedTags = copyOf(tags);
+    }
+
+    public Set<String> getExcludedTags() {
+        return mExcludedTags;
+    }
+
+    /**
+     * @param tags never show items with these tags
+     */
+    public void setExcludedTags(Set<String> tags) {
+        mExcludedTags = copyOf(tags);
+    }
+
+    public int[] getPids() {
+        return mPids.clone();
+    }
+
+    /**
+     * @param pids only show items from these processes, empty to show all processes
+     */
+    public void setPids(int... pids) {
+        mPids = pids == null ? new int[0] : pids.clone();
+    }
+
+    public String getMessageText() {
+        return mMessageText;
+    }
+
+    /**
+     * @param text only show items with a message containing this text ignoring case, null for all
+     */
+    public void setMessageText(String text) {
+        mMessageText = text == null || text.length() == 0 ? null : text;
+    }
+
+    public String getMessageRegex() {
+        return mMessageRegex;
+    }
+
+    /**
+     * @param regex only show items with a message where this regular expression can be found, null
+     *              for all
+     */
+    public void setMessageRegex(String regex) {
+        mMessageRegex = regex == null || regex.length() == 0 ? null : regex;
+    }
+
+    /**
+     * @return a spec matching every item that one of the specs matches, clauses that can't be
+     *         combined exactly match everything
+     */
+    public static LogFilterSpec union(LogFilterSpec first, LogFilterSpec second) {
+        if(first == null)
+            throw new IllegalArgumentException("first is null");
+
+        if(second == null)
+            throw new IllegalArgumentException("second is null");
+
+        LogFilterSpec union = new LogFilterSpec();
+        union.mMinPriority = first.mMinPriority.ordinal() < second.mMinPriority.ordinal() ?
+                first.mMinPriority : second.mMinPriority;
+
+        if(!first.mIncludedTags.isEmpty() && !second.mIncludedTags.isEmpty()) {
+            Set<String> includedTags = new HashSet<String>(first.mIncludedTags);
+            includedTags.addAll(second.mIncludedTags);
+            union.setIncludedTags(includedTags);
+        }
+
+        Set<String> excludedTags = new HashSet<String>(first.mExcludedTags);
+        excludedTags.retainAll(second.mExcludedTags);
+        union.setExcludedTags(excludedTags);
+
+        if(first.mPids.length > 0 && second.mPids.length > 0) {
+            Set<Integer> pids = new TreeSet<Integer>();
+            for(int pid : first.mPids) {
+                pids.add(pid);
+            }
+            for(int pid : second.mPids) {
+                pids.add(pid);
+            }
+            union.mPids = new int[pids.size()];
+            int i = 0;
+            for(int pid : pids) {
+                union.mPids[i++] = pid;
+            }
+        }
+
+        if(first.mMessageText != null && first.mMessageText.equals(second.mMessageText)) {
+            union.mMessageText = first.mMessageText;
+        }
+        if(first.mMessageRegex != null && first.mMessageRegex.equals(second.mMessageRegex)) {
+            union.mMessageRegex = first.mMessageRegex;
+        }
+        return union;
+    }
+
+    boolean hasSamePids(LogFilterSpec other) {
+        return Arrays.equals(mPids, other.mPids);
+    }
+
+    private static Set<String> copyOf(Set<String> tags) {
+        if(tags == null || tags.isEmpty())
+            return Collections.emptySet();
+
+        return Collections.unmodifiableSet(new HashSet<String>(tags));
+    }
+}
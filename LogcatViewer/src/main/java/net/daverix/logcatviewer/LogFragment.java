@@ -19,33 +19,44 @@ package net.daverix.logcatviewer;
 
 import android.app.Activity;
 import android.app.ListFragment;
+import android.app.ProgressDialog;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.IBinder;
-import android.util.Log;
-import android.util.SparseBooleanArray;
 import android.view.ActionMode;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.widget.AbsListView;
 import android.widget.ListView;
-import android.widget.ShareActionProvider;
+import android.widget.SearchView;
+import android.widget.Toast;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class LogFragment extends ListFragment implements LogHandler.OnLogItemReadListener, AbsListView.MultiChoiceModeListener {
+public class LogFragment extends ListFragment implements LogHandler.OnLogItemReadListener,
+        AbsListView.MultiChoiceModeListener, LogExportTask.Callback {
     private static final String ARG_LOG_LEVEL = "loglevel";
+    // larger selections are shared as a gzip compressed file
+    private static final int COMPRESS_THRESHOLD = 10000;
     private LogHandler mLogHandler;
     private LogAdapter mLogAdapter;
     private Priority mLogLevel;
-    private ShareActionProvider mShareActionProvider;
     private LogTextFactory mLogTextFactory;
+    private LogExportTask mExportTask;
+    private ProgressDialog mExportDialog;
+    private final LogSelection mSelection = new LogSelection();
     private LogFilter mLogFilter;
+    private LogPriorityFilter mPriorityFilter;
+    private LogFilterSpec mFilterSpec;
+    private CompositeLogFilter mSpecFilter;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -84,7 +95,10 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             mLogHandler = ((LogHandlerService.LogHandlerServiceBinder) service).getLogHandler();
-            mLogFilter = new LogPriorityFilter(mLogHandler);
+            mPriorityFilter = new LogPriorityFilter(mLogHandler);
+            mSpecFilter = null;
+            mLogFilter = getDefaultFilter();
+            updateSourceFilter();
 
             loadItems();
 
@@ -99,8 +113,10 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
     };
 
     private void loadItems() {
+        List<LogItem> filtered = mLogFilter.getFilteredItems(mLogLevel);
+
         if(mLogAdapter == null) {
-            mLogAdapter = new LogAdapter(getActivity(), mLogFilter.getFilteredItems(mLogLevel));
+            mLogAdapter = new LogAdapter(getActivity(), filtered);
             setListAdapter(mLogAdapter);
 
             ListView listView = getListView();
@@ -112,13 +128,53 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
             }
         }
         else {
-            mLogAdapter.setItems(mLogFilter.getFilteredItems(mLogLevel));
+            mLogAdapter.setItems(filtered);
             mLogAdapter.notifyDataSetChanged();
         }
     }
 
+    /**
+     * Only filters the items read since the last time and appends them to the adapter. The list
+     * is only notified if items were added or removed, otherwise only the visible rows of the
+     * items that got lines added to their message are updated.
+     *
+     * @param items the new and updated items
+     */
+    private void loadNewItems(List<LogItem> items) {
+        if(mLogAdapter == null) {
+            loadItems();
+            return;
+        }
+
+        // items that were already filtered may match once lines have been added to their message
+        boolean added = mLogAdapter.addUpdatedItems(mLogFilter.getUpdatedFilteredItems(items, mLogLevel));
+        added |= mLogAdapter.addItems(mLogFilter.getNewFilteredItems(mLogLevel));
+        boolean removed = mLogAdapter.removeItemsBefore(mLogHandler.getFirstSequence());
+        if(added || removed) {
+            for(LogItem item : items) {
+                mLogAdapter.updateMessage(item.getSequence());
+            }
+            mLogAdapter.notifyDataSetChanged();
+            return;
+        }
+
+        ListView listView = getListView();
+        if(listView == null)
+            return;
+
+        for(LogItem item : items) {
+            mLogAdapter.updateRow(listView, item.getSequence());
+        }
+    }
+
     @Override
     public void onDestroy() {
+        if(mExportTask != null) {
+            mExportTask.cancel(true);
+            mExportTask = null;
+        }
+        dismissExportDialog();
+
         Context context = getActivity();
         if(context != null) {
             context.unbindService(mServiceConnection);
@@ -128,9 +184,9 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
     }
 
     @Override
-    public void onLogItemRead(LogItem item) {
-        if(isAdded()) {
-            loadItems();
+    public void onLogItemsRead(List<LogItem> items) {
+        if(isAdded() && mLogHandler != null) {
+            loadNewItems(items);
         }
     }
 
@@ -139,6 +195,105 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
         super.onCreateOptionsMenu(menu, inflater);
 
         inflater.inflate(R.menu.logcat, menu);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        if(searchItem == null)
+            throw new UnsupportedOperationException("search menu item can't be found!");
+
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        if(searchView != null) {
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    search(query);
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    if(newText == null || newText.length() == 0) {
+                        search(null);
+                    }
+                    return false;
+                }
+            });
+        }
+
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                search(null);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Shows the log items matching the query or all of them if the query is empty.
+     *
+     * @param query words to search for or null
+     */
+    private void search(String query) {
+        if(mLogHandler == null)
+            return;
+
+        if(query == null || query.trim().length() == 0) {
+            if(mLogFilter == getDefaultFilter())
+                return;
+
+            mLogFilter = getDefaultFilter();
+        }
+        else {
+            mLogFilter = new LogSearchFilter(mLogHandler, query);
+        }
+
+        loadItems();
+    }
+
+    /**
+     * Only shows the log items matching the spec, as far as they are in the log level. Changing
+     * the spec again only evaluates the clauses that changed. The spec is not kept in the instance
+     * state, set it again when the fragment is created again.
+     *
+     * @param spec the items to show or null to show all items
+     * @throws java.util.regex.PatternSyntaxException if the message regex is invalid
+     */
+    public void setFilterSpec(LogFilterSpec spec) {
+        mFilterSpec = spec != null ? new LogFilterSpec(spec) : null;
+        if(mLogHandler == null)
+            return;
+
+        if(mFilterSpec == null) {
+            mSpecFilter = null;
+        }
+        else if(mSpecFilter != null) {
+            mSpecFilter.setSpec(mFilterSpec);
+        }
+
+        // a search stays shown, the spec is used again when it is cleared
+        if(!(mLogFilter instanceof LogSearchFilter)) {
+            mLogFilter = getDefaultFilter();
+            loadItems();
+        }
+    }
+
+    /**
+     * @return the filter used when not searching, the spec filter keeps what it has evaluated
+     *         while a search is shown
+     */
+    private LogFilter getDefaultFilter() {
+        if(mFilterSpec == null)
+            return mPriorityFilter;
+
+        if(mSpecFilter == null) {
+            mSpecFilter = new CompositeLogFilter(mLogHandler, mFilterSpec);
+        }
+        return mSpecFilter;
     }
 
     @Override
@@ -185,8 +340,21 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
         item.setChecked(true);
     }
 
+    /**
+     * Lets logcat leave out the lines below the log level, as far as the log handler doesn't have
+     * to keep them.
+     */
+    private void updateSourceFilter() {
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setMinPriority(mLogLevel);
+        mLogHandler.setSourceFilter(spec);
+    }
+
     private void filter(Priority priority) {
         mLogLevel = priority;
+        if(mLogHandler != null) {
+            updateSourceFilter();
+        }
         loadItems();
         Activity activity = getActivity();
         if(activity != null)
@@ -224,45 +392,116 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
         return super.onOptionsItemSelected(item);
     }
 
-    protected List<LogItem> getCheckedItems() throws IllegalStateException {
-        ListView listView = getListView();
-
-        if(listView == null)
-            throw new IllegalStateException("List view is null");
-
-        List<LogItem> checkedItems = new ArrayList<LogItem>();
-        SparseBooleanArray positions = listView.getCheckedItemPositions();
-        if(positions == null)
-            throw new IllegalStateException("checkedItemPositions() returns null");
-
-        for(int i=0;i<mLogAdapter.getCount();i++) {
-            if(positions.get(i, false)) {
-                checkedItems.add(mLogAdapter.getItem(i));
+    /**
+     * @return the checked items that are still shown, in log order
+     */
+    protected List<LogItem> getCheckedItems() {
+        List<LogItem> checkedItems = new ArrayList<LogItem>(mSelection.size());
+        for(int i = 0; i < mSelection.size(); i++) {
+            int position = mLogAdapter.getPosition(mSelection.get(i));
+            if(position >= 0) {
+                checkedItems.add(mLogAdapter.getItem(position));
             }
         }
 
         return checkedItems;
     }
 
-    private Intent getShareIntent() {
+    /**
+     * Shares the checked items. If {@link LogExportProvider} is declared they are exported to a
+     * file in the background and the file is shared, otherwise the text is put in the intent.
+     */
+    private void share() {
+        Activity activity = getActivity();
+        if(activity == null || mExportTask != null)
+            return;
+
         List<LogItem> checkedItems = getCheckedItems();
-        String text = mLogTextFactory.create(checkedItems);
+        if(!LogExportProvider.isAvailable(activity)) {
+            Intent intent = createShareIntent("text/plain");
+            intent.putExtra(Intent.EXTRA_TEXT, mLogTextFactory.create(checkedItems));
+            startActivity(Intent.createChooser(intent, getString(R.string.share_log_items)));
+            return;
+        }
+
+        // the text factory of the fragment is only used on the main thread
+        LogExporter exporter = new LogExporter(new LogcatTextFactory());
+        exporter.setCompressed(checkedItems.size() >= COMPRESS_THRESHOLD);
+        mExportTask = new LogExportTask(activity, checkedItems, exporter, this);
+
+        mExportDialog = new ProgressDialog(activity);
+        mExportDialog.setMessage(getString(R.string.exporting_log_items));
+        mExportDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        mExportDialog.setMax(checkedItems.size());
+        mExportDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                if(mExportTask != null) {
+                    mExportTask.cancel(true);
+                    mExportTask = null;
+                }
+                mExportDialog = null;
+            }
+        });
+        mExportDialog.show();
 
+        mExportTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private Intent createShareIntent(String type) {
         Intent intent = new Intent(Intent.ACTION_SEND);
-        intent.putExtra(Intent.EXTRA_TEXT, text);
         intent.putExtra(Intent.EXTRA_SUBJECT, "Error report");
-        intent.setType("text/plain");
+        intent.setType(type);
 
         return intent;
     }
 
+    private void dismissExportDialog() {
+        if(mExportDialog != null) {
+            mExportDialog.dismiss();
+            mExportDialog = null;
+        }
+    }
+
+    @Override
+    public void onExportProgress(int exportedCount, int totalCount) {
+        if(mExportDialog != null) {
+            mExportDialog.setProgress(exportedCount);
+        }
+    }
+
+    @Override
+    public void onExportFinished(Uri uri, String mimeType) {
+        mExportTask = null;
+        dismissExportDialog();
+        if(!isAdded())
+            return;
+
+        Intent intent = createShareIntent(mimeType);
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, getString(R.string.share_log_items)));
+    }
+
+    @Override
+    public void onExportFailed() {
+        mExportTask = null;
+        dismissExportDialog();
+
+        Activity activity = getActivity();
+        if(activity != null) {
+            Toast.makeText(activity, R.string.export_failed, Toast.LENGTH_LONG).show();
+        }
+    }
+
     @Override
     public void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked) {
-        try {
-            mShareActionProvider.setShareIntent(getShareIntent());
+        // the ids are the sequence numbers of the items, the share text is only made when sharing
+        if(checked) {
+            mSelection.add(id);
         }
-        catch (Exception e) {
-            Log.e("LogFragment", "Error when creating intent for shareActionProvider");
+        else {
+            mSelection.remove(id);
         }
     }
 
@@ -275,11 +514,7 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
         MenuInflater inflater = activity.getMenuInflater();
         inflater.inflate(R.menu.logcat_actionmode, menu);
 
-        MenuItem item = menu.findItem(R.id.action_share);
-        if(item == null)
-            throw new IllegalStateException("share action not in menu!");
-
-        mShareActionProvider = (ShareActionProvider) item.getActionProvider();
+        mSelection.clear();
         return true;
     }
 
@@ -290,11 +525,16 @@ public class LogFragment extends ListFragment implements LogHandler.OnLogItemRea
 
     @Override
     public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+        if(item.getItemId() == R.id.action_share) {
+            share();
+            return true;
+        }
+
         return false;
     }
 
     @Override
     public void onDestroyActionMode(ActionMode mode) {
-
+        mSelection.clear();
     }
 }
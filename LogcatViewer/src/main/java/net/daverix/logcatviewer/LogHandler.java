@@ -27,6 +27,64 @@ public interface LogHandler {
      */
     public List<LogItem> getReadItems();
 
+    /**
+     * Get the log items that have been read after the item with the given sequence number. Use
+     * this instead of {@link #getReadItems()} to only fetch what is new.
+     *
+     * @param sequence sequence number of the last item already seen, -1 to get all items
+     * @return list of log items, oldest first
+     */
+    public List<LogItem> getItemsSince(long sequence);
+
+    /**
+     * @param sequence sequence number of the log item
+     * @return the log item or null if it has been dropped or not read yet
+     */
+    public LogItem getItem(long sequence);
+
+    /**
+     * Searches the tags and messages of the log items that are kept.
+     *
+     * @param query the words to search for, see {@link LogSearchIndex}
+     * @return sequence numbers of the matching log items in increasing order
+     */
+    public long[] search(String query);
+
+    /**
+     * @return sequence number of the newest log item {@link #search(String)} finds, newer items
+     *         have been read but not indexed yet, or -1 if no item has been indexed
+     */
+    public long getIndexedSequence();
+
+    /**
+     * @return sequence number of the oldest log item still kept, items before it have been dropped
+     */
+    public long getFirstSequence();
+
+    /**
+     * @return sequence number the next log item read will get
+     */
+    public long getNextSequence();
+
+    /**
+     * @return maximum number of log items that are kept, older items are dropped
+     */
+    public int getCapacity();
+
+    /**
+     * @return number of older log items that have been dropped to make room for new ones
+     */
+    public long getEvictedCount();
+
+    /**
+     * Lets the log source leave out the lines the filter doesn't match, so they are never read.
+     * Lines that were left out can't be shown when the filter is widened again, so a handler
+     * whose store is shared or archived only leaves out what its store doesn't have to keep.
+     *
+     * @param spec the lines to read or null to read everything
+     */
+    public void setSourceFilter(LogFilterSpec spec);
+
     /**
      * Adds a listener for when a new log item have been read
      * @param listener the listener that will be notified
@@ -44,10 +102,11 @@ public interface LogHandler {
      */
     public interface OnLogItemReadListener {
         /**
-         * Callback for new log items read from the log
+         * Callback for new log items read from the log. Items read close to each other in time
+         * are delivered together in one call on the main thread.
          *
-         * @param item the log item that was read
+         * @param items the log items that were read or had their message updated, oldest first
          */
-        public void onLogItemRead(LogItem item);
+        public void onLogItemsRead(List<LogItem> items);
     }
 }
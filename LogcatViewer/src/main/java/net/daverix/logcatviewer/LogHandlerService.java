@@ -20,20 +20,44 @@ package net.daverix.logcatviewer;
 import android.app.Service;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
 
+/**
+ * Keeps one {@link LogcatHandler} reading while anything is bound. The store is archived and shared
+ * by everything bound to the service, so by default every line is kept and the log level shown is
+ * not passed on to logcat. Override {@link #getRetainedFilter()} to let logcat leave out lines.
+ */
 public class LogHandlerService extends Service {
+    private static final String ARCHIVE_DIRECTORY = "log-archive";
+
     private LogcatHandler mLogHandler;
+    private LogStore mLogStore;
     private LogHandlerServiceBinder mBinder = new LogHandlerServiceBinder();
 
     @Override
     public void onCreate() {
         super.onCreate();
 
-        mLogHandler = new LogcatHandler(this, new LogcatItemFactory());
+        TagPool tagPool = new TagPool();
+        mLogStore = createLogStore(tagPool);
+        mLogHandler = new LogcatHandler(this, createLogItemFactory(tagPool), mLogStore, createLogSource());
+
+        // every buffer is parsed on its own thread with its own factory
+        Map<LogBuffer, LogItemFactory> bufferFactories = new EnumMap<LogBuffer, LogItemFactory>(LogBuffer.class);
+        for(LogBuffer buffer : getLogBuffers()) {
+            bufferFactories.put(buffer, createLogItemFactory(tagPool));
+        }
+        mLogHandler.getBufferMerger().setBuffers(bufferFactories);
+        mLogHandler.getBufferMerger().setOverloadPolicy(getOverloadPolicy());
+        mLogHandler.getPipeline().setOverloadPolicy(getOverloadPolicy());
+        mLogHandler.setRetainedFilter(getRetainedFilter());
 
         try {
             mLogHandler.listen();
@@ -42,6 +66,102 @@ public class LogHandlerService extends Service {
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // the archive is closed on the reading side so the main thread doesn't wait for it
+        final LogStore logStore = mLogStore;
+        mLogHandler.stop(new Runnable() {
+            @Override
+            public void run() {
+                if(logStore instanceof ArchiveLogStore) {
+                    ArchiveLogStore archiveLogStore = (ArchiveLogStore) logStore;
+                    archiveLogStore.close();
+
+                    IOException error = archiveLogStore.getArchiveError();
+                    if(error != null) {
+                        Log.e("LogHandlerService", "Error archiving the log", error);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Override to keep the log somewhere else. By default the recent items are kept in memory
+     * and everything is archived in the files directory, so the log survives the service being
+     * restarted. The archive is opened and restored on the reading thread.
+     *
+     * @param tagPool pool shared with the factory, pass it on to the store
+     * @return the store the log handler appends to
+     */
+    protected LogStore createLogStore(TagPool tagPool) {
+        LogStore store = new ColumnarLogStore(LogcatHandler.DEFAULT_CAPACITY, LogcatHandler.DEFAULT_BYTE_BUDGET, tagPool);
+        return new ArchiveLogStore(store, new File(getFilesDir(), ARCHIVE_DIRECTORY), tagPool);
+    }
+
+    /**
+     * Override to let logcat leave out lines that don't have to be kept, the log level shown is
+     * then passed on to logcat down to this filter. By default everything is kept, the store is
+     * archived and shared by everything bound to the service.
+     *
+     * @return the lines the store keeps at least or null to keep everything
+     */
+    protected LogFilterSpec getRetainedFilter() {
+        return null;
+    }
+
+    /**
+     * Override to read from somewhere else than the logcat of the device, for example a
+     * {@link FileReplayLogSource} or a {@link SyntheticLogSource}.
+     *
+     * @return the source the log handler reads from
+     */
+    protected LogSource createLogSource() {
+        ProcessLogSource source = new ProcessLogSource();
+        // "logcat -T <time>" came with Android 5.0 and "--pid" with Android 7.0
+        source.setStartTimeSupported(Build.VERSION.SDK_INT >= 21);
+        source.setPidFilterSupported(Build.VERSION.SDK_INT >= 24);
+        return source;
+    }
+
+    /**
+     * Override to read other buffers, for example {@link LogBuffer#EVENTS}. The buffers are only
+     * read one by one if the log source is a {@link MultiBufferLogSource}.
+     *
+     * @return the logcat buffers to read and merge or an empty array to read the default ones
+     */
+    protected LogBuffer[] getLogBuffers() {
+        // the crash buffer came with Android 5.0
+        if(Build.VERSION.SDK_INT >= 21)
+            return new LogBuffer[] { LogBuffer.MAIN, LogBuffer.SYSTEM, LogBuffer.CRASH };
+
+        return new LogBuffer[] { LogBuffer.MAIN, LogBuffer.SYSTEM };
+    }
+
+    /**
+     * Override to drop lines when they are read faster than they can be stored, whether the
+     * buffers are merged or one source goes through the pipeline. The crash buffer is never
+     * dropped.
+     *
+     * @return what to do with new lines while the queues are full
+     */
+    protected OverloadPolicy getOverloadPolicy() {
+        return OverloadPolicy.BLOCK;
+    }
+
+    /**
+     * Override together with {@link #createLogSource()} to read another format, for example a
+     * {@link BinaryLogItemFactory} for a {@link BinaryLogSource}.
+     *
+     * @param tagPool pool shared with the store, pass it on to the factory
+     * @return the factory that turns what is read into log items
+     */
+    protected LogItemFactory createLogItemFactory(TagPool tagPool) {
+        return new LogcatItemFactory(tagPool);
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         return START_STICKY;
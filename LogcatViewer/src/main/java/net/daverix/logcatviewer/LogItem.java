@@ -24,11 +24,35 @@ public interface LogItem {
 
     public String getTag();
 
+    /**
+     * @deprecated allocates a new Date on every call, use {@link #getTimestampMillis()}
+     */
+    @Deprecated
     public Date getDate();
 
+    /**
+     * @return milliseconds since the epoch when this item was logged
+     */
+    public long getTimestampMillis();
+
     public String getMessage();
 
     public void setMessage(String message);
 
     public int getPid();
+
+    /**
+     * @return id of the thread that logged this item or -1 if the log format doesn't include it
+     */
+    public int getTid();
+
+    /**
+     * @return sequence number given to this item by the {@link LogStore} it was appended to
+     */
+    public long getSequence();
+
+    /**
+     * @return the logcat buffer this item was read from
+     */
+    public LogBuffer getBuffer();
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects log items on the reader thread so they can be handed to listeners in batches instead
+ * of one message per line. Also keeps track of how big the batches are and how long items wait
+ * before they are dispatched.
+ */
+public class LogItemBatcher {
+    /**
+     * The item was added to a batch that already had items
+     */
+    public static final int ADDED = 0;
+
+    /**
+     * The item started a new batch, a dispatch should be scheduled
+     */
+    public static final int FIRST_IN_BATCH = 1;
+
+    /**
+     * The batch reached its maximum size and should be dispatched right away
+     */
+    public static final int BATCH_FULL = 2;
+
+    private final int mMaxBatchSize;
+    private ArrayList<LogItem> mPending = new ArrayList<LogItem>();
+    private long mFirstPendingNanos;
+
+    private long mBatchCount;
+    private long mItemCount;
+    private int mLargestBatchSize;
+    private long mTotalLatencyNanos;
+    private long mMaxLatencyNanos;
+
+    public LogItemBatcher(int maxBatchSize) {
+        if(maxBatchSize <= 0)
+            throw new IllegalArgumentException("maxBatchSize must be greater than zero");
+
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds an item to the current batch. Adding the same item as the last one again, which
+     * happens when its message has been updated, doesn't add it twice.
+     *
+     * @param item a new or updated log item
+     * @return {@link #ADDED}, {@link #FIRST_IN_BATCH} or {@link #BATCH_FULL}
+     */
+    public synchronized int add(LogItem item) {
+        int size = mPending.size();
+        if(size > 0 && mPending.get(size - 1) == item)
+            return ADDED;
+
+        mPending.add(item);
+        if(size == 0) {
+            mFirstPendingNanos = System.nanoTime();
+            return mMaxBatchSize == 1 ? BATCH_FULL : FIRST_IN_BATCH;
+        }
+
+        return size + 1 == mMaxBatchSize ? BATCH_FULL : ADDED;
+    }
+
+    /**
+     * Takes all items in the current batch.
+     *
+     * @return the items, empty if there was nothing to dispatch
+     */
+    public synchronized List<LogItem> drain() {
+        List<LogItem> batch = mPending;
+        if(batch.isEmpty())
+            return batch;
+
+        long latency = System.nanoTime() - mFirstPendingNanos;
+        mBatchCount++;
+        mItemCount += batch.size();
+        mLargestBatchSize = Math.max(mLargestBatchSize, batch.size());
+        mTotalLatencyNanos += latency;
+        mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+
+        mPending = new ArrayList<LogItem>();
+        return batch;
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(mBatchCount, mItemCount, mLargestBatchSize, mTotalLatencyNanos, mMaxLatencyNanos);
+    }
+
+    /**
+     * Snapshot of the dispatch statistics
+     */
+    public static class Metrics {
+        private final long mBatchCount;
+        private final long mItemCount;
+        private final int mLargestBatchSize;
+        private final long mTotalLatencyNanos;
+        private final long mMaxLatencyNanos;
+
+        public Metrics(long batchCount, long itemCount, int largestBatchSize, long totalLatencyNanos, long maxLatencyNanos) {
+            mBatchCount = batchCount;
+            mItemCount = itemCount;
+            mLargestBatchSize = largestBatchSize;
+            mTotalLatencyNanos = totalLatencyNanos;
+            mMaxLatencyNanos = maxLatencyNanos;
+        }
+
+        public long getBatchCount() {
+            return mBatchCount;
+        }
+
+        public long getItemCount() {
+            return mItemCount;
+        }
+
+        public int getLargestBatchSize() {
+            return mLargestBatchSize;
+        }
+
+        public double getAverageBatchSize() {
+            return mBatchCount == 0 ? 0 : (double) mItemCount / mBatchCount;
+        }
+
+        /**
+         * @return average time from the first item in a batch being added until it was dispatched
+         */
+        public long getAverageLatencyNanos() {
+            return mBatchCount == 0 ? 0 : mTotalLatencyNanos / mBatchCount;
+        }
+
+        public long getMaxLatencyNanos() {
+            return mMaxLatencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "batches: " + mBatchCount +
+                    ", items: " + mItemCount +
+                    ", average batch size: " + getAverageBatchSize() +
+                    ", largest batch size: " + mLargestBatchSize +
+                    ", average latency: " + getAverageLatencyNanos() / 1000 + "us" +
+                    ", max latency: " + mMaxLatencyNanos / 1000 + "us";
+        }
+    }
+}
@@ -19,6 +19,11 @@ package net.daverix.logcatviewer;
 
 import java.util.EnumSet;
 
+/**
+ * @deprecated the log level is the lowest {@link Priority} shown, filter with
+ *             {@link LogFilterSpec#setMinPriority(Priority)} or {@link LogPriorityFilter}
+ */
+@Deprecated
 public class LogLevel {
     public static final EnumSet VERBOSE = EnumSet.of(Priority.VERBOSE,
             Priority.DEBUG,
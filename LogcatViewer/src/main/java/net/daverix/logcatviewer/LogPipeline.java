@@ -0,0 +1,523 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads logcat output in stages that run on their own threads, so a slow step doesn't stop
+ * logcat from being read:
+ *
+ * <ol>
+ *     <li>the calling thread splits the output into raw lines</li>
+ *     <li>one or more parser threads turn the lines into log items</li>
+ *     <li>the merger thread finds the lines that continue the message of the previous one</li>
+ *     <li>the appender thread adds the items to a {@link LogcatReader}</li>
+ * </ol>
+ *
+ * The stages are connected by bounded {@link SpscQueue}s. Lines are numbered when they are read
+ * and handed to the parsers in turn, the merger collects them in the same turn so the order is
+ * kept with any number of parsers. What happens when the parsers fall behind is decided by the
+ * {@link OverloadPolicy}.
+ */
+public class LogPipeline {
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    // marks the end of the stream in every queue
+    private static final Line END = new Line(-1, null);
+
+    private LogItemFactory[] mParserFactories;
+    private int mQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private OverloadPolicy mOverloadPolicy = OverloadPolicy.BLOCK;
+    private int mSampleRate = DEFAULT_SAMPLE_RATE;
+
+    private final AtomicLong mLineCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mParseErrorCount = new AtomicLong();
+    private volatile Run mRun;
+
+    /**
+     * @param parserFactory factory used by the single parser thread
+     */
+    public LogPipeline(LogItemFactory parserFactory) {
+        setParserFactories(parserFactory);
+    }
+
+    /**
+     * Sets one factory per parser thread. Factories usually keep state that is not thread safe,
+     * so they must not be shared. Takes effect the next time {@link #read} is called.
+     *
+     * @param parserFactories the factories, one per parser thread
+     */
+    public synchronized void setParserFactories(LogItemFactory... parserFactories) {
+        if(parserFactories == null || parserFactories.length == 0)
+            throw new IllegalArgumentException("parserFactories is empty");
+
+        for(LogItemFactory factory : parserFactories) {
+            if(factory == null)
+                throw new IllegalArgumentException("parserFactories contains null");
+        }
+
+        mParserFactories = parserFactories.clone();
+    }
+
+    /**
+     * @param queueCapacity maximum number of lines waiting between two stages
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if(queueCapacity <= 0)
+            throw new IllegalArgumentException("queueCapacity must be greater than zero");
+
+        mQueueCapacity = queueCapacity;
+    }
+
+    public synchronized void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        if(overloadPolicy == null)
+            throw new IllegalArgumentException("overloadPolicy is null");
+
+        mOverloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * @param sampleRate keep one of this many lines while overloaded with {@link OverloadPolicy#SAMPLE}
+     */
+    public synchronized void setSampleRate(int sampleRate) {
+        if(sampleRate <= 0)
+            throw new IllegalArgumentException("sampleRate must be greater than zero");
+
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * Reads lines until the end of the channel or until the thread is interrupted, the other
+     * stages have finished when this returns.
+     *
+     * @param channel the output of logcat in the "-v time" format
+     * @param reader where the items are appended, only used from the appender thread
+     */
+    public void read(ReadableByteChannel channel, LogcatReader reader) throws IOException, ParseException {
+        if(channel == null)
+            throw new IllegalArgumentException("channel is null");
+
+        if(reader == null)
+            throw new IllegalArgumentException("reader is null");
+
+        final Run run;
+        synchronized (this) {
+            run = new Run(mParserFactories, mQueueCapacity, mOverloadPolicy, mSampleRate, reader);
+        }
+        mRun = run;
+
+        run.start();
+        try {
+            if(ByteLineReader.read(channel, run)) {
+                run.finish();
+            }
+        } finally {
+            run.stop();
+        }
+    }
+
+    /**
+     * @return statistics about the stages, the queue depths are of the current or last read
+     */
+    public Metrics getMetrics() {
+        Run run = mRun;
+        int parserDepth = 0;
+        int parserMaxDepth = 0;
+        int mergerDepth = 0;
+        int mergerMaxDepth = 0;
+        int appenderDepth = 0;
+        int appenderMaxDepth = 0;
+        if(run != null) {
+            for(int i = 0; i < run.mParserQueues.length; i++) {
+                parserDepth += run.mParserQueues[i].size();
+                parserMaxDepth = Math.max(parserMaxDepth, run.mParserQueues[i].getMaxSize());
+                mergerDepth += run.mMergerQueues[i].size();
+                mergerMaxDepth = Math.max(mergerMaxDepth, run.mMergerQueues[i].getMaxSize());
+            }
+            appenderDepth = run.mAppenderQueue.size();
+            appenderMaxDepth = run.mAppenderQueue.getMaxSize();
+        }
+
+        return new Metrics(mLineCount.get(), mDroppedCount.get(), mParseErrorCount.get(),
+                parserDepth, parserMaxDepth, mergerDepth, mergerMaxDepth, appenderDepth, appenderMaxDepth);
+    }
+
+    /**
+     * @return the priority character of a "-v time" line or 0 if it can't be found
+     */
+    static byte getPriority(byte[] line) {
+        // "MM-dd HH:mm:ss.SSS P/", the priority follows the time after the first space
+        for(int i = 0; i < line.length && i < 6; i++) {
+            if(line[i] == ' ') {
+                int index = i + 1 + 13;
+                return index < line.length ? line[index] : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A line on its way through the stages
+     */
+    private static class Line {
+        public final long sequence;
+        public final byte[] bytes;
+        public LogItem item;
+        public boolean continuation;
+
+        public Line(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The queues and threads of one call to {@link #read}
+     */
+    private class Run implements ByteLineReader.LineHandler {
+        private final LogItemFactory[] mFactories;
+        private final OverloadPolicy mPolicy;
+        private final int mSampleRate;
+        private final LogcatReader mReader;
+        private final SpscQueue<Line>[] mParserQueues;
+        private final SpscQueue<Line>[] mMergerQueues;
+        private final SpscQueue<Line> mAppenderQueue;
+        private final List<Thread> mThreads = new ArrayList<Thread>();
+        private long mNextSequence;
+        private long mOverloadedLines;
+
+        public Run(LogItemFactory[] factories, int queueCapacity, OverloadPolicy policy, int sampleRate,
+                   LogcatReader reader) {
+            mFactories = factories;
+            mPolicy = policy;
+            mSampleRate = sampleRate;
+            mReader = reader;
+            mParserQueues = SpscQueue.newArray(factories.length);
+            mMergerQueues = SpscQueue.newArray(factories.length);
+            for(int i = 0; i < factories.length; i++) {
+                mParserQueues[i] = new SpscQueue<Line>(queueCapacity);
+                mMergerQueues[i] = new SpscQueue<Line>(queueCapacity);
+            }
+            mAppenderQueue = new SpscQueue<Line>(queueCapacity);
+        }
+
+        public void start() {
+            for(int i = 0; i < mFactories.length; i++) {
+                mThreads.add(new Thread(new Parser(mFactories[i], mParserQueues[i], mMergerQueues[i],
+                        mReader.getParseFailures()), "LogPipeline parser " + i));
+            }
+            mThreads.add(new Thread(mMerger, "LogPipeline merger"));
+            mThreads.add(new Thread(mAppender, "LogPipeline appender"));
+
+            for(Thread thread : mThreads) {
+                thread.start();
+            }
+        }
+
+        @Override
+        public void onLine(ByteBuffer buffer, int start, int end) throws IOException {
+            if(ByteLineReader.startsWith(buffer, start, end, LogcatReader.BEGINNING_OF_BUFFER))
+                return;
+
+            byte[] bytes = new byte[end - start];
+            int position = buffer.position();
+            buffer.position(start);
+            buffer.get(bytes);
+            buffer.position(position);
+            mLineCount.incrementAndGet();
+
+            Line line = new Line(mNextSequence, bytes);
+            SpscQueue<Line> queue = mParserQueues[(int) (mNextSequence % mParserQueues.length)];
+            if(queue.offer(line)) {
+                mNextSequence++;
+                return;
+            }
+
+            if(shouldDropWhenFull(bytes)) {
+                mDroppedCount.incrementAndGet();
+                return;
+            }
+
+            try {
+                queue.put(line);
+                mNextSequence++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the parsers");
+            }
+        }
+
+        @Override
+        public void onLinesRead() {
+            // the appender decides when a message is complete
+        }
+
+        private boolean shouldDropWhenFull(byte[] line) {
+            switch (mPolicy) {
+                case DROP_VERBOSE:
+                    return getPriority(line) == 'V';
+                case SAMPLE:
+                    return mOverloadedLines++ % mSampleRate != 0;
+                case BLOCK:
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Waits for the stages to handle all lines that have been read. Only used at the end of
+         * the stream, an interrupted read stops the stages right away.
+         */
+        public void finish() throws InterruptedIOException {
+            try {
+                for(int i = 0; i < mParserQueues.length; i++) {
+                    mParserQueues[(int) ((mNextSequence + i) % mParserQueues.length)].put(END);
+                }
+                for(Thread thread : mThreads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the stages");
+            }
+        }
+
+        /**
+         * Stops the stages that are still running and waits for them to exit, also when the
+         * calling thread has been interrupted, so nothing is appended and no factory is in use
+         * after {@link #read} has returned.
+         */
+        public void stop() {
+            for(Thread thread : mThreads) {
+                thread.interrupt();
+            }
+
+            boolean interrupted = Thread.interrupted();
+            for(Thread thread : mThreads) {
+                while(thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private final Runnable mMerger = new Runnable() {
+            @Override
+            public void run() {
+                LogItem previous = null;
+                try {
+                    for(long sequence = 0; ; sequence++) {
+                        Line line = mMergerQueues[(int) (sequence % mMergerQueues.length)].take();
+                        if(line == END)
+                            break;
+
+                        if(line.item == null)
+                            continue;
+
+                        line.continuation = LogcatReader.isContinuation(previous, line.item);
+                        if(!line.continuation) {
+                            previous = line.item;
+                        }
+                        mAppenderQueue.put(line);
+                    }
+                    mAppenderQueue.put(END);
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+
+        private final Runnable mAppender = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Line line;
+                    while((line = nextLine()) != END) {
+                        if(line.continuation) {
+                            mReader.appendToLastItem(line.item);
+                        }
+                        else {
+                            mReader.append(line.item);
+                        }
+                    }
+                    mReader.flush();
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+
+            private Line nextLine() throws InterruptedException {
+                Line line = mAppenderQueue.poll();
+                while(line == null) {
+                    // nothing queued, wait no longer than a multi-line message may be collected
+                    line = mAppenderQueue.poll(mReader.flushIfDue());
+                }
+                return line;
+            }
+        };
+    }
+
+    private class Parser implements Runnable {
+        private final LogItemFactory mFactory;
+        private final SpscQueue<Line> mInput;
+        private final SpscQueue<Line> mOutput;
+        private final ParseFailures mParseFailures;
+        private final ParseResult mResult = new ParseResult();
+
+        public Parser(LogItemFactory factory, SpscQueue<Line> input, SpscQueue<Line> output,
+                      ParseFailures parseFailures) {
+            mFactory = factory;
+            mInput = input;
+            mOutput = output;
+            mParseFailures = parseFailures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Line line;
+                while((line = mInput.take()) != END) {
+                    line.item = parse(line.bytes);
+                    mOutput.put(line);
+                }
+                mOutput.put(END);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        private LogItem parse(byte[] bytes) {
+            int status = mResult.parse(mFactory, ByteBuffer.wrap(bytes), 0, bytes.length);
+            if(status != ParseResult.OK) {
+                mParseErrorCount.incrementAndGet();
+                mParseFailures.record(status, mResult.getLine());
+            }
+            return mResult.getItem();
+        }
+    }
+
+    /**
+     * Snapshot of the pipeline statistics
+     */
+    public static class Metrics {
+        private final long mLineCount;
+        private final long mDroppedCount;
+        private final long mParseErrorCount;
+        private final int mParserQueueDepth;
+        private final int mParserQueueMaxDepth;
+        private final int mMergerQueueDepth;
+        private final int mMergerQueueMaxDepth;
+        private final int mAppenderQueueDepth;
+        private final int mAppenderQueueMaxDepth;
+
+        public Metrics(long lineCount, long droppedCount, long parseErrorCount,
+                       int parserQueueDepth, int parserQueueMaxDepth,
+                       int mergerQueueDepth, int mergerQueueMaxDepth,
+                       int appenderQueueDepth, int appenderQueueMaxDepth) {
+            mLineCount = lineCount;
+            mDroppedCount = droppedCount;
+            mParseErrorCount = parseErrorCount;
+            mParserQueueDepth = parserQueueDepth;
+            mParserQueueMaxDepth = parserQueueMaxDepth;
+            mMergerQueueDepth = mergerQueueDepth;
+            mMergerQueueMaxDepth = mergerQueueMaxDepth;
+            mAppenderQueueDepth = appenderQueueDepth;
+            mAppenderQueueMaxDepth = appenderQueueMaxDepth;
+        }
+
+        /**
+         * @return number of lines read, including dropped ones
+         */
+        public long getLineCount() {
+            return mLineCount;
+        }
+
+        /**
+         * @return number of lines dropped by the overload policy
+         */
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        /**
+         * @return number of lines that could not be parsed and were kept as raw items
+         */
+        public long getParseErrorCount() {
+            return mParseErrorCount;
+        }
+
+        /**
+         * @return lines waiting for a parser, summed over all parsers
+         */
+        public int getParserQueueDepth() {
+            return mParserQueueDepth;
+        }
+
+        public int getParserQueueMaxDepth() {
+            return mParserQueueMaxDepth;
+        }
+
+        /**
+         * @return parsed lines waiting for the merger, summed over all parsers
+         */
+        public int getMergerQueueDepth() {
+            return mMergerQueueDepth;
+        }
+
+        public int getMergerQueueMaxDepth() {
+            return mMergerQueueMaxDepth;
+        }
+
+        /**
+         * @return items waiting to be appended
+         */
+        public int getAppenderQueueDepth() {
+            return mAppenderQueueDepth;
+        }
+
+        public int getAppenderQueueMaxDepth() {
+            return mAppenderQueueMaxDepth;
+        }
+
+        @Override
+        public String toString() {
+            return "lines: " + mLineCount +
+                    ", dropped: " + mDroppedCount +
+                    ", parse errors: " + mParseErrorCount +
+                    ", parser queue: " + mParserQueueDepth + " (max " + mParserQueueMaxDepth + ")" +
+                    ", merger queue: " + mMergerQueueDepth + " (max " + mMergerQueueMaxDepth + ")" +
+                    ", appender queue: " + mAppenderQueueDepth + " (max " + mAppenderQueueMaxDepth + ")";
+        }
+    }
+}
@@ -18,22 +18,61 @@
 package net.daverix.logcatviewer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Filters log items by priority. The sequence numbers of all read items are kept in one index per
+ * priority so changing the log level only merges the indexes of the included priorities, and new
+ * items are added to the indexes as they are read.
+ *
+ * This class is not thread safe, use it from the main thread.
+ */
 public class LogPriorityFilter implements LogFilter {
+    private static final Priority[] PRIORITIES = Priority.values();
+
     private final LogHandler mLogHandler;
+    private final SequenceIndex[] mIndexes = new SequenceIndex[PRIORITIES.length];
+    private long mLastSequence = -1;
 
     public LogPriorityFilter(LogHandler logHandler) {
+        if(logHandler == null)
+            throw new IllegalArgumentException("logHandler is null");
+
         mLogHandler = logHandler;
+
+        for(int i = 0; i < mIndexes.length; i++) {
+            mIndexes[i] = new SequenceIndex();
+        }
     }
 
     @Override
     public List<LogItem> getFilteredItems(Priority logLevel) {
-        List<LogItem> items = mLogHandler.getReadItems();
+        readNewItems(null, logLevel);
+
         List<LogItem> filtered = new ArrayList<LogItem>();
+        if(logLevel == Priority.SILENT)
+            return filtered;
 
-        for(LogItem item : items) {
-            if(isPriorityInCurrentLoglevel(item.getPriority(), logLevel)) {
+        // merge the indexes of all included priorities by sequence number
+        int first = logLevel.ordinal();
+        int[] positions = new int[PRIORITIES.length];
+        while(true) {
+            int next = -1;
+            long nextSequence = Long.MAX_VALUE;
+            for(int i = first; i < PRIORITIES.length; i++) {
+                if(positions[i] < mIndexes[i].size() && mIndexes[i].get(positions[i]) < nextSequence) {
+                    next = i;
+                    nextSequence = mIndexes[i].get(positions[i]);
+                }
+            }
+
+            if(next < 0)
+                break;
+
+            positions[next]++;
+            LogItem item = mLogHandler.getItem(nextSequence);
+            if(item != null) {
                 filtered.add(item);
             }
         }
@@ -41,15 +80,55 @@ public class LogPriorityFilter implements LogFilter {
         return filtered;
     }
 
-    private boolean isPriorityInCurrentLoglevel(Priority priority, Priority logLevel) {
-        switch (logLevel) {
-            case VERBOSE:   return LogLevel.VERBOSE.contains(priority);
-            case DEBUG:     return LogLevel.DEBUG.contains(priority);
-            case INFO:      return LogLevel.INFO.contains(priority);
-            case WARNING:   return LogLevel.WARNING.contains(priority);
-            case ERROR:     return LogLevel.ERROR.contains(priority);
-            case FATAL:     return LogLevel.ASSERT.contains(priority);
-            default:        return false;
+    @Override
+    public List<LogItem> getNewFilteredItems(Priority logLevel) {
+        List<LogItem> filtered = new ArrayList<LogItem>();
+        readNewItems(filtered, logLevel);
+        return filtered;
+    }
+
+    /**
+     * @return nothing, the priority of an item doesn't change when its message is updated
+     */
+    @Override
+    public List<LogItem> getUpdatedFilteredItems(List<LogItem> items, Priority logLevel) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Adds the items read since the last call to the indexes.
+     *
+     * @param filtered list to add the new items matching the log level to or null
+     * @param logLevel the lowest priority to include
+     */
+    private void readNewItems(List<LogItem> filtered, Priority logLevel) {
+        List<LogItem> items = mLogHandler.getItemsSince(mLastSequence);
+
+        for(LogItem item : items) {
+            Priority priority = item.getPriority();
+            mIndexes[priority.ordinal()].add(item.getSequence());
+
+            if(filtered != null && isInLogLevel(priority, logLevel)) {
+                filtered.add(item);
+            }
+        }
+
+        if(!items.isEmpty()) {
+            mLastSequence = items.get(items.size() - 1).getSequence();
         }
+
+        long firstSequence = mLogHandler.getFirstSequence();
+        for(SequenceIndex index : mIndexes) {
+            index.trimBefore(firstSequence);
+        }
+    }
+
+    /**
+     * @param priority priority of a log item
+     * @param logLevel the lowest priority to include
+     * @return true if an item with the priority should be shown at the log level
+     */
+    static boolean isInLogLevel(Priority priority, Priority logLevel) {
+        return logLevel != Priority.SILENT && priority.ordinal() >= logLevel.ordinal();
     }
 }
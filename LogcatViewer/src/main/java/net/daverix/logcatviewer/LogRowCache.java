@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * What a row of the log list shows: the message, the header with priority and tag, the formatted
+ * timestamp and the color. A row is prepared the first time its item is shown and kept by the
+ * sequence number of the item, so showing the item again doesn't allocate anything. The message
+ * is only read again from the item when {@link #updateMessage(LogItem)} is called.
+ *
+ * Holds a fixed number of rows, the least recently used row is reused for a new item. The keys
+ * are kept in an open addressing table of primitive longs so looking up a row doesn't box the
+ * sequence number either.
+ *
+ * This class is not thread safe.
+ */
+public class LogRowCache {
+    private static final int NONE = -1;
+
+    private final Row[] mRows;
+    // row index or NONE, found by linear probing from the hash of the sequence number
+    private final int[] mTable;
+    private final int mMask;
+    // least recently used order, mHead is the most recently used row
+    private final int[] mPrevious;
+    private final int[] mNext;
+    private int mHead = NONE;
+    private int mTail = NONE;
+    private int mSize;
+    private final LogTimestampFormatter mTimestampFormatter;
+    private long mHitCount;
+    private long mMissCount;
+
+    /**
+     * @param capacity maximum number of rows kept
+     */
+    public LogRowCache(int capacity) {
+        this(capacity, new LogTimestampFormatter());
+    }
+
+    /**
+     * @param capacity maximum number of rows kept
+     * @param timestampFormatter formats the timestamps of the rows
+     */
+    public LogRowCache(int capacity, LogTimestampFormatter timestampFormatter) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("capacity must be greater than zero");
+
+        if(timestampFormatter == null)
+            throw new IllegalArgumentException("timestampFormatter is null");
+
+        mTimestampFormatter = timestampFormatter;
+        mRows = new Row[capacity];
+        mPrevious = new int[capacity];
+        mNext = new int[capacity];
+
+        // at most half full so the probe sequences stay short
+        int tableSize = Integer.highestOneBit(capacity) * 4;
+        mTable = new int[tableSize];
+        mMask = tableSize - 1;
+        clear();
+    }
+
+    /**
+     * @param item the item to show, with a sequence number from the store
+     * @return the row of the item, only valid until the next call
+     */
+    public Row get(LogItem item) {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        long sequence = item.getSequence();
+        int slot = findSlot(sequence);
+        int index = mTable[slot];
+        if(index != NONE) {
+            mHitCount++;
+            moveToHead(index);
+            return mRows[index];
+        }
+
+        mMissCount++;
+        if(mSize < mRows.length) {
+            index = mSize++;
+            mRows[index] = new Row();
+        }
+        else {
+            index = mTail;
+            unlink(index);
+            removeKey(mRows[index].mSequence);
+            // the key may have moved into the slot found above
+            slot = findSlot(sequence);
+        }
+
+        mRows[index].set(item, mTimestampFormatter);
+        mTable[slot] = index;
+        linkAtHead(index);
+        return mRows[index];
+    }
+
+    /**
+     * Reads the message of an item again if its row is kept, for items that got lines added to
+     * their message.
+     *
+     * @param item the updated item
+     * @return true if the row of the item is kept
+     */
+    public boolean updateMessage(LogItem item) {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        int index = mTable[findSlot(item.getSequence())];
+        if(index == NONE)
+            return false;
+
+        mRows[index].mMessage = item.getMessage();
+        return true;
+    }
+
+    /**
+     * Removes all rows.
+     */
+    public void clear() {
+        for(int i = 0; i < mTable.length; i++) {
+            mTable[i] = NONE;
+        }
+        for(int i = 0; i < mSize; i++) {
+            mRows[i] = null;
+        }
+        mSize = 0;
+        mHead = NONE;
+        mTail = NONE;
+    }
+
+    /**
+     * @return number of rows kept
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return number of times a row was found
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of times a row had to be prepared
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the slot holding the sequence number or the empty slot where it belongs
+     */
+    private int findSlot(long sequence) {
+        int slot = hash(sequence);
+        while(mTable[slot] != NONE && mRows[mTable[slot]].mSequence != sequence) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private void removeKey(long sequence) {
+        int slot = findSlot(sequence);
+        if(mTable[slot] == NONE)
+            return;
+
+        // moves the following keys back so no probe sequence has a hole in it
+        int next = slot;
+        while(true) {
+            mTable[slot] = NONE;
+            int home;
+            do {
+                next = (next + 1) & mMask;
+                if(mTable[next] == NONE)
+                    return;
+
+                home = hash(mRows[mTable[next]].mSequence);
+            } while(slot <= next ? slot < home && home <= next : slot < home || home <= next);
+
+            mTable[slot] = mTable[next];
+            slot = next;
+        }
+    }
+
+    private int hash(long sequence) {
+        long hash = sequence * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mMask;
+    }
+
+    private void moveToHead(int index) {
+        if(index == mHead)
+            return;
+
+        unlink(index);
+        linkAtHead(index);
+    }
+
+    private void unlink(int index) {
+        int previous = mPrevious[index];
+        int next = mNext[index];
+        if(previous != NONE) {
+            mNext[previous] = next;
+        }
+        else {
+            mHead = next;
+        }
+
+        if(next != NONE) {
+            mPrevious[next] = previous;
+        }
+        else {
+            mTail = previous;
+        }
+    }
+
+    private void linkAtHead(int index) {
+        mPrevious[index] = NONE;
+        mNext[index] = mHead;
+        if(mHead != NONE) {
+            mPrevious[mHead] = index;
+        }
+        mHead = index;
+
+        if(mTail == NONE) {
+            mTail = index;
+        }
+    }
+
+    /**
+     * @param priority priority of an item
+     * @return the letter logcat uses for the priority
+     */
+    public static String getPriorityString(Priority priority) {
+        switch (priority) {
+            case ERROR:     return "E";
+            case DEBUG:     return "D";
+            case FATAL:     return "F";
+            case INFO:      return "I";
+            case SILENT:    return "S";
+            case VERBOSE:   return "V";
+            case WARNING:   return "W";
+            case UNKNOWN:   return "?";
+            default:        return "UNKNOWN";
+        }
+    }
+
+    /**
+     * @param priority priority of an item
+     * @return the color to show the message of an item with
+     */
+    public static int getColor(Priority priority) {
+        switch (priority) {
+            case FATAL:
+            case ERROR:
+                return 0xFFCC0000; //red
+            case WARNING:
+                return 0xFFFF8800; //orange
+            case INFO:
+                return 0xFF669900; //green
+            case DEBUG:
+                return 0xFF0099CC; //blue
+            case VERBOSE:
+            default:
+                return 0xFF333333; //gray
+        }
+    }
+
+    /**
+     * The prepared parts of a row, reused for another item when it is evicted.
+     */
+    public static class Row {
+        private long mSequence;
+        private String mMessage;
+        private String mHeader;
+        private final char[] mDate = new char[LogTimestampFormatter.LENGTH];
+        private int mDateLength;
+        private int mColor;
+
+        private void set(LogItem item, LogTimestampFormatter timestampFormatter) {
+            mSequence = item.getSequence();
+            mMessage = item.getMessage();
+            mHeader = getPriorityString(item.getPriority()) + "/" + item.getTag();
+            mDateLength = timestampFormatter.format(item.getTimestampMillis(), mDate, 0);
+            mColor = LogRowCache.getColor(item.getPriority());
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        /**
+         * @return the message as it was when the row was prepared or last updated
+         */
+        public String getMessage() {
+            return mMessage;
+        }
+
+        /**
+         * @return priority and tag like logcat prints them
+         */
+        public CharSequence getHeader() {
+            return mHeader;
+        }
+
+        /**
+         * @return buffer holding the formatted timestamp from index 0, it is reused for another
+         *         item so copy it before handing it to a view that keeps it
+         */
+        public char[] getDate() {
+            return mDate;
+        }
+
+        public int getDateLength() {
+            return mDateLength;
+        }
+
+        public int getColor() {
+            return mColor;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters log items by a search query and priority using the search index of the
+ * {@link LogHandler}. See {@link LogSearchIndex} for how queries are matched.
+ *
+ * This class is not thread safe, use it from the main thread.
+ */
+public class LogSearchFilter implements LogFilter {
+    private final LogHandler mLogHandler;
+    private final String mQuery;
+    private final List<String> mQueryWords;
+    private long mLastSequence = -1;
+
+    public LogSearchFilter(LogHandler logHandler, String query) {
+        if(logHandler == null)
+            throw new IllegalArgumentException("logHandler is null");
+
+        if(query == null)
+            throw new IllegalArgumentException("query is null");
+
+        mLogHandler = logHandler;
+        mQuery = query;
+        mQueryWords = LogSearchIndex.getWords(query);
+    }
+
+    public String getQuery() {
+        return mQuery;
+    }
+
+    @Override
+    public List<LogItem> getFilteredItems(Priority logLevel) {
+        List<LogItem> filtered = new ArrayList<LogItem>();
+
+        // the items read after the indexed ones are checked without the index, so nothing is
+        // scanned twice on the next update
+        mLastSequence = mLogHandler.getIndexedSequence();
+        long[] sequences = mLogHandler.search(mQuery);
+
+        for(long sequence : sequences) {
+            if(sequence > mLastSequence)
+                break;
+
+            LogItem item = mLogHandler.getItem(sequence);
+            if(item != null && LogPriorityFilter.isInLogLevel(item.getPriority(), logLevel)) {
+                filtered.add(item);
+            }
+        }
+
+        filtered.addAll(getNewFilteredItems(logLevel));
+        return filtered;
+    }
+
+    @Override
+    public List<LogItem> getNewFilteredItems(Priority logLevel) {
+        List<LogItem> items = mLogHandler.getItemsSince(mLastSequence);
+        List<LogItem> filtered = new ArrayList<LogItem>();
+
+        for(LogItem item : items) {
+            if(LogPriorityFilter.isInLogLevel(item.getPriority(), logLevel) &&
+                    LogSearchIndex.matches(mQueryWords, item)) {
+                filtered.add(item);
+            }
+        }
+
+        if(!items.isEmpty()) {
+            mLastSequence = items.get(items.size() - 1).getSequence();
+        }
+
+        return filtered;
+    }
+
+    @Override
+    public List<LogItem> getUpdatedFilteredItems(List<LogItem> items, Priority logLevel) {
+        List<LogItem> filtered = new ArrayList<LogItem>();
+        for(LogItem item : items) {
+            if(item.getSequence() <= mLastSequence &&
+                    LogPriorityFilter.isInLogLevel(item.getPriority(), logLevel) &&
+                    LogSearchIndex.matches(mQueryWords, item)) {
+                filtered.add(item);
+            }
+        }
+        return filtered;
+    }
+}
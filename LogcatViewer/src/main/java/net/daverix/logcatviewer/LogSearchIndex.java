@@ -0,0 +1,337 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from the words in log item tags and messages to the sequence numbers of the
+ * items they appear in. A query matches an item when every word in the query is the start of a
+ * word in the item, ignoring case. Words are runs of letters and digits.
+ *
+ * Items are added by the reader thread while queries run on the main thread.
+ */
+public class LogSearchIndex {
+    private static final int MAX_WORD_LENGTH = 64;
+    private static final int SWEEP_INTERVAL = 10000;
+
+    // the same order as String, so a word can be looked up in the buffer it was read into
+    private static final Comparator<CharSequence> WORD_ORDER = new Comparator<CharSequence>() {
+        @Override
+        public int compare(CharSequence first, CharSequence second) {
+            int length = Math.min(first.length(), second.length());
+            for(int i = 0; i < length; i++) {
+                char c = first.charAt(i);
+                char d = second.charAt(i);
+                if(c != d)
+                    return c - d;
+            }
+            return first.length() - second.length();
+        }
+    };
+
+    // sorted so the words starting with a prefix are next to each other
+    private final SortedMap<CharSequence, SequenceIndex> mPostings =
+            new TreeMap<CharSequence, SequenceIndex>(WORD_ORDER);
+    private final WordBuffer mWordBuffer = new WordBuffer(MAX_WORD_LENGTH);
+    private long mFirstSequence;
+    private long mLastSweepSequence;
+    private long mLastItemSequence = -1;
+
+    /**
+     * Indexes the tag and the message of a new item.
+     *
+     * @param sequence sequence number of the item, higher than the ones added before
+     * @param tag tag of the item
+     * @param message message of the item
+     */
+    public synchronized void addItem(long sequence, String tag, String message) {
+        add(sequence, tag);
+        add(sequence, message);
+        mLastItemSequence = sequence;
+    }
+
+    /**
+     * @return sequence number of the newest item added with
+     *         {@link #addItem(long, String, String)}, or -1 if there is none
+     */
+    public synchronized long getLastItemSequence() {
+        return mLastItemSequence;
+    }
+
+    /**
+     * Indexes the words in the given text. Can be called several times for the same item as long
+     * as no later item has been added in between.
+     *
+     * @param sequence sequence number of the item
+     * @param text tag or message of the item
+     */
+    public synchronized void add(long sequence, String text) {
+        if(text == null)
+            return;
+
+        final int length = text.length();
+        int wordLength = 0;
+        for(int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(c)) {
+                if(wordLength < MAX_WORD_LENGTH) {
+                    mWordBuffer.mChars[wordLength] = Character.toLowerCase(c);
+                }
+                wordLength++;
+            }
+            else if(wordLength > 0) {
+                addWord(sequence, Math.min(wordLength, MAX_WORD_LENGTH));
+                wordLength = 0;
+            }
+        }
+    }
+
+    private void addWord(long sequence, int length) {
+        mWordBuffer.mLength = length;
+        SequenceIndex postings = mPostings.get(mWordBuffer);
+        if(postings == null) {
+            // only a word that isn't indexed yet is copied out of the buffer
+            postings = new SequenceIndex(4);
+            mPostings.put(mWordBuffer.toString(), postings);
+        }
+        else {
+            postings.trimBefore(mFirstSequence);
+        }
+
+        if(postings.size() == 0 || postings.get(postings.size() - 1) != sequence) {
+            postings.add(sequence);
+        }
+    }
+
+    /**
+     * Forgets about items with a lower sequence number than the given one, call it when items are
+     * evicted from the store. Words that are no longer used are removed once in a while.
+     *
+     * @param sequence sequence number of the oldest item still kept
+     */
+    public synchronized void trimBefore(long sequence) {
+        if(sequence <= mFirstSequence)
+            return;
+
+        mFirstSequence = sequence;
+        if(mFirstSequence - mLastSweepSequence < SWEEP_INTERVAL)
+            return;
+
+        mLastSweepSequence = mFirstSequence;
+        Iterator<SequenceIndex> iterator = mPostings.values().iterator();
+        while(iterator.hasNext()) {
+            SequenceIndex postings = iterator.next();
+            postings.trimBefore(mFirstSequence);
+            if(postings.size() == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mPostings.clear();
+    }
+
+    /**
+     * @return number of distinct words in the index
+     */
+    public synchronized int getWordCount() {
+        return mPostings.size();
+    }
+
+    /**
+     * Finds the items matching the query.
+     *
+     * @param query words to search for
+     * @return sequence numbers of the matching items in increasing order
+     */
+    public synchronized long[] search(String query) {
+        List<String> words = getWords(query);
+        if(words.isEmpty())
+            return new long[0];
+
+        long[] result = null;
+        for(String word : words) {
+            long[] matches = getSequencesForPrefix(word);
+            result = result == null ? matches : intersect(result, matches);
+
+            if(result.length == 0)
+                break;
+        }
+
+        return result;
+    }
+
+    private long[] getSequencesForPrefix(String prefix) {
+        List<SequenceIndex> matching = new ArrayList<SequenceIndex>();
+        int count = 0;
+        for(SequenceIndex postings : mPostings.subMap(prefix, prefix + '\uffff').values()) {
+            postings.trimBefore(mFirstSequence);
+            matching.add(postings);
+            count += postings.size();
+        }
+
+        long[] result = new long[count];
+        int offset = 0;
+        for(SequenceIndex postings : matching) {
+            for(int i = 0; i < postings.size(); i++) {
+                result[offset++] = postings.get(i);
+            }
+        }
+
+        if(matching.size() < 2)
+            return result;
+
+        // several words share the prefix, sort and remove the duplicates
+        Arrays.sort(result);
+        int unique = 0;
+        for(int i = 0; i < result.length; i++) {
+            if(unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return trim(result, unique);
+    }
+
+    /**
+     * Checks if an item matches the query without using the index.
+     *
+     * @param queryWords words from {@link #getWords(String)}
+     * @param item the item to check
+     * @return true if every query word is the start of a word in the tag or message
+     */
+    public static boolean matches(List<String> queryWords, LogItem item) {
+        if(queryWords.isEmpty())
+            return false;
+
+        List<String> words = getWords(item.getTag());
+        words.addAll(getWords(item.getMessage()));
+
+        for(String queryWord : queryWords) {
+            boolean found = false;
+            for(String word : words) {
+                if(word.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if(!found)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits a text into lower case words the same way as when indexing.
+     *
+     * @param text the text to split
+     * @return the words in the text
+     */
+    public static List<String> getWords(String text) {
+        List<String> words = new ArrayList<String>();
+        if(text == null)
+            return words;
+
+        StringBuilder word = new StringBuilder();
+        final int length = text.length();
+        for(int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(c)) {
+                if(word.length() < MAX_WORD_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            }
+            else if(word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    private static long[] intersect(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while(i < first.length && j < second.length) {
+            if(first[i] < second[j]) {
+                i++;
+            }
+            else if(second[j] < first[i]) {
+                j++;
+            }
+            else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+
+        return trim(result, count);
+    }
+
+    private static long[] trim(long[] sequences, int count) {
+        if(count == sequences.length)
+            return sequences;
+
+        long[] result = new long[count];
+        System.arraycopy(sequences, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * The characters of the word being indexed, only used to look it up
+     */
+    private static class WordBuffer implements CharSequence {
+        private final char[] mChars;
+        private int mLength;
+
+        public WordBuffer(int capacity) {
+            mChars = new char[capacity];
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mLength);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.Arrays;
+
+/**
+ * The sequence numbers of the selected log items, kept sorted in an array of primitive longs.
+ * Selecting or deselecting an item is a binary search and a small array copy, so the selection
+ * follows every check in the list without going through all items, and it gives the selected
+ * items in log order when they are shared.
+ */
+public class LogSelection {
+    private long[] mSequences = new long[16];
+    private int mSize;
+
+    /**
+     * @param sequence sequence number of the item to select
+     * @return true if it wasn't selected before
+     */
+    public boolean add(long sequence) {
+        int index = Arrays.binarySearch(mSequences, 0, mSize, sequence);
+        if(index >= 0)
+            return false;
+
+        index = -index - 1;
+        if(mSize == mSequences.length) {
+            mSequences = Arrays.copyOf(mSequences, mSize * 2);
+        }
+        System.arraycopy(mSequences, index, mSequences, index + 1, mSize - index);
+        mSequences[index] = sequence;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @param sequence sequence number of the item to deselect
+     * @return true if it was selected
+     */
+    public boolean remove(long sequence) {
+        int index = Arrays.binarySearch(mSequences, 0, mSize, sequence);
+        if(index < 0)
+            return false;
+
+        System.arraycopy(mSequences, index + 1, mSequences, index, mSize - index - 1);
+        mSize--;
+        return true;
+    }
+
+    public boolean contains(long sequence) {
+        return Arrays.binarySearch(mSequences, 0, mSize, sequence) >= 0;
+    }
+
+    /**
+     * @param index index from 0 to {@link #size()}
+     * @return the sequence number at the index, in ascending order
+     */
+    public long get(int index) {
+        if(index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("index " + index + " is not below " + mSize);
+
+        return mSequences[index];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+}
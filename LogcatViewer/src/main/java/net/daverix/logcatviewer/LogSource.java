@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where logcat output is read from. The stream is expected to contain lines in the
+ * "-v time" format, except for {@link BinaryLogSource} which is read with a
+ * {@link BinaryLogItemFactory}.
+ */
+public interface LogSource {
+    /**
+     * Starts reading from the source. Closing the returned stream stops the source and releases
+     * everything it holds, such as a process or a file.
+     *
+     * @return the output of the source
+     */
+    public InputStream open() throws IOException;
+}
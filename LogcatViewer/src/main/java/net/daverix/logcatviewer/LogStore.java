@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.List;
+
+/**
+ * Storage for the log items read by a {@link LogHandler}. Every appended item gets a sequence
+ * number that is one higher than the previous one, the numbers are never reused even when old
+ * items are evicted or the store is cleared.
+ */
+public interface LogStore {
+    /**
+     * Appends an item, evicting the oldest items if the store is full.
+     *
+     * @param item the item to append
+     * @return the sequence number given to the item
+     */
+    public long append(LogItem item);
+
+    /**
+     * Replaces the message of an item that is already in the store. Nothing is changed if the
+     * item has already been evicted, which can happen to the last lines of a multi-line message
+     * when the store is flooded, those updates are counted by {@link #getDroppedUpdateCount()}.
+     *
+     * @param sequence sequence number of the item
+     * @param message the new message
+     */
+    public void updateMessage(long sequence, String message);
+
+    /**
+     * @param sequence sequence number of the item
+     * @return the item or null if it has been evicted or not appended yet
+     */
+    public LogItem get(long sequence);
+
+    /**
+     * @return copy of all retained items, oldest first
+     */
+    public List<LogItem> getItems();
+
+    /**
+     * @param sequence sequence number of the last item the caller has seen, -1 for none
+     * @return copy of the retained items appended after the given sequence number, oldest first
+     */
+    public List<LogItem> getItemsSince(long sequence);
+
+    /**
+     * @return sequence number of the oldest retained item
+     */
+    public long getFirstSequence();
+
+    /**
+     * @return sequence number the next appended item will get
+     */
+    public long getNextSequence();
+
+    /**
+     * @return number of retained items
+     */
+    public int size();
+
+    /**
+     * @return maximum number of retained items
+     */
+    public int getCapacity();
+
+    /**
+     * @return number of items that have been evicted to make room for newer ones
+     */
+    public long getEvictedCount();
+
+    /**
+     * @return number of message updates that were ignored because the item had been evicted
+     */
+    public long getDroppedUpdateCount();
+
+    /**
+     * Removes all items without resetting the sequence numbers.
+     */
+    public void clear();
+
+    /**
+     * Removes all items and continues the sequence numbers from the given one, used to take over
+     * the numbers of items that were kept somewhere else.
+     *
+     * @param nextSequence sequence number the next appended item will get, not lower than
+     *                     {@link #getNextSequence()}
+     */
+    public void clear(long nextSequence);
+}
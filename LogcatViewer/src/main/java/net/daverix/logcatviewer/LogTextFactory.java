@@ -17,8 +17,26 @@
 
 package net.daverix.logcatviewer;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 public interface LogTextFactory {
     public String create(List<LogItem> items);
+
+    /**
+     * Writes the text that {@link #create(List)} puts before the items, so the text can be
+     * written item by item instead of being built in memory.
+     *
+     * @param writer where the text is written
+     */
+    public void writeHeader(Writer writer) throws IOException;
+
+    /**
+     * Writes the text of one item like {@link #create(List)} does.
+     *
+     * @param item the item to write
+     * @param writer where the text is written
+     */
+    public void writeItem(LogItem item, Writer writer) throws IOException;
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.TimeZone;
+
+import static net.daverix.logcatviewer.LogTimestampResolver.MILLIS_PER_DAY;
+
+/**
+ * Formats epoch milliseconds as "MM-dd HH:mm:ss.SSS" into a char buffer without allocating. The
+ * month, day and UTC offset of the last formatted day are cached. On a day when daylight saving
+ * time changes, the part of the day with one offset is cached.
+ *
+ * This class is not thread safe.
+ */
+public class LogTimestampFormatter {
+    /**
+     * Number of characters written by {@link #format(long, char[], int)}
+     */
+    public static final int LENGTH = 18;
+
+    private final TimeZone mTimeZone;
+    private long mCachedStart = Long.MAX_VALUE;
+    private long mCachedEnd = Long.MIN_VALUE;
+    private long mCachedDayStart;
+    private int mCachedMonth;
+    private int mCachedDay;
+
+    public LogTimestampFormatter() {
+        this(TimeZone.getDefault());
+    }
+
+    public LogTimestampFormatter(TimeZone timeZone) {
+        if(timeZone == null)
+            throw new IllegalArgumentException("timeZone is null");
+
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * Writes the timestamp into the buffer.
+     *
+     * @param timestampMillis milliseconds since the epoch
+     * @param buffer buffer with room for {@link #LENGTH} characters from offset
+     * @param offset where to start writing
+     * @return the number of characters written
+     */
+    public int format(long timestampMillis, char[] buffer, int offset) {
+        if(timestampMillis < mCachedStart || timestampMillis >= mCachedEnd) {
+            updateCache(timestampMillis);
+        }
+
+        int millisOfDay = (int) (timestampMillis - mCachedDayStart);
+
+        int i = offset;
+        i = writeDigits(buffer, i, mCachedMonth, 2);
+        buffer[i++] = '-';
+        i = writeDigits(buffer, i, mCachedDay, 2);
+        buffer[i++] = ' ';
+        i = writeDigits(buffer, i, millisOfDay / 3600000, 2);
+        buffer[i++] = ':';
+        i = writeDigits(buffer, i, millisOfDay / 60000 % 60, 2);
+        buffer[i++] = ':';
+        i = writeDigits(buffer, i, millisOfDay / 1000 % 60, 2);
+        buffer[i++] = '.';
+        i = writeDigits(buffer, i, millisOfDay % 1000, 3);
+
+        return i - offset;
+    }
+
+    /**
+     * Formats the timestamp into a new string. Prefer {@link #format(long, char[], int)} in loops.
+     */
+    public String format(long timestampMillis) {
+        char[] buffer = new char[LENGTH];
+        return new String(buffer, 0, format(timestampMillis, buffer, 0));
+    }
+
+    private void updateCache(long timestampMillis) {
+        int offset = mTimeZone.getOffset(timestampMillis);
+        long days = LogTimestampResolver.floorDiv(timestampMillis + offset, MILLIS_PER_DAY);
+        int date = LogTimestampResolver.daysToDate(days);
+
+        mCachedMonth = LogTimestampResolver.getMonth(date);
+        mCachedDay = LogTimestampResolver.getDay(date);
+        // where the day would start with this offset, the time of day is counted from here
+        mCachedDayStart = days * MILLIS_PER_DAY - offset;
+        mCachedStart = mCachedDayStart;
+        mCachedEnd = mCachedDayStart + MILLIS_PER_DAY;
+
+        // daylight saving time changes today, only cache the part of the day with this offset
+        if(mTimeZone.getOffset(mCachedStart) != offset) {
+            mCachedStart = findOffsetChange(mCachedStart, timestampMillis);
+        }
+        if(mTimeZone.getOffset(mCachedEnd - 1) != offset) {
+            mCachedEnd = findOffsetChange(timestampMillis, mCachedEnd - 1);
+        }
+    }
+
+    /**
+     * Finds when the offset changes between two timestamps with different offsets, assuming it
+     * changes once.
+     *
+     * @return the first millisecond after from that doesn't have the offset of from
+     */
+    private long findOffsetChange(long from, long to) {
+        int offset = mTimeZone.getOffset(from);
+        while(to - from > 1) {
+            long middle = from + (to - from) / 2;
+            if(mTimeZone.getOffset(middle) == offset) {
+                from = middle;
+            }
+            else {
+                to = middle;
+            }
+        }
+        return to;
+    }
+
+    private static int writeDigits(char[] buffer, int offset, int value, int count) {
+        for(int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + count;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.TimeZone;
+
+/**
+ * Turns the date fields of a logcat line into milliseconds since the epoch. The start of the last
+ * seen day is cached so consecutive lines from the same day only need a few additions. Logcat
+ * doesn't print the year so the current year is assumed, just like before.
+ *
+ * This class is not thread safe, use one instance per reader thread.
+ */
+public class LogTimestampResolver {
+    static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private final TimeZone mTimeZone;
+    private int mCachedMonth = -1;
+    private int mCachedDay = -1;
+    private long mCachedLocalMidnight;
+    private int mCachedOffset;
+    private boolean mCachedOffsetChangesDuringDay;
+
+    public LogTimestampResolver() {
+        this(TimeZone.getDefault());
+    }
+
+    public LogTimestampResolver(TimeZone timeZone) {
+        if(timeZone == null)
+            throw new IllegalArgumentException("timeZone is null");
+
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * Resolves the given local date fields to epoch milliseconds.
+     *
+     * @param month month of year, 1-12
+     * @param day day of month
+     * @param hour hour of day
+     * @param minute minute of hour
+     * @param second second of minute
+     * @param millis millisecond of second
+     * @return milliseconds since the epoch
+     */
+    public long resolve(int month, int day, int hour, int minute, int second, int millis) {
+        if(month != mCachedMonth || day != mCachedDay) {
+            updateCachedDay(month, day);
+        }
+
+        long localMillis = mCachedLocalMidnight + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+        if(!mCachedOffsetChangesDuringDay)
+            return localMillis - mCachedOffset;
+
+        return localMillis - mTimeZone.getOffset(localMillis - mTimeZone.getRawOffset());
+    }
+
+    private void updateCachedDay(int month, int day) {
+        long now = System.currentTimeMillis();
+        int year = getYear(daysToDate(floorDiv(now + mTimeZone.getOffset(now), MILLIS_PER_DAY)));
+
+        mCachedMonth = month;
+        mCachedDay = day;
+        mCachedLocalMidnight = dateToDays(year, month, day) * MILLIS_PER_DAY;
+
+        long midnight = mCachedLocalMidnight - mTimeZone.getRawOffset();
+        mCachedOffset = mTimeZone.getOffset(midnight);
+        mCachedOffsetChangesDuringDay = mCachedOffset != mTimeZone.getOffset(midnight + MILLIS_PER_DAY - 1);
+    }
+
+    static long floorDiv(long value, long divisor) {
+        long result = value / divisor;
+        if((value % divisor != 0) && ((value < 0) != (divisor < 0)))
+            result--;
+
+        return result;
+    }
+
+    /**
+     * Counts the days since 1970-01-01 in the proleptic gregorian calendar.
+     */
+    static long dateToDays(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Inverse of {@link #dateToDays(int, int, int)}.
+     *
+     * @return the date packed as year * 10000 + month * 100 + day
+     */
+    static int daysToDate(long days) {
+        days += 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        return year * 10000 + month * 100 + day;
+    }
+
+    static int getYear(int date) {
+        return date / 10000;
+    }
+
+    static int getMonth(int date) {
+        return date / 100 % 100;
+    }
+
+    static int getDay(int date) {
+        return date % 100;
+    }
+}
@@ -21,36 +21,235 @@ import android.content.Context;
 import android.os.Handler;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Reads the log from a {@link LogSource} on its own thread into a {@link LogStore} and tells the
+ * listeners about the new items on the main thread. Leaving out lines in the logcat process is
+ * opt-in: it only happens when a retained filter is set with
+ * {@link #setRetainedFilter(LogFilterSpec)}, by default every line is read and stored.
+ */
 public class LogcatHandler implements LogHandler, Runnable {
+    public static final int DEFAULT_CAPACITY = 50000;
+    public static final long DEFAULT_BYTE_BUDGET = 16 * 1024 * 1024;
+    public static final long DEFAULT_DISPATCH_INTERVAL_MS = 16;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
     private final Context mContext;
     private final LogItemFactory mLogItemFactory;
-    private final ArrayList<LogItem> mLogItems = new ArrayList<LogItem>();
+    private final LogStore mLogStore;
+    private final LogSource mLogSource;
+    private final LogPipeline mPipeline;
+    private final LogBufferMerger mBufferMerger = new LogBufferMerger();
+    private final LogSearchIndex mSearchIndex = new LogSearchIndex();
+    private final ParseFailures mParseFailures = new ParseFailures();
     private final List<OnLogItemReadListener> mListeners = new ArrayList<OnLogItemReadListener>();
+    private final Handler mMainHandler;
+    private final LogItemBatcher mBatcher;
+    private final long mDispatchIntervalMs;
     private Thread mThread;
+    private LogFilterSpec mSourceSpec;
+    private LogFilterSpec mRetainedSpec;
+    private boolean mStoreIndexed;
 
     public LogcatHandler(Context context, LogItemFactory logItemFactory) {
+        this(context, logItemFactory, new ColumnarLogStore(DEFAULT_CAPACITY, DEFAULT_BYTE_BUDGET));
+    }
+
+    public LogcatHandler(Context context, LogItemFactory logItemFactory, LogStore logStore) {
+        this(context, logItemFactory, logStore, new ProcessLogSource());
+    }
+
+    public LogcatHandler(Context context, LogItemFactory logItemFactory, LogStore logStore, LogSource logSource) {
+        this(context, logItemFactory, logStore, logSource, DEFAULT_DISPATCH_INTERVAL_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param context context used to get the main looper
+     * @param logItemFactory parses the lines read from logcat
+     * @param logStore where the read items are kept
+     * @param logSource where the lines are read from
+     * @param dispatchIntervalMs how long to collect items before listeners are notified
+     * @param maxBatchSize notify listeners right away when this many items have been collected
+     */
+    public LogcatHandler(Context context, LogItemFactory logItemFactory, LogStore logStore, LogSource logSource,
+                         long dispatchIntervalMs, int maxBatchSize) {
+        if(logItemFactory == null)
+            throw new IllegalArgumentException("logItemFactory is null");
+
+        if(logStore == null)
+            throw new IllegalArgumentException("logStore is null");
+
+        if(logSource == null)
+            throw new IllegalArgumentException("logSource is null");
+
+        if(dispatchIntervalMs < 0)
+            throw new IllegalArgumentException("dispatchIntervalMs must not be negative");
+
         mContext = context;
         mLogItemFactory = logItemFactory;
+        mLogStore = logStore;
+        mLogSource = logSource;
+        mPipeline = new LogPipeline(logItemFactory);
+        mMainHandler = new Handler(mContext.getMainLooper());
+        mBatcher = new LogItemBatcher(maxBatchSize);
+        mDispatchIntervalMs = dispatchIntervalMs;
     }
 
-    public void listen() throws IOException {
-        if(mThread != null) {
-            mThread.interrupt();
+    /**
+     * Starts reading on a new thread. If it was already reading the old thread is stopped, and
+     * the new one waits for it so they never append to the store at the same time.
+     */
+    public synchronized void listen() throws IOException {
+        final Thread previous = mThread;
+        if(previous != null) {
+            previous.interrupt();
         }
 
-        mThread = new Thread(this);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if(previous != null) {
+                    try {
+                        previous.join();
+                    } catch (InterruptedException e) {
+                        // listen() was called again
+                        return;
+                    }
+                }
+                LogcatHandler.this.run();
+            }
+        });
         mThread.start();
     }
 
+    /**
+     * Stops reading without waiting for the reading thread, it stops soon after since the reads
+     * can be interrupted.
+     *
+     * @param onStopped run on a background thread when nothing is appended to the store anymore,
+     *                  or null
+     */
+    public synchronized void stop(final Runnable onStopped) {
+        final Thread thread = mThread;
+        mThread = null;
+        if(thread != null) {
+            thread.interrupt();
+        }
+
+        if(onStopped == null)
+            return;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if(thread != null) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                onStopped.run();
+            }
+        }).start();
+    }
+
+    @Override
+    public List<LogItem> getReadItems() {
+        return mLogStore.getItems();
+    }
+
+    @Override
+    public List<LogItem> getItemsSince(long sequence) {
+        return mLogStore.getItemsSince(sequence);
+    }
+
+    @Override
+    public LogItem getItem(long sequence) {
+        return mLogStore.get(sequence);
+    }
+
+    @Override
+    public long[] search(String query) {
+        return mSearchIndex.search(query);
+    }
+
+    @Override
+    public long getIndexedSequence() {
+        return mSearchIndex.getLastItemSequence();
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return mLogStore.getFirstSequence();
+    }
+
+    @Override
+    public long getNextSequence() {
+        return mLogStore.getNextSequence();
+    }
+
+    @Override
+    public int getCapacity() {
+        return mLogStore.getCapacity();
+    }
+
     @Override
-    public synchronized List<LogItem> getReadItems() {
-        return new ArrayList<LogItem>(mLogItems);
+    public long getEvictedCount() {
+        return mLogStore.getEvictedCount();
+    }
+
+    /**
+     * The source only leaves out lines that neither this filter nor the retained filter match,
+     * see {@link #setRetainedFilter(LogFilterSpec)}. By default everything is retained, so this
+     * doesn't leave anything out until a retained filter is set.
+     */
+    @Override
+    public synchronized void setSourceFilter(LogFilterSpec spec) {
+        mSourceSpec = spec == null ? null : new LogFilterSpec(spec);
+        updateSourceFilter();
+    }
+
+    /**
+     * Sets the lines the store has to keep whatever {@link #setSourceFilter(LogFilterSpec)} is
+     * given. A line that was left out is lost for good, it can't be read again when the filter
+     * is widened, so with the default of keeping everything the store and its archive never miss
+     * a line because of what was shown.
+     *
+     * @param spec the lines to keep at least or null to keep everything
+     */
+    public synchronized void setRetainedFilter(LogFilterSpec spec) {
+        mRetainedSpec = spec == null ? null : new LogFilterSpec(spec);
+        updateSourceFilter();
+    }
+
+    /**
+     * Restarts reading when the source has to leave out other lines than before, which needs a
+     * {@link FilterableLogSource}. Reading goes on from the last stored item.
+     */
+    private void updateSourceFilter() {
+        if(!(mLogSource instanceof FilterableLogSource))
+            return;
+
+        LogFilterSpec spec = mSourceSpec == null || mRetainedSpec == null ? null :
+                LogFilterSpec.union(mSourceSpec, mRetainedSpec);
+        if(((FilterableLogSource) mLogSource).setFilterSpec(spec) && mThread != null) {
+            try {
+                listen();
+            } catch (IOException e) {
+                Log.e("LogcatHandler", "Error restarting log handler thread", e);
+            }
+        }
     }
 
     @Override
@@ -68,73 +267,164 @@ public class LogcatHandler implements LogHandler, Runnable {
     }
 
     /**
-     * Notifies listeners on the main thread.
+     * Text output of a single source is read through this pipeline, configure it before calling
+     * {@link #listen()}. It isn't used when the buffers are read by the
+     * {@link #getBufferMerger() merger}, and binary output from a {@link BinaryLogItemFactory} is
+     * decoded on the reading thread instead.
+     *
+     * @return the pipeline that reads, parses, merges and stores the lines
+     */
+    public LogPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * When buffers are set on the merger and the source is a {@link MultiBufferLogSource}, the
+     * buffers are read in parallel and merged instead of going through the pipeline, every buffer
+     * with its own queue and the merger's {@link OverloadPolicy}. Configure it before calling
+     * {@link #listen()}.
+     *
+     * @return the merger that reads the selected logcat buffers
+     */
+    public LogBufferMerger getBufferMerger() {
+        return mBufferMerger;
+    }
+
+    /**
+     * @return statistics about the batches delivered to the listeners
+     */
+    public LogItemBatcher.Metrics getDispatchMetrics() {
+        return mBatcher.getMetrics();
+    }
+
+    /**
+     * Lines that can't be parsed are shown with the {@link Priority#UNKNOWN} priority and
+     * counted here, reading goes on.
+     *
+     * @return counts and samples of the lines that couldn't be parsed
+     */
+    public ParseFailures.Metrics getParseFailureMetrics() {
+        return mParseFailures.getMetrics();
+    }
+
+    /**
+     * Queues an item for the listeners, they are notified on the main thread when the batch is
+     * full or the dispatch interval has passed.
      * @param item the log item that was read.
      */
-    private void notifyListeners(final LogItem item) {
-        Handler handler = new Handler(mContext.getMainLooper());
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (mListeners) {
-                    for(OnLogItemReadListener listener : mListeners) {
-                        if(listener != null) {
-                            listener.onLogItemRead(item);
-                        }
+    private void notifyListeners(LogItem item) {
+        switch (mBatcher.add(item)) {
+            case LogItemBatcher.FIRST_IN_BATCH:
+                mMainHandler.postDelayed(mDispatchRunnable, mDispatchIntervalMs);
+                break;
+            case LogItemBatcher.BATCH_FULL:
+                mMainHandler.removeCallbacks(mDispatchRunnable);
+                mMainHandler.post(mDispatchRunnable);
+                break;
+        }
+    }
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<LogItem> items = mBatcher.drain();
+            if(items.isEmpty())
+                return;
+
+            synchronized (mListeners) {
+                for(OnLogItemReadListener listener : mListeners) {
+                    if(listener != null) {
+                        listener.onLogItemsRead(items);
                     }
                 }
             }
-        });
-    }
+        }
+    };
 
     @Override
     public void run() {
-        String line;
+        List<InputStream> inputStreams = new ArrayList<InputStream>();
         try {
-            Process process = Runtime.getRuntime().exec("logcat -v time");
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-            synchronized (mLogItems) {
-                mLogItems.clear();
-            }
-
-            LogItem lastItem = null;
+            mParseFailures.clear();
+            if(!mStoreIndexed) {
+                // restored here instead of when the store is created, it can take a while
+                if(mLogStore instanceof ArchiveLogStore) {
+                    ((ArchiveLogStore) mLogStore).restore();
+                }
 
-            while ((line = bufferedReader.readLine()) != null){
-                if(line.startsWith("---------"))
-                    continue;
+                LogItem newest = null;
+                for(LogItem item : mLogStore.getItems()) {
+                    mSearchIndex.addItem(item.getSequence(), item.getTag(), item.getMessage());
+                    newest = item;
+                }
+                mStoreIndexed = true;
 
-                LogItem item = mLogItemFactory.create(line);
+                // the listeners fetch everything they haven't seen, not only the given items
+                if(newest != null) {
+                    notifyListeners(newest);
+                }
+            }
 
-                if(lastItem != null && isItemEqualToOtherItemExceptMessage(item, lastItem)) {
-                    lastItem.setMessage(lastItem.getMessage() + "\n" + item.getMessage());
+            // lines are split and parsed from the raw bytes, messages are decoded when shown
+            LogcatReader reader = new LogcatReader(mLogItemFactory, mLogStore, mSearchIndex, mReaderCallback);
+            reader.setParseFailures(mParseFailures);
+            // multi-line messages are updated at most as often as the items are dispatched
+            reader.setFlushInterval(mDispatchIntervalMs * 1000 * 1000);
 
-                    notifyListeners(lastItem);
-                }
-                else {
-                    synchronized (mLogItems) {
-                        mLogItems.add(item);
-                    }
+            // go on from the items of an earlier run instead of reading the whole log again
+            LogCheckpoint checkpoint = LogCheckpoint.create(mLogStore, LogCheckpoint.DEFAULT_OVERLAP_MILLIS);
+            reader.setCheckpoint(checkpoint);
 
-                    notifyListeners(item);
-                    lastItem = item;
+            Set<LogBuffer> buffers = mBufferMerger.getBuffers();
+            if(!buffers.isEmpty() && mLogSource instanceof MultiBufferLogSource &&
+                    !(mLogItemFactory instanceof BinaryLogItemFactory)) {
+                Map<LogBuffer, ReadableByteChannel> channels = new EnumMap<LogBuffer, ReadableByteChannel>(LogBuffer.class);
+                for(LogBuffer buffer : buffers) {
+                    InputStream inputStream = open(((MultiBufferLogSource) mLogSource).getBufferSource(buffer), checkpoint);
+                    inputStreams.add(inputStream);
+                    channels.put(buffer, Channels.newChannel(inputStream));
                 }
+                mBufferMerger.read(channels, reader);
+                return;
+            }
 
-                if(Thread.interrupted()) {
-                    break;
-                }
+            InputStream inputStream = open(mLogSource, checkpoint);
+            inputStreams.add(inputStream);
+            ReadableByteChannel channel = Channels.newChannel(inputStream);
+            if(mLogItemFactory instanceof BinaryLogItemFactory) {
+                reader.read(channel);
+            }
+            else {
+                mPipeline.read(channel, reader);
             }
+        } catch (InterruptedIOException e) {
+            // listen() was called again
         } catch (IOException e) {
             Log.e("LogcatHandler", "Error reading logcat", e);
         } catch (ParseException e) {
             Log.e("LogcatHandler", "Parsing error when reading logcat", e);
+        } finally {
+            for(InputStream inputStream : inputStreams) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e("LogcatHandler", "Error closing log source", e);
+                }
+            }
         }
     }
 
-    private boolean isItemEqualToOtherItemExceptMessage(LogItem item, LogItem other) {
-        return item != null && other != null && other.getDate().equals(item.getDate()) &&
-                other.getTag().equals(item.getTag()) &&
-                other.getPid() == item.getPid() &&
-                other.getPriority().equals(item.getPriority());
+    private static InputStream open(LogSource source, LogCheckpoint checkpoint) throws IOException {
+        if(checkpoint != null && source instanceof ResumableLogSource)
+            return ((ResumableLogSource) source).open(checkpoint.getStartMillis());
+
+        return source.open();
     }
+
+    private final LogcatReader.Callback mReaderCallback = new LogcatReader.Callback() {
+        @Override
+        public void onItemRead(LogItem item) {
+            notifyListeners(item);
+        }
+    };
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+
+class LogcatItem implements LogItem {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Priority mPriority;
+    private final String mTag;
+    private final long mTimestamp;
+    // decoding and setMessage lock the item so a decode can't overwrite a newer message, once the
+    // bytes are cleared the message is read without the lock
+    private volatile String mMessage;
+    private volatile byte[] mMessageBytes;
+    private final int mPid;
+    private final int mTid;
+    private long mSequence = -1;
+    private LogBuffer mBuffer = LogBuffer.UNKNOWN;
+
+    public LogcatItem(Priority priority, String tag, long timestamp, String message, int pid) {
+        mPriority = priority;
+        mTag = tag;
+        mTimestamp = timestamp;
+        mMessage = message;
+        mPid = pid;
+        mTid = -1;
+    }
+
+    public LogcatItem(Priority priority, String tag, long timestamp, byte[] messageBytes, int pid) {
+        this(priority, tag, timestamp, messageBytes, pid, -1);
+    }
+
+    /**
+     * @param messageBytes the UTF-8 encoded message, it is only decoded when it is first asked for
+     * @param tid id of the logging thread or -1 if it isn't known
+     */
+    public LogcatItem(Priority priority, String tag, long timestamp, byte[] messageBytes, int pid, int tid) {
+        mPriority = priority;
+        mTag = tag;
+        mTimestamp = timestamp;
+        mMessageBytes = messageBytes;
+        mPid = pid;
+        mTid = tid;
+    }
+
+    /**
+     * @return the item itself if it is a LogcatItem, otherwise a copy that a store can number
+     */
+    static LogcatItem of(LogItem item) {
+        if(item instanceof LogcatItem)
+            return (LogcatItem) item;
+
+        LogcatItem copy = new LogcatItem(item.getPriority(), item.getTag(), item.getTimestampMillis(),
+                (byte[]) null, item.getPid(), item.getTid());
+        copy.mMessage = item.getMessage();
+        copy.mBuffer = item.getBuffer();
+        return copy;
+    }
+
+    public synchronized void setMessage(String message) {
+        mMessage = message;
+        mMessageBytes = null;
+    }
+
+    /**
+     * @return the UTF-8 encoded message or null if it has already been decoded
+     */
+    byte[] getMessageBytes() {
+        return mMessageBytes;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public String getTag() {
+        return mTag;
+    }
+
+    @Override
+    @Deprecated
+    public Date getDate() {
+        return new Date(mTimestamp);
+    }
+
+    @Override
+    public long getTimestampMillis() {
+        return mTimestamp;
+    }
+
+    @Override
+    public String getMessage() {
+        if(mMessageBytes == null)
+            return mMessage;
+
+        synchronized (this) {
+            byte[] messageBytes = mMessageBytes;
+            if(messageBytes != null) {
+                mMessage = new String(messageBytes, UTF_8);
+                mMessageBytes = null;
+            }
+            return mMessage;
+        }
+    }
+
+    @Override
+    public int getPid() {
+        return mPid;
+    }
+
+    @Override
+    public int getTid() {
+        return mTid;
+    }
+
+    @Override
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Only called by the stores and the archive, the sequence number can't be changed from
+     * outside the package.
+     */
+    void setSequence(long sequence) {
+        mSequence = sequence;
+    }
+
+    @Override
+    public LogBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Only called while the item is read, before it is appended to a store.
+     */
+    void setBuffer(LogBuffer buffer) {
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer is null");
+
+        mBuffer = buffer;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 42; //non-zero value
+
+        result = 31 * result + mPriority.hashCode();
+        result = 31 * result + mTag.hashCode();
+        result = 31 * result + (int) (mTimestamp ^ (mTimestamp >>> 32));
+        result = 31 * result + getMessage().hashCode();
+        result = 31 * result + mPid;
+
+        return result;
+    }
+}
@@ -17,10 +17,8 @@
 
 package net.daverix.logcatviewer;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import static net.daverix.logcatviewer.Priority.DEBUG;
 import static net.daverix.logcatviewer.Priority.ERROR;
@@ -30,82 +28,232 @@ import static net.daverix.logcatviewer.Priority.SILENT;
 import static net.daverix.logcatviewer.Priority.VERBOSE;
 import static net.daverix.logcatviewer.Priority.WARNING;
 
-public class LogcatItemFactory implements LogItemFactory {
+/**
+ * Parses lines in the "logcat -v time" format by walking the characters once instead of running a
+ * regular expression. Lines that don't follow the expected layout are handed to
+ * {@link RegexLogcatItemFactory}.
+ *
+ * Lines can also be parsed straight from the bytes read from logcat, then only the tag is looked
+ * up and the message is kept encoded until it is first asked for.
+ *
+ * Through {@link ParseResult} lines that can't be parsed are reported without an exception, the
+ * fallback factory is then only tried if it can do the same.
+ */
+public class LogcatItemFactory implements ByteLogItemFactory, TolerantLogItemFactory {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LogItemFactory mFallbackFactory;
+    private final TagPool mTagPool;
+    private final LogTimestampResolver mTimestampResolver = new LogTimestampResolver();
+    private final ParseResult mResult = new ParseResult();
+    private final StringSource mStringSource = new StringSource();
+    private final ByteSource mByteSource = new ByteSource();
+
+    public LogcatItemFactory() {
+        this(new TagPool());
+    }
+
+    public LogcatItemFactory(TagPool tagPool) {
+        this(new RegexLogcatItemFactory(tagPool), tagPool);
+    }
+
+    public LogcatItemFactory(LogItemFactory fallbackFactory, TagPool tagPool) {
+        if(fallbackFactory == null)
+            throw new IllegalArgumentException("fallbackFactory is null");
+
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mFallbackFactory = fallbackFactory;
+        mTagPool = tagPool;
+    }
+
+    /**
+     * @return the pool the tags of the created items are shared through
+     */
+    public TagPool getTagPool() {
+        return mTagPool;
+    }
+
     @Override
     public LogItem create(String line) throws ParseException {
-        //10-12 15:59:01.840 I/GCoreUlr(21516): Successfully inserted location
-        Pattern p = Pattern.compile("^([0-9]{1,2})-([0-9]{1,2}) ([0-9]{2}):([0-9]{2}):([0-9]{2})\\.([0-9]{3}) (V|D|I|W|E|F|S)/(.+)\\(([ 0-9]+)\\): (.*)$", Pattern.MULTILINE);
+        if(line == null)
+            throw new ParseException("line is null");
 
-        Matcher matcher = p.matcher(line);
-        if(!matcher.matches())
-            throw new ParseException("Regex pattern doesn't match input: " + line);
+        if(parse(mStringSource.set(line), mResult) != ParseResult.OK)
+            return mFallbackFactory.create(line);
 
-        try {
-            String strMonth = matcher.group(1);
-            String strDay = matcher.group(2);
-            String strHour = matcher.group(3);
-            String strMinute = matcher.group(4);
-            String strSecond = matcher.group(5);
-            String strMilliseconds = matcher.group(6);
-            Date date = getDate(strMonth, strDay, strHour, strMinute, strSecond, strMilliseconds);
+        return mResult.getItem();
+    }
 
-            String strPrio = matcher.group(7);
-            String tag = matcher.group(8);
-            String pid = matcher.group(9);
-            String message = matcher.group(10);
+    @Override
+    public int create(String line, ParseResult result) {
+        if(line == null)
+            throw new IllegalArgumentException("line is null");
 
-            return new LogcatItem(parsePriority(strPrio), tag, date, message, getProcessId(pid));
-        } catch (Exception e) {
-            throw new ParseException("Error matching groups in pattern", e);
-        }
+        if(result == null)
+            throw new IllegalArgumentException("result is null");
+
+        int status = parse(mStringSource.set(line), result);
+        if(status == ParseResult.OK)
+            return status;
+
+        if(mFallbackFactory instanceof TolerantLogItemFactory &&
+                ((TolerantLogItemFactory) mFallbackFactory).create(line, result) == ParseResult.OK)
+            return ParseResult.OK;
+
+        // keep the reason found here, it is more specific than the one of the fallback
+        result.setFailure(status, line);
+        return status;
     }
 
-    private int getProcessId(String strPid) {
-        if(strPid == null)
-            throw new IllegalArgumentException("strPid is null");
+    @Override
+    public LogItem create(ByteBuffer buffer, int start, int end) throws ParseException {
+        if(buffer == null)
+            throw new ParseException("buffer is null");
+
+        if(parse(mByteSource.set(buffer, start, end), mResult) != ParseResult.OK)
+            return create(decode(buffer, start, end));
 
-        return Integer.parseInt(strPid.trim());
+        return mResult.getItem();
     }
 
-    private Date getDate(String strMonth, String strDay, String strHour, String strMinute, String strSecond, String strMilliseconds) {
-        if(strMonth == null)
-            throw new IllegalArgumentException("strMonth is null");
+    @Override
+    public int create(ByteBuffer buffer, int start, int end, ParseResult result) {
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer is null");
 
-        if(strDay == null)
-            throw new IllegalArgumentException("strDay is null");
+        if(result == null)
+            throw new IllegalArgumentException("result is null");
 
-        if(strHour == null)
-            throw new IllegalArgumentException("strHour is null");
+        if(parse(mByteSource.set(buffer, start, end), result) == ParseResult.OK)
+            return ParseResult.OK;
 
-        if(strMinute == null)
-            throw new IllegalArgumentException("strMinute is null");
+        return create(decode(buffer, start, end), result);
+    }
 
-        if(strSecond == null)
-            throw new IllegalArgumentException("strSecond is null");
+    /**
+     * Parses a line like "10-12 15:59:01.840 I/GCoreUlr(21516): Successfully inserted location",
+     * from a String or from its UTF-8 encoded bytes.
+     *
+     * @param source the characters of the line
+     * @param result where the item is put if the line could be parsed
+     * @return the status, the item is only put in the result if the line could be parsed
+     */
+    private int parse(CharSource source, ParseResult result) {
+        final int end = source.getEnd();
+        int i = source.getStart();
+
+        // month and day are one or two digits, the time fields have a fixed width
+        int month = 0;
+        int digits = 0;
+        while(i < end && digits < 2 && isDigit(source.charAt(i))) {
+            month = month * 10 + (source.charAt(i++) - '0');
+            digits++;
+        }
+        if(digits == 0 || !isChar(source, i++, '-'))
+            return ParseResult.BAD_TIMESTAMP;
+
+        int day = 0;
+        digits = 0;
+        while(i < end && digits < 2 && isDigit(source.charAt(i))) {
+            day = day * 10 + (source.charAt(i++) - '0');
+            digits++;
+        }
+        if(digits == 0 || !isChar(source, i++, ' '))
+            return ParseResult.BAD_TIMESTAMP;
+
+        // "HH:mm:ss.SSS " is 13 characters and is followed by at least "P/T(0): "
+        if(i + 13 + 8 > end)
+            return ParseResult.BAD_TIMESTAMP;
+
+        int hour = parseFixed(source, i, 2);
+        int minute = parseFixed(source, i + 3, 2);
+        int second = parseFixed(source, i + 6, 2);
+        int millis = parseFixed(source, i + 9, 3);
+        if(hour < 0 || minute < 0 || second < 0 || millis < 0 ||
+                source.charAt(i + 2) != ':' || source.charAt(i + 5) != ':' ||
+                source.charAt(i + 8) != '.' || source.charAt(i + 12) != ' ')
+            return ParseResult.BAD_TIMESTAMP;
+        i += 13;
+
+        Priority priority = getPriority(source.charAt(i++));
+        if(priority == null || !isChar(source, i++, '/'))
+            return ParseResult.BAD_PRIORITY;
+
+        // the tag may contain anything, the pid is the first "( 123): " that follows it
+        final int tagStart = i;
+        int pidStart = -1;
+        int pid = 0;
+        int messageStart = -1;
+        for(int open = tagStart + 1; open < end; open++) {
+            if(source.charAt(open) != '(')
+                continue;
+
+            int j = open + 1;
+            while(j < end && source.charAt(j) == ' ') {
+                j++;
+            }
+
+            int value = 0;
+            digits = 0;
+            while(j < end && digits < 10 && isDigit(source.charAt(j))) {
+                value = value * 10 + (source.charAt(j++) - '0');
+                digits++;
+            }
+
+            if(digits > 0 && digits < 10 && isChar(source, j, ')') && isChar(source, j + 1, ':') &&
+                    isChar(source, j + 2, ' ')) {
+                pidStart = open;
+                pid = value;
+                messageStart = j + 3;
+                break;
+            }
+        }
 
-        if(strMilliseconds == null)
-            throw new IllegalArgumentException("strMilliseconds is null");
+        if(pidStart < 0)
+            return ParseResult.BAD_PID;
 
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.MONTH, Integer.parseInt(strMonth) - 1);
-        cal.set(Calendar.DAY_OF_MONTH, Integer.parseInt(strDay));
-        cal.set(Calendar.HOUR_OF_DAY, Integer.parseInt(strHour));
-        cal.set(Calendar.MINUTE, Integer.parseInt(strMinute));
-        cal.set(Calendar.SECOND, Integer.parseInt(strSecond));
-        cal.set(Calendar.MILLISECOND, Integer.parseInt(strMilliseconds));
+        String tag = source.getTag(mTagPool, tagStart, pidStart);
+        long timestamp = mTimestampResolver.resolve(month, day, hour, minute, second, millis);
 
-        return cal.getTime();
+        result.setItem(source.createItem(priority, tag, timestamp, messageStart, pid));
+        return ParseResult.OK;
     }
 
-    private Priority parsePriority(String strPrio) {
-        if(strPrio == null)
-            throw new IllegalArgumentException("strPrio must not be null!");
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 
-        if(strPrio.length() != 1)
-            throw new IllegalStateException("length of priority string should be 1, got " + strPrio.length());
+    private static boolean isChar(CharSource source, int index, char c) {
+        return index < source.getEnd() && source.charAt(index) == c;
+    }
+
+    private static int parseFixed(CharSource source, int start, int count) {
+        int value = 0;
+        for(int i = start; i < start + count; i++) {
+            char c = source.charAt(i);
+            if(!isDigit(c))
+                return -1;
 
-        char prio = strPrio.charAt(0);
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return bytes;
+    }
 
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        return new String(copy(buffer, start, end), UTF_8);
+    }
+
+    private Priority getPriority(char prio) {
         switch (prio) {
             case 'V': return VERBOSE;
             case 'D': return DEBUG;
@@ -114,68 +262,101 @@ public class LogcatItemFactory implements LogItemFactory {
             case 'E': return ERROR;
             case 'F': return FATAL;
             case 'S': return SILENT;
+            default:  return null;
+        }
+    }
 
-            default:
-                throw new IllegalStateException("Unknown priority in string " + strPrio);
+    /**
+     * The characters of the line being parsed, so the header is parsed the same way from a String
+     * and from bytes. Kept by the factory and reused for every line.
+     */
+    private static abstract class CharSource {
+        public abstract int getStart();
 
-        }
+        public abstract int getEnd();
+
+        public abstract char charAt(int index);
+
+        public abstract String getTag(TagPool tagPool, int start, int end);
+
+        public abstract LogItem createItem(Priority priority, String tag, long timestamp,
+                                           int messageStart, int pid);
     }
 
-    private class LogcatItem implements LogItem {
-        private final Priority mPriority;
-        private final String mTag;
-        private final Date mDate;
-        private String mMessage;
-        private final int mPid;
+    private static class StringSource extends CharSource {
+        private String mLine;
 
-        public LogcatItem(Priority priority, String tag, Date date, String message, int pid) {
-            mPriority = priority;
-            mTag = tag;
-            mDate = date;
-            mMessage = message;
-            mPid = pid;
+        public StringSource set(String line) {
+            mLine = line;
+            return this;
         }
 
-        public void setMessage(String message) {
-            mMessage = message;
+        @Override
+        public int getStart() {
+            return 0;
         }
 
         @Override
-        public Priority getPriority() {
-            return mPriority;
+        public int getEnd() {
+            return mLine.length();
         }
 
         @Override
-        public String getTag() {
-            return mTag;
+        public char charAt(int index) {
+            return mLine.charAt(index);
         }
 
         @Override
-        public Date getDate() {
-            return mDate;
+        public String getTag(TagPool tagPool, int start, int end) {
+            return tagPool.intern(mLine, start, end);
         }
 
         @Override
-        public String getMessage() {
-            return mMessage;
+        public LogItem createItem(Priority priority, String tag, long timestamp, int messageStart, int pid) {
+            return new LogcatItem(priority, tag, timestamp, mLine.substring(messageStart), pid);
+        }
+    }
+
+    /**
+     * Reads the UTF-8 encoded bytes of a line without moving the position of the buffer. Every
+     * byte is read as a character, all the delimiters are ASCII so they can't be confused with a
+     * part of a multi-byte character. The message is kept encoded.
+     */
+    private static class ByteSource extends CharSource {
+        private ByteBuffer mBuffer;
+        private int mStart;
+        private int mEnd;
+
+        public ByteSource set(ByteBuffer buffer, int start, int end) {
+            mBuffer = buffer;
+            mStart = start;
+            mEnd = end;
+            return this;
         }
 
         @Override
-        public int getPid() {
-            return mPid;
+        public int getStart() {
+            return mStart;
         }
 
         @Override
-        public int hashCode() {
-            int result = 42; //non-zero value
+        public int getEnd() {
+            return mEnd;
+        }
 
-            result = 31 * result + mPriority.hashCode();
-            result = 31 * result + mTag.hashCode();
-            result = 31 * result + mDate.hashCode();
-            result = 31 * result + mMessage.hashCode();
-            result = 31 * result + mPid;
+        @Override
+        public char charAt(int index) {
+            return (char) (mBuffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public String getTag(TagPool tagPool, int start, int end) {
+            return tagPool.intern(mBuffer, start, end);
+        }
 
-            return result;
+        @Override
+        public LogItem createItem(Priority priority, String tag, long timestamp, int messageStart, int pid) {
+            return new LogcatItem(priority, tag, timestamp, copy(mBuffer, messageStart, mEnd), pid);
         }
     }
 }
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Turns lines from logcat into log items. Lines that continue the message of the previous item,
+ * which logcat prints with the same header, are merged into that item. New items are appended to
+ * the store and the search index.
+ *
+ * The lines of a multi-line message, like a stack trace, are collected in a reusable buffer and
+ * the item is updated when the next item starts or when the lines have been collected for the
+ * flush interval, see {@link #flushIfDue()}. A live pipe returns about one line per read, so the
+ * item is not updated for every read. The read methods here can only check the interval when a
+ * read returns, a {@link LogPipeline} also updates the item when no more lines come in time.
+ *
+ * Lines that can't be parsed don't stop the reading, they are counted in {@link ParseFailures}
+ * and kept as items with the {@link Priority#UNKNOWN} priority, see {@link ParseResult}. Malformed
+ * binary records are counted and skipped.
+ *
+ * Doesn't depend on Android so it can be used and measured on a plain JVM.
+ */
+public class LogcatReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETAINED_MESSAGE_CAPACITY = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_NANOS = 16 * 1000 * 1000;
+    static final byte[] BEGINNING_OF_BUFFER = "---------".getBytes(UTF_8);
+
+    private final LogItemFactory mLogItemFactory;
+    private final LogStore mLogStore;
+    private final LogSearchIndex mSearchIndex;
+    private final Callback mCallback;
+    private LogItem mLastItem;
+    private StringBuilder mPendingMessage = new StringBuilder();
+    private boolean mHasPendingMessage;
+    private long mPendingSinceNanos;
+    private long mFlushIntervalNanos = DEFAULT_FLUSH_INTERVAL_NANOS;
+    private final ParseResult mParseResult = new ParseResult();
+    private ParseFailures mParseFailures = new ParseFailures();
+    private LogCheckpoint mCheckpoint;
+    private LogItem mPreviousItem;
+    private boolean mSkipping;
+
+    /**
+     * @param logItemFactory parses the lines
+     * @param logStore where new items are appended
+     * @param searchIndex index to add the words of new items to or null
+     * @param callback notified about new and updated items or null
+     */
+    public LogcatReader(LogItemFactory logItemFactory, LogStore logStore, LogSearchIndex searchIndex,
+                        Callback callback) {
+        if(logItemFactory == null)
+            throw new IllegalArgumentException("logItemFactory is null");
+
+        if(logStore == null)
+            throw new IllegalArgumentException("logStore is null");
+
+        mLogItemFactory = logItemFactory;
+        mLogStore = logStore;
+        mSearchIndex = searchIndex;
+        mCallback = callback;
+    }
+
+    /**
+     * @param parseFailures where lines that can't be parsed are counted, to share them with
+     *                      a {@link LogPipeline} or keep them between readers
+     */
+    public void setParseFailures(ParseFailures parseFailures) {
+        if(parseFailures == null)
+            throw new IllegalArgumentException("parseFailures is null");
+
+        mParseFailures = parseFailures;
+    }
+
+    /**
+     * @param intervalNanos how long the lines of a multi-line message are collected at most
+     *                      before the item is updated, usually the interval the items are
+     *                      dispatched at
+     */
+    public void setFlushInterval(long intervalNanos) {
+        if(intervalNanos < 0)
+            throw new IllegalArgumentException("intervalNanos is negative");
+
+        mFlushIntervalNanos = intervalNanos;
+    }
+
+    /**
+     * @return the counts and samples of the lines that couldn't be parsed
+     */
+    public ParseFailures getParseFailures() {
+        return mParseFailures;
+    }
+
+    /**
+     * Skips the items that are already in the store from an earlier read of the same log, up to
+     * where the earlier read stopped.
+     *
+     * @param checkpoint where the earlier read stopped or null to keep everything
+     */
+    public void setCheckpoint(LogCheckpoint checkpoint) {
+        mCheckpoint = checkpoint;
+    }
+
+    /**
+     * Reads lines until the end of the stream or until the thread is interrupted.
+     *
+     * @param reader the output of logcat
+     */
+    public void read(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null){
+            readLine(line);
+
+            if(!reader.ready()) {
+                flushIfDue();
+            }
+
+            if(Thread.interrupted()) {
+                break;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Reads lines until the end of the channel or until the thread is interrupted. The bytes are
+     * read into a reusable direct buffer and lines are found without decoding them, if the
+     * factory is a {@link ByteLogItemFactory} the lines are also parsed from the bytes. If the
+     * factory is a {@link BinaryLogItemFactory} the channel is read as binary records instead.
+     *
+     * @param channel the output of logcat
+     */
+    public void read(ReadableByteChannel channel) throws IOException, ParseException {
+        if(mLogItemFactory instanceof BinaryLogItemFactory) {
+            readEntries(channel, (BinaryLogItemFactory) mLogItemFactory);
+            return;
+        }
+
+        ByteLineReader.read(channel, new ByteLineReader.LineHandler() {
+            @Override
+            public void onLine(ByteBuffer buffer, int start, int end) {
+                readLine(buffer, start, end);
+            }
+
+            @Override
+            public void onLinesRead() {
+                flushIfDue();
+            }
+        });
+        flush();
+    }
+
+    private void readEntries(ReadableByteChannel channel, BinaryLogItemFactory factory)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try {
+            while(channel.read(buffer) >= 0) {
+                buffer.flip();
+                readRecords(buffer, factory);
+                buffer.compact();
+
+                if(!buffer.hasRemaining()) {
+                    buffer = ByteLineReader.grow(buffer);
+                }
+
+                if(Thread.interrupted()) {
+                    return;
+                }
+            }
+        } catch (ClosedByInterruptException e) {
+            return;
+        }
+    }
+
+    private void readRecords(ByteBuffer buffer, BinaryLogItemFactory factory) {
+        while(true) {
+            LogItem item;
+            try {
+                item = factory.create(buffer);
+            } catch (ParseException e) {
+                // the factory has skipped the malformed record, go on with the next one
+                mParseFailures.record(ParseResult.BAD_RECORD, e.getMessage());
+                continue;
+            }
+
+            if(item == null)
+                return;
+
+            // a record holds the whole message, there is nothing to merge
+            append(item);
+        }
+    }
+
+    /**
+     * Handles one line of logcat output from the bytes that were read.
+     *
+     * @param buffer buffer holding the UTF-8 encoded line
+     * @param start index of the first byte of the line
+     * @param end index after the last byte of the line, without line terminator
+     */
+    public void readLine(ByteBuffer buffer, int start, int end) {
+        if(ByteLineReader.startsWith(buffer, start, end, BEGINNING_OF_BUFFER))
+            return;
+
+        addResult(mParseResult.parse(mLogItemFactory, buffer, start, end));
+    }
+
+    /**
+     * Handles one line of logcat output.
+     *
+     * @param line the line without line terminator
+     */
+    public void readLine(String line) {
+        if(line.startsWith("---------"))
+            return;
+
+        addResult(mParseResult.parse(mLogItemFactory, line));
+    }
+
+    private void addResult(int status) {
+        if(status != ParseResult.OK) {
+            mParseFailures.record(status, mParseResult.getLine());
+        }
+        add(mParseResult.getItem());
+    }
+
+    private void add(LogItem item) {
+        // compared with skipped items too, so their lines are skipped with them
+        if(isContinuation(mPreviousItem, item)) {
+            appendToLastItem(item);
+        }
+        else {
+            append(item);
+        }
+    }
+
+    /**
+     * Adds the message of a continuation line to the last appended item, see
+     * {@link #isContinuation(LogItem, LogItem)}. For callers that do the merging decision
+     * themselves, such as a {@link LogPipeline}. The line is only collected, the item is updated
+     * by {@link #flush()} or once the lines have been collected for the flush interval.
+     *
+     * @param item item parsed from the continuation line
+     */
+    public void appendToLastItem(LogItem item) {
+        if(mSkipping)
+            return;
+
+        if(mLastItem == null) {
+            append(item);
+            return;
+        }
+
+        long now = System.nanoTime();
+        if(!mHasPendingMessage) {
+            mPendingMessage.setLength(0);
+            mPendingMessage.append(mLastItem.getMessage());
+            mHasPendingMessage = true;
+            mPendingSinceNanos = now;
+        }
+
+        String message = item.getMessage();
+        mPendingMessage.append('\n').append(message);
+        if(mSearchIndex != null) {
+            mSearchIndex.add(mLastItem.getSequence(), message);
+        }
+
+        // a message that keeps getting lines is still shown at the flush interval
+        if(now - mPendingSinceNanos >= mFlushIntervalNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Updates the last appended item if its continuation lines have been collected for the flush
+     * interval, see {@link #setFlushInterval(long)}. Called when there are no more lines for the
+     * moment, instead of {@link #flush()}, so lines that arrive one read at a time are still
+     * grouped.
+     *
+     * @return how long to wait for more lines at most before calling this again or -1 if there
+     *         are no collected lines
+     */
+    public long flushIfDue() {
+        if(!mHasPendingMessage)
+            return -1;
+
+        long remaining = mPendingSinceNanos + mFlushIntervalNanos - System.nanoTime();
+        if(remaining > 0)
+            return remaining;
+
+        flush();
+        return -1;
+    }
+
+    /**
+     * Updates the last appended item with the continuation lines collected since the last flush,
+     * if any, and notifies the callback about it once. Called when a new item is appended and at
+     * the end of the stream, see {@link #flushIfDue()} for when there are no more lines for the
+     * moment.
+     */
+    public void flush() {
+        if(!mHasPendingMessage)
+            return;
+
+        mHasPendingMessage = false;
+        String message = mPendingMessage.toString();
+        if(mPendingMessage.capacity() > MAX_RETAINED_MESSAGE_CAPACITY) {
+            // don't hold on to the buffer of an exceptionally long message
+            mPendingMessage = new StringBuilder();
+        }
+
+        mLastItem.setMessage(message);
+        mLogStore.updateMessage(mLastItem.getSequence(), message);
+        notifyCallback(mLastItem);
+    }
+
+    /**
+     * Appends a new item to the store and the search index without looking at the previous one.
+     *
+     * @param item the new item
+     */
+    public void append(LogItem item) {
+        flush();
+
+        mPreviousItem = item;
+        if(mCheckpoint != null) {
+            mSkipping = mCheckpoint.isRead(item);
+            if(mSkipping)
+                return;
+
+            if(mCheckpoint.isPast(item)) {
+                mCheckpoint = null;
+            }
+        }
+
+        long sequence = mLogStore.append(item);
+        if(mSearchIndex != null) {
+            mSearchIndex.addItem(sequence, item.getTag(), item.getMessage());
+            mSearchIndex.trimBefore(mLogStore.getFirstSequence());
+        }
+
+        notifyCallback(item);
+        mLastItem = item;
+    }
+
+    private void notifyCallback(LogItem item) {
+        if(mCallback != null) {
+            mCallback.onItemRead(item);
+        }
+    }
+
+    /**
+     * Logcat prints every line of a multi-line message with the same header, so a line with the
+     * same header as the previous one, read from the same buffer, continues its message. Lines
+     * that couldn't be parsed never continue a message.
+     *
+     * @param previous the item of the previous line or null
+     * @param item the item of the current line
+     * @return true if the item continues the message of the previous item
+     */
+    public static boolean isContinuation(LogItem previous, LogItem item) {
+        return item != null && item.getPriority() != Priority.UNKNOWN &&
+                isItemEqualToOtherItemExceptMessage(item, previous);
+    }
+
+    private static boolean isItemEqualToOtherItemExceptMessage(LogItem item, LogItem other) {
+        return item != null && other != null && other.getTimestampMillis() == item.getTimestampMillis() &&
+                other.getTag().equals(item.getTag()) &&
+                other.getPid() == item.getPid() &&
+                other.getPriority().equals(item.getPriority()) &&
+                other.getBuffer() == item.getBuffer();
+    }
+
+    /**
+     * Interface for listening on read items
+     */
+    public interface Callback {
+        /**
+         * Called on the thread that appends the items for every new item and every time an item
+         * gets lines added to its message.
+         *
+         * @param item the new or updated item
+         */
+        public void onItemRead(LogItem item);
+    }
+}
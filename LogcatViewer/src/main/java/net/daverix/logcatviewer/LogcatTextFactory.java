@@ -17,41 +17,70 @@
 
 package net.daverix.logcatviewer;
 
-import java.util.Calendar;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * Writes log items in the "logcat -v time" format. The timestamps are formatted into a buffer
+ * kept by the factory.
+ *
+ * This class is not thread safe.
+ */
 public class LogcatTextFactory implements LogTextFactory {
+    private final LogTimestampFormatter mTimestampFormatter = new LogTimestampFormatter();
+    private final char[] mDateBuffer = new char[LogTimestampFormatter.LENGTH];
+
     @Override
     public String create(List<LogItem> items) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeHeader(writer);
+            for(LogItem logItem : items) {
+                writeItem(logItem, writer);
+            }
+        } catch (IOException e) {
+            // a StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
 
-        StringBuilder builder = new StringBuilder();
-        builder.append("Steps to reproduce:\n\n");
-        builder.append("What happened?\n\n");
-        builder.append("What should happen?\n\n");
+        return writer.toString();
+    }
 
-        builder.append("Error log:\n\n");
+    @Override
+    public void writeHeader(Writer writer) throws IOException {
+        writer.write("Steps to reproduce:\n\n");
+        writer.write("What happened?\n\n");
+        writer.write("What should happen?\n\n");
+
+        writer.write("Error log:\n\n");
+    }
 
-        for(LogItem logItem : items) {
-            builder.append(getDateString(logItem.getDate())).append(" ")
-                .append(logItem.getPriority().toString()).append("/")
-                .append(logItem.getTag()).append("(").append(logItem.getPid()).append("): ")
-                .append(logItem.getMessage()).append("\n");
+    @Override
+    public void writeItem(LogItem logItem, Writer writer) throws IOException {
+        if(logItem.getPriority() == Priority.UNKNOWN) {
+            // the line couldn't be parsed, it is kept as it was read
+            writer.write(logItem.getMessage());
+            writer.write('\n');
+            return;
         }
 
-        return builder.toString();
+        int dateLength = mTimestampFormatter.format(logItem.getTimestampMillis(), mDateBuffer, 0);
+        writer.write(mDateBuffer, 0, dateLength);
+        writer.write(' ');
+        writer.write(logItem.getPriority().toString());
+        writer.write('/');
+        writer.write(logItem.getTag());
+        writer.write('(');
+        writer.write(Integer.toString(logItem.getPid()));
+        writer.write("): ");
+        writer.write(logItem.getMessage());
+        writer.write('\n');
     }
 
     public String getDateString(Date date) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-
-        return String.format("%02d-%02d %02d:%02d:%02d.%03d",
-                cal.get(Calendar.MONTH)+1,
-                cal.get(Calendar.DAY_OF_MONTH),
-                cal.get(Calendar.HOUR_OF_DAY),
-                cal.get(Calendar.MINUTE),
-                cal.get(Calendar.SECOND),
-                cal.get(Calendar.MILLISECOND));
+        return mTimestampFormatter.format(date.getTime());
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * A {@link LogSource} that can read the logcat buffers one at a time, so they can be read in
+ * parallel and merged by a {@link LogBufferMerger}.
+ */
+public interface MultiBufferLogSource extends LogSource {
+    /**
+     * @param buffer the buffer to read, not {@link LogBuffer#UNKNOWN}
+     * @return a source reading only the given buffer, it is also a {@link ResumableLogSource} if
+     *         this source is
+     */
+    public LogSource getBufferSource(LogBuffer buffer);
+}
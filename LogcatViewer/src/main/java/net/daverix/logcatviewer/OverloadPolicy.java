@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * What a {@link LogPipeline} or a {@link LogBufferMerger} does with new lines when the next stage
+ * can't keep up and its queue is full.
+ */
+public enum OverloadPolicy {
+    /**
+     * Wait for room, logcat is not read until then and may drop lines itself
+     */
+    BLOCK,
+
+    /**
+     * Drop verbose lines, lines with a higher priority wait for room
+     */
+    DROP_VERBOSE,
+
+    /**
+     * Keep one of every few lines, see {@link LogPipeline#setSampleRate(int)}, the kept lines wait
+     * for room
+     */
+    SAMPLE
+}
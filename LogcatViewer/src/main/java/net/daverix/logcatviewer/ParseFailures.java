@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the lines that couldn't be parsed by their {@link ParseResult} status and keeps a sample
+ * of recent ones to show what they looked like. The first lines are always kept, after that only
+ * every n:th, so a flood of bad lines doesn't cost a copy each. Can be used from several parser
+ * threads at once.
+ */
+public class ParseFailures {
+    public static final int DEFAULT_SAMPLE_CAPACITY = 16;
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    // kept lines are cut to this many characters
+    private static final int MAX_SAMPLE_LENGTH = 512;
+
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLongArray mStatusCounts = new AtomicLongArray(ParseResult.STATUS_COUNT);
+    private final String[] mSamples;
+    private final int mSampleRate;
+    private long mSampleCount;
+
+    public ParseFailures() {
+        this(DEFAULT_SAMPLE_CAPACITY, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param sampleCapacity how many recent lines to keep
+     * @param sampleRate keep every sampleRate:th line once the first sampleCapacity have been kept
+     */
+    public ParseFailures(int sampleCapacity, int sampleRate) {
+        if(sampleCapacity <= 0)
+            throw new IllegalArgumentException("sampleCapacity must be greater than zero");
+
+        if(sampleRate <= 0)
+            throw new IllegalArgumentException("sampleRate must be greater than zero");
+
+        mSamples = new String[sampleCapacity];
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * Counts a line that couldn't be parsed.
+     *
+     * @param status the status the line was parsed with
+     * @param line the line
+     */
+    public void record(int status, String line) {
+        if(status <= ParseResult.OK || status >= ParseResult.STATUS_COUNT)
+            throw new IllegalArgumentException("invalid failure status " + status);
+
+        long count = mCount.incrementAndGet();
+        mStatusCounts.incrementAndGet(status);
+
+        if(count <= mSamples.length || count % mSampleRate == 0) {
+            String sample = line.length() > MAX_SAMPLE_LENGTH ? line.substring(0, MAX_SAMPLE_LENGTH) : line;
+            synchronized (mSamples) {
+                mSamples[(int) (mSampleCount++ % mSamples.length)] = sample;
+            }
+        }
+    }
+
+    /**
+     * Forgets the counts and the kept lines.
+     */
+    public void clear() {
+        synchronized (mSamples) {
+            mCount.set(0);
+            for(int i = 0; i < ParseResult.STATUS_COUNT; i++) {
+                mStatusCounts.set(i, 0);
+            }
+            for(int i = 0; i < mSamples.length; i++) {
+                mSamples[i] = null;
+            }
+            mSampleCount = 0;
+        }
+    }
+
+    /**
+     * @return a snapshot of the counts and the kept lines
+     */
+    public Metrics getMetrics() {
+        long[] statusCounts = new long[ParseResult.STATUS_COUNT];
+        for(int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = mStatusCounts.get(i);
+        }
+
+        List<String> recentLines = new ArrayList<String>();
+        synchronized (mSamples) {
+            long first = Math.max(0, mSampleCount - mSamples.length);
+            for(long i = first; i < mSampleCount; i++) {
+                recentLines.add(mSamples[(int) (i % mSamples.length)]);
+            }
+        }
+
+        return new Metrics(mCount.get(), statusCounts, recentLines);
+    }
+
+    /**
+     * Snapshot of the parse failures
+     */
+    public static class Metrics {
+        private final long mCount;
+        private final long[] mStatusCounts;
+        private final List<String> mRecentLines;
+
+        public Metrics(long count, long[] statusCounts, List<String> recentLines) {
+            mCount = count;
+            mStatusCounts = statusCounts;
+            mRecentLines = recentLines;
+        }
+
+        /**
+         * @return number of lines that couldn't be parsed
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @param status one of the failure statuses of {@link ParseResult}
+         * @return number of lines that couldn't be parsed with the given status
+         */
+        public long getCount(int status) {
+            if(status < 0 || status >= mStatusCounts.length)
+                throw new IllegalArgumentException("invalid status " + status);
+
+            return mStatusCounts[status];
+        }
+
+        /**
+         * @return the kept lines, oldest first
+         */
+        public List<String> getRecentLines() {
+            return mRecentLines;
+        }
+    }
+}
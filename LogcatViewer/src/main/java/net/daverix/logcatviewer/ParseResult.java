@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reusable holder for the outcome of parsing a line. A line that can't be parsed still gives an
+ * item: the raw line as message with the {@link Priority#UNKNOWN} priority, no tag and the
+ * timestamp of the last line that could be parsed, so nothing read from logcat is lost.
+ *
+ * A result is meant to be kept by the thread that parses and reused for every line.
+ */
+public class ParseResult {
+    /**
+     * The line was parsed
+     */
+    public static final int OK = 0;
+
+    /**
+     * The line doesn't start with a "MM-dd HH:mm:ss.SSS " timestamp
+     */
+    public static final int BAD_TIMESTAMP = 1;
+
+    /**
+     * The timestamp isn't followed by one of the priorities V, D, I, W, E, F or S and a "/"
+     */
+    public static final int BAD_PRIORITY = 2;
+
+    /**
+     * The tag isn't followed by a "(pid): "
+     */
+    public static final int BAD_PID = 3;
+
+    /**
+     * The factory rejected the line without telling why
+     */
+    public static final int REJECTED = 4;
+
+    /**
+     * A binary record has a malformed header, it is skipped without an item
+     */
+    public static final int BAD_RECORD = 5;
+
+    static final int STATUS_COUNT = 6;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private int mStatus = OK;
+    private LogItem mItem;
+    private String mLine;
+    private long mLastTimestamp;
+
+    /**
+     * Parses a line with any factory. {@link TolerantLogItemFactory}s are asked for a status,
+     * exceptions from other factories are turned into {@link #REJECTED}.
+     *
+     * @return the status of the result
+     */
+    public int parse(LogItemFactory factory, String line) {
+        if(factory == null)
+            throw new IllegalArgumentException("factory is null");
+
+        if(line == null)
+            throw new IllegalArgumentException("line is null");
+
+        if(factory instanceof TolerantLogItemFactory)
+            return ((TolerantLogItemFactory) factory).create(line, this);
+
+        try {
+            setItem(factory.create(line));
+        } catch (ParseException e) {
+            setFailure(REJECTED, line);
+        }
+        return mStatus;
+    }
+
+    /**
+     * Same as {@link #parse(LogItemFactory, String)} for a line held as UTF-8 encoded bytes, it is
+     * only decoded if the factory isn't a {@link ByteLogItemFactory}.
+     *
+     * @return the status of the result
+     */
+    public int parse(LogItemFactory factory, ByteBuffer buffer, int start, int end) {
+        if(factory == null)
+            throw new IllegalArgumentException("factory is null");
+
+        if(buffer == null)
+            throw new IllegalArgumentException("buffer is null");
+
+        if(factory instanceof ByteLogItemFactory)
+            return ((ByteLogItemFactory) factory).create(buffer, start, end, this);
+
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return parse(factory, new String(bytes, UTF_8));
+    }
+
+    /**
+     * Called by factories when a line was parsed.
+     *
+     * @param item the parsed item
+     */
+    public void setItem(LogItem item) {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        mStatus = OK;
+        mItem = item;
+        mLine = null;
+        mLastTimestamp = item.getTimestampMillis();
+    }
+
+    /**
+     * Called by factories when a line couldn't be parsed. The raw item is only created when it is
+     * asked for, so a factory trying several ways can fail more than once for the same line.
+     *
+     * @param status why the line couldn't be parsed
+     * @param line the line
+     */
+    public void setFailure(int status, String line) {
+        if(status <= OK || status >= STATUS_COUNT)
+            throw new IllegalArgumentException("invalid failure status " + status);
+
+        if(line == null)
+            throw new IllegalArgumentException("line is null");
+
+        mStatus = status;
+        mItem = null;
+        mLine = line;
+    }
+
+    /**
+     * @return the status of the last parsed line
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return the parsed item, or the raw item if the line couldn't be parsed
+     */
+    public LogItem getItem() {
+        if(mItem == null && mLine != null) {
+            mItem = new LogcatItem(Priority.UNKNOWN, "", mLastTimestamp, mLine, -1);
+        }
+        return mItem;
+    }
+
+    /**
+     * @return the line that couldn't be parsed or null if it was parsed
+     */
+    public String getLine() {
+        return mLine;
+    }
+
+    /**
+     * @return a name for the status to show in diagnostics
+     */
+    public static String getStatusName(int status) {
+        switch (status) {
+            case OK:            return "ok";
+            case BAD_TIMESTAMP: return "bad timestamp";
+            case BAD_PRIORITY:  return "bad priority";
+            case BAD_PID:       return "bad pid";
+            case REJECTED:      return "rejected";
+            case BAD_RECORD:    return "bad record";
+            default:            return "unknown status " + status;
+        }
+    }
+}
@@ -24,7 +24,13 @@ public enum Priority {
     WARNING,
     ERROR,
     FATAL,
-    SILENT;
+    SILENT,
+
+    /**
+     * Lines that couldn't be parsed. Sorts above the real priorities so they are shown at any
+     * log level.
+     */
+    UNKNOWN;
 
     @Override
     public String toString() {
@@ -36,6 +42,7 @@ public enum Priority {
             case ERROR:     return "E";
             case FATAL:     return "F";
             case SILENT:    return "S";
+            case UNKNOWN:   return "?";
             default:        return "UNKNOWN";
         }
     }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads the output of a logcat process running on the device. When resumed logcat is started
+ * with "-T &lt;time&gt;", which it understands since Android 5.0, see
+ * {@link #setStartTimeSupported(boolean)}. A single buffer is read by adding "-b &lt;buffer&gt;" to
+ * the command.
+ *
+ * A {@link LogFilterSpec} is turned into filterspecs like "*:W" or "MyTag:V *:S", and "--pid"
+ * since Android 7.0, so logcat itself leaves out the lines that aren't wanted.
+ */
+public class ProcessLogSource implements ResumableLogSource, MultiBufferLogSource, FilterableLogSource {
+    private final String[] mCommand;
+    private volatile boolean mStartTimeSupported;
+    private volatile boolean mPidFilterSupported;
+    private volatile LogFilterSpec mFilterSpec;
+    private volatile List<String> mFilterArguments = Collections.emptyList();
+
+    public ProcessLogSource() {
+        this("logcat", "-v", "time");
+    }
+
+    /**
+     * @param command the program and its arguments, filterspecs are added after them
+     */
+    public ProcessLogSource(String... command) {
+        if(command == null || command.length == 0)
+            throw new IllegalArgumentException("command is empty");
+
+        mCommand = command.clone();
+    }
+
+    /**
+     * @param startTimeSupported true if logcat can be started from a time, otherwise
+     *                           {@link #open(long)} starts from the oldest line like
+     *                           {@link #open()}
+     */
+    public void setStartTimeSupported(boolean startTimeSupported) {
+        mStartTimeSupported = startTimeSupported;
+    }
+
+    /**
+     * @param pidFilterSupported true if logcat can leave out the lines of other processes, call
+     *                           it before {@link #setFilterSpec(LogFilterSpec)}
+     */
+    public void setPidFilterSupported(boolean pidFilterSupported) {
+        mPidFilterSupported = pidFilterSupported;
+    }
+
+    @Override
+    public synchronized boolean setFilterSpec(LogFilterSpec spec) {
+        mFilterSpec = spec == null ? null : new LogFilterSpec(spec);
+        List<String> arguments = spec == null ? Collections.<String>emptyList() :
+                getFilterArguments(spec, mPidFilterSupported);
+        if(arguments.equals(mFilterArguments))
+            return false;
+
+        mFilterArguments = arguments;
+        return true;
+    }
+
+    /**
+     * Turns the clauses of a spec that logcat can handle into arguments. The minimum priority and
+     * the tags become filterspecs unless a tag can't be written in one, a single pid becomes
+     * "--pid". Several pids and the message clauses are left to the reader.
+     *
+     * @param spec the spec to turn into arguments
+     * @param pidFilterSupported true if logcat knows the "--pid" option
+     * @return the arguments, empty if everything has to be read
+     */
+    public static List<String> getFilterArguments(LogFilterSpec spec, boolean pidFilterSupported) {
+        if(spec == null)
+            throw new IllegalArgumentException("spec is null");
+
+        List<String> arguments = new ArrayList<String>();
+        int[] pids = spec.getPids();
+        if(pidFilterSupported && pids.length == 1) {
+            arguments.add("--pid=" + pids[0]);
+        }
+
+        // unparseable lines have no priority logcat could filter on
+        Priority minPriority = spec.getMinPriority();
+        String level = minPriority == Priority.UNKNOWN ? Priority.VERBOSE.toString() : minPriority.toString();
+
+        Set<String> includedTags = spec.getIncludedTags();
+        if(!includedTags.isEmpty() && isEveryTagValid(includedTags)) {
+            for(String tag : new TreeSet<String>(includedTags)) {
+                if(!spec.getExcludedTags().contains(tag)) {
+                    arguments.add(tag + ":" + level);
+                }
+            }
+            arguments.add("*:S");
+            return arguments;
+        }
+
+        boolean hasExcludedTags = false;
+        for(String tag : new TreeSet<String>(spec.getExcludedTags())) {
+            if(isValidTag(tag)) {
+                arguments.add(tag + ":S");
+                hasExcludedTags = true;
+            }
+        }
+
+        if(hasExcludedTags || minPriority != Priority.VERBOSE && minPriority != Priority.UNKNOWN) {
+            arguments.add("*:" + level);
+        }
+        return arguments;
+    }
+
+    private static boolean isEveryTagValid(Set<String> tags) {
+        for(String tag : tags) {
+            if(!isValidTag(tag))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * logcat splits filterspecs at whitespace and the first ":"
+     */
+    private static boolean isValidTag(String tag) {
+        if(tag.length() == 0 || tag.equals("*"))
+            return false;
+
+        for(int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if(c == ':' || Character.isWhitespace(c))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public ProcessLogSource getBufferSource(LogBuffer buffer) {
+        if(buffer == null || buffer.getName() == null)
+            throw new IllegalArgumentException("buffer must be a named buffer");
+
+        String[] command = Arrays.copyOf(mCommand, mCommand.length + 2);
+        command[mCommand.length] = "-b";
+        command[mCommand.length + 1] = buffer.getName();
+
+        ProcessLogSource source = new ProcessLogSource(command);
+        source.setStartTimeSupported(mStartTimeSupported);
+        synchronized (this) {
+            source.setPidFilterSupported(mPidFilterSupported);
+            source.setFilterSpec(mFilterSpec);
+        }
+        return source;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return open(getCommand(null));
+    }
+
+    @Override
+    public InputStream open(long startMillis) throws IOException {
+        if(!mStartTimeSupported)
+            return open();
+
+        return open(getCommand(new LogTimestampFormatter().format(startMillis)));
+    }
+
+    /**
+     * The options come before the filterspecs
+     */
+    private String[] getCommand(String startTime) {
+        List<String> command = new ArrayList<String>(Arrays.asList(mCommand));
+        if(startTime != null) {
+            command.add("-T");
+            command.add(startTime);
+        }
+        command.addAll(mFilterArguments);
+        return command.toArray(new String[command.size()]);
+    }
+
+    private static InputStream open(String[] command) throws IOException {
+        final Process process = Runtime.getRuntime().exec(command);
+        return new FilterInputStream(process.getInputStream()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    process.destroy();
+                }
+            }
+        };
+    }
+}
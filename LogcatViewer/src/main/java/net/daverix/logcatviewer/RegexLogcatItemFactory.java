@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static net.daverix.logcatviewer.Priority.DEBUG;
+import static net.daverix.logcatviewer.Priority.ERROR;
+import static net.daverix.logcatviewer.Priority.FATAL;
+import static net.daverix.logcatviewer.Priority.INFO;
+import static net.daverix.logcatviewer.Priority.SILENT;
+import static net.daverix.logcatviewer.Priority.VERBOSE;
+import static net.daverix.logcatviewer.Priority.WARNING;
+
+/**
+ * Parses lines in the "logcat -v time" format using a regular expression. This is slower than
+ * {@link LogcatItemFactory} but accepts the odd lines the hand-written parser gives up on.
+ */
+public class RegexLogcatItemFactory implements TolerantLogItemFactory {
+    //10-12 15:59:01.840 I/GCoreUlr(21516): Successfully inserted location
+    private static final Pattern LOGCAT_PATTERN = Pattern.compile("^([0-9]{1,2})-([0-9]{1,2}) ([0-9]{2}):([0-9]{2}):([0-9]{2})\\.([0-9]{3}) (V|D|I|W|E|F|S)/(.+)\\(([ 0-9]+)\\): (.*)$", Pattern.MULTILINE);
+
+    private final LogTimestampResolver mTimestampResolver = new LogTimestampResolver();
+    private final TagPool mTagPool;
+
+    public RegexLogcatItemFactory() {
+        this(new TagPool());
+    }
+
+    public RegexLogcatItemFactory(TagPool tagPool) {
+        if(tagPool == null)
+            throw new IllegalArgumentException("tagPool is null");
+
+        mTagPool = tagPool;
+    }
+
+    @Override
+    public LogItem create(String line) throws ParseException {
+        Matcher matcher = LOGCAT_PATTERN.matcher(line);
+        if(!matcher.matches())
+            throw new ParseException("Regex pattern doesn't match input: " + line);
+
+        return create(line, matcher);
+    }
+
+    @Override
+    public int create(String line, ParseResult result) {
+        if(line == null)
+            throw new IllegalArgumentException("line is null");
+
+        if(result == null)
+            throw new IllegalArgumentException("result is null");
+
+        Matcher matcher = LOGCAT_PATTERN.matcher(line);
+        if(!matcher.matches()) {
+            result.setFailure(ParseResult.REJECTED, line);
+            return ParseResult.REJECTED;
+        }
+
+        try {
+            result.setItem(create(line, matcher));
+            return ParseResult.OK;
+        } catch (ParseException e) {
+            result.setFailure(ParseResult.REJECTED, line);
+            return ParseResult.REJECTED;
+        }
+    }
+
+    private LogItem create(String line, Matcher matcher) throws ParseException {
+        try {
+            String strMonth = matcher.group(1);
+            String strDay = matcher.group(2);
+            String strHour = matcher.group(3);
+            String strMinute = matcher.group(4);
+            String strSecond = matcher.group(5);
+            String strMilliseconds = matcher.group(6);
+            long timestamp = getTimestamp(strMonth, strDay, strHour, strMinute, strSecond, strMilliseconds);
+
+            String strPrio = matcher.group(7);
+            String tag = mTagPool.intern(line, matcher.start(8), matcher.end(8));
+            String pid = matcher.group(9);
+            String message = matcher.group(10);
+
+            return new LogcatItem(parsePriority(strPrio), tag, timestamp, message, getProcessId(pid));
+        } catch (Exception e) {
+            throw new ParseException("Error matching groups in pattern", e);
+        }
+    }
+
+    private int getProcessId(String strPid) {
+        if(strPid == null)
+            throw new IllegalArgumentException("strPid is null");
+
+        return Integer.parseInt(strPid.trim());
+    }
+
+    private long getTimestamp(String strMonth, String strDay, String strHour, String strMinute, String strSecond, String strMilliseconds) {
+        if(strMonth == null)
+            throw new IllegalArgumentException("strMonth is null");
+
+        if(strDay == null)
+            throw new IllegalArgumentException("strDay is null");
+
+        if(strHour == null)
+            throw new IllegalArgumentException("strHour is null");
+
+        if(strMinute == null)
+            throw new IllegalArgumentException("strMinute is null");
+
+        if(strSecond == null)
+            throw new IllegalArgumentException("strSecond is null");
+
+        if(strMilliseconds == null)
+            throw new IllegalArgumentException("strMilliseconds is null");
+
+        return mTimestampResolver.resolve(Integer.parseInt(strMonth),
+                Integer.parseInt(strDay),
+                Integer.parseInt(strHour),
+                Integer.parseInt(strMinute),
+                Integer.parseInt(strSecond),
+                Integer.parseInt(strMilliseconds));
+    }
+
+    private Priority parsePriority(String strPrio) {
+        if(strPrio == null)
+            throw new IllegalArgumentException("strPrio must not be null!");
+
+        if(strPrio.length() != 1)
+            throw new IllegalStateException("length of priority string should be 1, got " + strPrio.length());
+
+        char prio = strPrio.charAt(0);
+
+        switch (prio) {
+            case 'V': return VERBOSE;
+            case 'D': return DEBUG;
+            case 'I': return INFO;
+            case 'W': return WARNING;
+            case 'E': return ERROR;
+            case 'F': return FATAL;
+            case 'S': return SILENT;
+
+            default:
+                throw new IllegalStateException("Unknown priority in string " + strPrio);
+
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link LogSource} that can start from a point in time instead of from the oldest line it has,
+ * so reading can go on from a {@link LogCheckpoint} without going through everything again.
+ */
+public interface ResumableLogSource extends LogSource {
+    /**
+     * Starts reading from the lines logged at the given time. Sources that can't tell the time
+     * of a line may start earlier, never later.
+     *
+     * @param startMillis time of the first line to read
+     * @return the output of the source
+     */
+    public InputStream open(long startMillis) throws IOException;
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * Growable array of increasing sequence numbers. Sequence numbers of evicted items are dropped
+ * from the start with {@link #trimBefore(long)}.
+ */
+class SequenceIndex {
+    private long[] mSequences;
+    private int mStart;
+    private int mEnd;
+
+    public SequenceIndex() {
+        this(16);
+    }
+
+    public SequenceIndex(int initialCapacity) {
+        mSequences = new long[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(long sequence) {
+        if(mEnd == mSequences.length) {
+            int size = size();
+            long[] sequences = mSequences;
+            // only grow when more than half of the array is in use, otherwise just compact it
+            if(size > mSequences.length / 2) {
+                sequences = new long[mSequences.length * 2];
+            }
+            System.arraycopy(mSequences, mStart, sequences, 0, size);
+            mSequences = sequences;
+            mStart = 0;
+            mEnd = size;
+        }
+
+        mSequences[mEnd++] = sequence;
+    }
+
+    public long get(int index) {
+        return mSequences[mStart + index];
+    }
+
+    public int size() {
+        return mEnd - mStart;
+    }
+
+    /**
+     * Removes all sequence numbers lower than the given one.
+     */
+    public void trimBefore(long sequence) {
+        while(mStart < mEnd && mSequences[mStart] < sequence) {
+            mStart++;
+        }
+
+        if(mStart == mEnd) {
+            mStart = 0;
+            mEnd = 0;
+        }
+    }
+
+    public void clear() {
+        mStart = 0;
+        mEnd = 0;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue for exactly one producer thread and one consumer thread. The two sides only
+ * share a head and a tail counter, so handing over an item takes no lock. A side that has to wait
+ * spins for a short while and then parks until the other side wakes it up. A waiting side
+ * announces itself before checking the counters again and the other side publishes its counter
+ * with a volatile write before looking for a waiting thread, so one of them always sees the
+ * other and a wake up is never missed. Idle threads stay parked until there is work.
+ *
+ * @param <T> type of the items
+ */
+public class SpscQueue<T> {
+    private static final int SPIN_COUNT = 64;
+
+    private final Object[] mItems;
+    private final int mMask;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+    private volatile Thread mWaitingConsumer;
+    private volatile Thread mWaitingProducer;
+    private volatile int mMaxSize;
+
+    /**
+     * @param capacity maximum number of items, rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("capacity must be greater than zero");
+
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size <<= 1;
+        }
+        mItems = new Object[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Creates an array for queues of one item type, the queues must still be created.
+     *
+     * @param length number of queues
+     * @param <T> type of the items
+     * @return an array of nulls
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> SpscQueue<T>[] newArray(int length) {
+        return new SpscQueue[length];
+    }
+
+    /**
+     * Adds an item if there is room for it. Must only be called from the producer thread.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(T item) {
+        if(item == null)
+            throw new IllegalArgumentException("item is null");
+
+        long tail = mTail.get();
+        int size = (int) (tail - mHead.get());
+        if(size == mItems.length)
+            return false;
+
+        mItems[(int) tail & mMask] = item;
+        // a full volatile write, it must not be reordered with reading mWaitingConsumer
+        mTail.set(tail + 1);
+        if(size + 1 > mMaxSize) {
+            mMaxSize = size + 1;
+        }
+
+        Thread consumer = mWaitingConsumer;
+        if(consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an item, waiting for room if the queue is full. Must only be called from the
+     * producer thread.
+     */
+    public void put(T item) throws InterruptedException {
+        if(Thread.interrupted())
+            throw new InterruptedException();
+
+        int spins = 0;
+        while(!offer(item)) {
+            if(spins++ < SPIN_COUNT)
+                continue;
+
+            mWaitingProducer = Thread.currentThread();
+            if(!isFull()) {
+                mWaitingProducer = null;
+                continue;
+            }
+            LockSupport.park(this);
+            mWaitingProducer = null;
+
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes the oldest item. Must only be called from the consumer thread.
+     *
+     * @return the item or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long head = mHead.get();
+        if(head == mTail.get())
+            return null;
+
+        int index = (int) head & mMask;
+        T item = (T) mItems[index];
+        mItems[index] = null;
+        // a full volatile write, it must not be reordered with reading mWaitingProducer
+        mHead.set(head + 1);
+
+        Thread producer = mWaitingProducer;
+        if(producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return item;
+    }
+
+    /**
+     * Takes the oldest item, waiting for one if the queue is empty. Must only be called from the
+     * consumer thread.
+     */
+    public T take() throws InterruptedException {
+        return poll(-1);
+    }
+
+    /**
+     * Takes the oldest item, waiting up to the given time for one if the queue is empty. Must only
+     * be called from the consumer thread.
+     *
+     * @param timeoutNanos how long to wait at most, a negative value waits until there is an item
+     * @return the item or null if the time ran out
+     */
+    public T poll(long timeoutNanos) throws InterruptedException {
+        if(Thread.interrupted())
+            throw new InterruptedException();
+
+        long deadline = timeoutNanos >= 0 ? System.nanoTime() + timeoutNanos : 0;
+        int spins = 0;
+        T item;
+        while((item = poll()) == null) {
+            if(spins++ < SPIN_COUNT)
+                continue;
+
+            long left = 0;
+            if(timeoutNanos >= 0) {
+                left = deadline - System.nanoTime();
+                if(left <= 0)
+                    return null;
+            }
+
+            mWaitingConsumer = Thread.currentThread();
+            if(!isEmpty()) {
+                mWaitingConsumer = null;
+                continue;
+            }
+            if(timeoutNanos >= 0) {
+                LockSupport.parkNanos(this, left);
+            }
+            else {
+                LockSupport.park(this);
+            }
+            mWaitingConsumer = null;
+
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return item;
+    }
+
+    /**
+     * @return number of items in the queue, may be stale when read from a third thread
+     */
+    public int size() {
+        // head first so a concurrent take can't make the size negative
+        long head = mHead.get();
+        return (int) (mTail.get() - head);
+    }
+
+    /**
+     * @return the largest number of items that have been in the queue at once
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public int getCapacity() {
+        return mItems.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean isFull() {
+        return size() == mItems.length;
+    }
+}
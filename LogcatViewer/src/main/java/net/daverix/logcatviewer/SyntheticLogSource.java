@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Generates logcat output at a configurable rate with a mix of priorities, tags and multi-line
+ * stack traces. Use it to load test the reading and filtering of log storms on any machine.
+ * The content only depends on the seed and settings; timestamps follow the wall clock unless a
+ * start time is set.
+ */
+public class SyntheticLogSource implements LogSource {
+    private static final String[] DEFAULT_TAGS = {
+            "ActivityManager", "PackageManager", "dalvikvm", "WindowManager", "AudioFlinger",
+            "ConnectivityService", "wpa_supplicant", "InputDispatcher", "Choreographer", "libc"
+    };
+    private static final String[] WORDS = {
+            "started", "stopped", "service", "intent", "activity", "window", "focus", "location",
+            "received", "connection", "timeout", "bytes", "frame", "skipped", "package", "cache",
+            "update", "battery", "wifi", "scan", "result"
+    };
+    private static final String[] FRAMES = {
+            "android.os.Handler.dispatchMessage(Handler.java:99)",
+            "android.os.Looper.loop(Looper.java:137)",
+            "android.app.ActivityThread.main(ActivityThread.java:5103)",
+            "java.lang.reflect.Method.invokeNative(Native Method)",
+            "java.lang.reflect.Method.invoke(Method.java:525)",
+            "com.android.internal.os.ZygoteInit.main(ZygoteInit.java:553)",
+            "dalvik.system.NativeStart.main(Native Method)"
+    };
+
+    private final long mSeed;
+    private final int mLinesPerSecond;
+    private final int[] mPriorityWeights = {30, 30, 20, 10, 8, 2, 0, 0};
+    private String[] mTags = DEFAULT_TAGS;
+    private double mStackTraceRatio = 0.01;
+    private long mLineLimit;
+    private long mStartTime = -1;
+
+    /**
+     * @param seed seed for the generated content
+     * @param linesPerSecond how many lines to emit per second or 0 to emit as fast as the reader
+     *                       can keep up
+     */
+    public SyntheticLogSource(long seed, int linesPerSecond) {
+        if(linesPerSecond < 0)
+            throw new IllegalArgumentException("linesPerSecond must not be negative");
+
+        mSeed = seed;
+        mLinesPerSecond = linesPerSecond;
+    }
+
+    /**
+     * Sets the relative share of entries with the given priority. The defaults are 30 verbose,
+     * 30 debug, 20 info, 10 warning, 8 error and 2 fatal. Entries with the {@link Priority#UNKNOWN}
+     * priority are written with "?" as priority so they can't be parsed.
+     */
+    public void setPriorityWeight(Priority priority, int weight) {
+        if(priority == null)
+            throw new IllegalArgumentException("priority is null");
+
+        if(weight < 0)
+            throw new IllegalArgumentException("weight must not be negative");
+
+        mPriorityWeights[priority.ordinal()] = weight;
+    }
+
+    public void setTags(String... tags) {
+        if(tags == null || tags.length == 0)
+            throw new IllegalArgumentException("tags is empty");
+
+        mTags = tags.clone();
+    }
+
+    /**
+     * @param stackTraceRatio share of entries, between 0 and 1, that are error stack traces
+     *                        spanning several lines
+     */
+    public void setStackTraceRatio(double stackTraceRatio) {
+        if(stackTraceRatio < 0 || stackTraceRatio > 1)
+            throw new IllegalArgumentException("stackTraceRatio must be between 0 and 1");
+
+        mStackTraceRatio = stackTraceRatio;
+    }
+
+    /**
+     * @param lineLimit end the stream after this many lines, 0 never ends it
+     */
+    public void setLineLimit(long lineLimit) {
+        if(lineLimit < 0)
+            throw new IllegalArgumentException("lineLimit must not be negative");
+
+        mLineLimit = lineLimit;
+    }
+
+    /**
+     * Starts the timestamps at the given time instead of the current time. Without a rate every
+     * entry is then one millisecond after the previous one, so the whole output only depends on
+     * the seed and settings.
+     *
+     * @param startTime milliseconds since the epoch of the first entry or -1 for the current time
+     */
+    public void setStartTime(long startTime) {
+        if(startTime < -1)
+            throw new IllegalArgumentException("startTime must not be lower than -1");
+
+        mStartTime = startTime;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        int totalWeight = 0;
+        for(int weight : mPriorityWeights) {
+            totalWeight += weight;
+        }
+        if(totalWeight == 0)
+            throw new IllegalStateException("all priority weights are 0");
+
+        return new SyntheticInputStream(this, mPriorityWeights.clone(), totalWeight);
+    }
+
+    private static class SyntheticInputStream extends LineInputStream {
+        private static final Priority[] PRIORITIES = Priority.values();
+
+        private final Random mRandom;
+        private final int mLinesPerSecond;
+        private final int[] mPriorityWeights;
+        private final int mTotalWeight;
+        private final String[] mTags;
+        private final double mStackTraceRatio;
+        private final long mLineLimit;
+        private final int[] mPids = new int[8];
+        private final ArrayDeque<String> mPendingLines = new ArrayDeque<String>();
+        private final StringBuilder mBuilder = new StringBuilder(256);
+        private final LogTimestampFormatter mFormatter = new LogTimestampFormatter();
+        private final char[] mDateBuffer = new char[LogTimestampFormatter.LENGTH];
+        private final long mStartMillis;
+        private final boolean mFixedStart;
+        private final long mStartNanos;
+        private long mLineCount;
+        private long mLastTimestamp = Long.MIN_VALUE;
+
+        public SyntheticInputStream(SyntheticLogSource source, int[] priorityWeights, int totalWeight) {
+            mRandom = new Random(source.mSeed);
+            mLinesPerSecond = source.mLinesPerSecond;
+            mPriorityWeights = priorityWeights;
+            mTotalWeight = totalWeight;
+            mTags = source.mTags;
+            mStackTraceRatio = source.mStackTraceRatio;
+            mLineLimit = source.mLineLimit;
+            for(int i = 0; i < mPids.length; i++) {
+                mPids[i] = 100 + mRandom.nextInt(30000);
+            }
+            mFixedStart = source.mStartTime >= 0;
+            mStartMillis = mFixedStart ? source.mStartTime : System.currentTimeMillis();
+            mStartNanos = System.nanoTime();
+        }
+
+        @Override
+        protected String readNextLine() throws IOException {
+            if(mLineLimit > 0 && mLineCount >= mLineLimit)
+                return null;
+
+            if(mPendingLines.isEmpty()) {
+                // every entry gets its own millisecond, otherwise the reader would merge entries
+                // that happen to share tag, pid and priority
+                long timestamp = Math.max(waitForNextLine(), mLastTimestamp + 1);
+                mLastTimestamp = timestamp;
+                createEntry(timestamp);
+            }
+            else if(mLinesPerSecond > 0) {
+                waitForNextLine();
+            }
+
+            mLineCount++;
+            return mPendingLines.poll();
+        }
+
+        /**
+         * Sleeps until the next line is due and returns its timestamp.
+         */
+        private long waitForNextLine() throws IOException {
+            if(mLinesPerSecond == 0)
+                return mFixedStart ? mStartMillis : System.currentTimeMillis();
+
+            long dueNanos = mLineCount * 1000000000L / mLinesPerSecond;
+            long waitNanos = dueNanos - (System.nanoTime() - mStartNanos);
+            if(waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("synthetic source interrupted");
+                }
+            }
+            return mStartMillis + dueNanos / 1000000;
+        }
+
+        private void createEntry(long timestamp) {
+            String tag = mTags[mRandom.nextInt(mTags.length)];
+            int pid = mPids[mRandom.nextInt(mPids.length)];
+
+            if(mRandom.nextDouble() < mStackTraceRatio) {
+                mPendingLines.add(createLine(timestamp, Priority.ERROR, tag, pid, "java.lang.NullPointerException"));
+                int frames = 2 + mRandom.nextInt(FRAMES.length - 1);
+                for(int i = 0; i < frames; i++) {
+                    mPendingLines.add(createLine(timestamp, Priority.ERROR, tag, pid, "\tat " + FRAMES[i]));
+                }
+            }
+            else {
+                mPendingLines.add(createLine(timestamp, nextPriority(), tag, pid, nextMessage()));
+            }
+        }
+
+        private Priority nextPriority() {
+            int value = mRandom.nextInt(mTotalWeight);
+            for(int i = 0; i < mPriorityWeights.length; i++) {
+                value -= mPriorityWeights[i];
+                if(value < 0)
+                    return PRIORITIES[i];
+            }
+            return Priority.VERBOSE;
+        }
+
+        private String nextMessage() {
+            mBuilder.setLength(0);
+            int words = 3 + mRandom.nextInt(12);
+            for(int i = 0; i < words; i++) {
+                if(i > 0)
+                    mBuilder.append(' ');
+                mBuilder.append(WORDS[mRandom.nextInt(WORDS.length)]);
+            }
+            if(mRandom.nextInt(4) == 0) {
+                mBuilder.append(" id=").append(mRandom.nextInt(100000));
+            }
+            return mBuilder.toString();
+        }
+
+        private String createLine(long timestamp, Priority priority, String tag, int pid, String message) {
+            mBuilder.setLength(0);
+            int dateLength = mFormatter.format(timestamp, mDateBuffer, 0);
+            mBuilder.append(mDateBuffer, 0, dateLength).append(' ')
+                    .append(priority.toString()).append('/').append(tag).append('(');
+            for(int i = pidLength(pid); i < 5; i++) {
+                mBuilder.append(' ');
+            }
+            mBuilder.append(pid).append("): ").append(message);
+            return mBuilder.toString();
+        }
+
+        private static int pidLength(int pid) {
+            int length = 1;
+            while(pid >= 10) {
+                pid /= 10;
+                length++;
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Keeps one shared instance of every log tag so the same tag isn't stored over and over again.
+ * Tags can be looked up straight from a range of a line without creating a substring first, and
+ * every tag gets a small id.
+ *
+ * The pool is unbounded, tags are never removed because stores keep the ids instead of the tags.
+ * A device logs a few hundred to a few thousand distinct tags so this stays small, but an
+ * application that makes up a new tag for every line makes the pool grow with every line.
+ *
+ * This class is thread safe.
+ */
+public class TagPool {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private String[] mTable = new String[256];
+    private int[] mIds = new int[256];
+    private String[] mTags = new String[64];
+    private int mSize;
+
+    /**
+     * @param text text containing the tag
+     * @param start index of the first character of the tag
+     * @param end index after the last character of the tag
+     * @return the shared instance of the tag
+     */
+    public synchronized String intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = mTable.length - 1;
+
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            String tag = mTable[i];
+            if(tag == null)
+                return add(text.subSequence(start, end).toString(), hash);
+
+            if(tag.hashCode() == hash && regionEquals(tag, text, start, end))
+                return tag;
+        }
+    }
+
+    public String intern(String tag) {
+        return intern(tag, 0, tag.length());
+    }
+
+    /**
+     * Looks up a tag straight from the UTF-8 encoded bytes of a line. Tags are almost always
+     * ASCII, those that aren't are decoded before they are looked up.
+     *
+     * @param buffer buffer containing the tag, its position and limit are not changed
+     * @param start index of the first byte of the tag
+     * @param end index after the last byte of the tag
+     * @return the shared instance of the tag
+     */
+    public synchronized String intern(ByteBuffer buffer, int start, int end) {
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if(b < 0)
+                return intern(decode(buffer, start, end));
+
+            hash = 31 * hash + b;
+        }
+
+        int mask = mTable.length - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            String tag = mTable[i];
+            if(tag == null)
+                return add(decode(buffer, start, end), hash);
+
+            if(tag.hashCode() == hash && regionEquals(tag, buffer, start, end))
+                return tag;
+        }
+    }
+
+    /**
+     * @param tag the tag to look up
+     * @return id of the tag or -1 if the tag isn't in the pool
+     */
+    public synchronized int getId(String tag) {
+        int hash = tag.hashCode();
+        int mask = mTable.length - 1;
+
+        for(int i = hash & mask; mTable[i] != null; i = (i + 1) & mask) {
+            if(mTable[i] == tag || mTable[i].equals(tag))
+                return mIds[i];
+        }
+        return -1;
+    }
+
+    /**
+     * @param id id from {@link #getId(String)}
+     * @return the tag with the id
+     */
+    public synchronized String getTag(int id) {
+        if(id < 0 || id >= mSize)
+            throw new IllegalArgumentException("unknown tag id " + id);
+
+        return mTags[id];
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    private String add(String tag, int hash) {
+        if(mSize == mTags.length) {
+            String[] tags = new String[mTags.length * 2];
+            System.arraycopy(mTags, 0, tags, 0, mSize);
+            mTags = tags;
+        }
+        mTags[mSize] = tag;
+        insert(tag, hash, mSize);
+        mSize++;
+
+        // keep the table at most half full
+        if(mSize * 2 > mTable.length) {
+            String[] table = mTable;
+            mTable = new String[table.length * 2];
+            mIds = new int[table.length * 2];
+            for(int i = 0; i < mSize; i++) {
+                insert(mTags[i], mTags[i].hashCode(), i);
+            }
+        }
+
+        return tag;
+    }
+
+    private void insert(String tag, int hash, int id) {
+        int mask = mTable.length - 1;
+        int i = hash & mask;
+        while(mTable[i] != null) {
+            i = (i + 1) & mask;
+        }
+        mTable[i] = tag;
+        mIds[i] = id;
+    }
+
+    /**
+     * Same hash as {@link String#hashCode()} for the range.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean regionEquals(String tag, ByteBuffer buffer, int start, int end) {
+        if(tag.length() != end - start)
+            return false;
+
+        for(int i = 0; i < tag.length(); i++) {
+            if(tag.charAt(i) != buffer.get(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private static boolean regionEquals(String tag, CharSequence text, int start, int end) {
+        if(tag.length() != end - start)
+            return false;
+
+        for(int i = 0; i < tag.length(); i++) {
+            if(tag.charAt(i) != text.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+}
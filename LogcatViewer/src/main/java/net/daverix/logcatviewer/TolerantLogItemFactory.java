@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer;
+
+/**
+ * A {@link LogItemFactory} that reports lines it can't parse through a status code instead of
+ * throwing a {@link ParseException}, so a bad line costs no more than a good one.
+ */
+public interface TolerantLogItemFactory extends LogItemFactory {
+    /**
+     * @param line the line to parse
+     * @param result where the item or the reason the line couldn't be parsed is put
+     * @return the status of the result, {@link ParseResult#OK} if the line was parsed
+     */
+    public int create(String line, ParseResult result);
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.BinaryLogItemFactory;
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.ParseFailures;
+import net.daverix.logcatviewer.ParseResult;
+import net.daverix.logcatviewer.Priority;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class BinaryLogItemFactoryTest {
+    // 2013-10-12 13:56:42 UTC
+    private static final long FIXTURE_SECONDS = 1381586202L;
+
+    @Test
+    public void testShouldDecodeFixture() throws IOException, ParseException {
+        List<LogItem> items = read(Channels.newChannel(openFixture()));
+
+        assertThat(items.size(), is(equalTo(5)));
+
+        LogItem first = items.get(0);
+        assertThat(first.getPriority(), is(equalTo(Priority.INFO)));
+        assertThat(first.getTag(), is(equalTo("ActivityManager")));
+        assertThat(first.getPid(), is(equalTo(512)));
+        assertThat(first.getTid(), is(equalTo(530)));
+        assertThat(first.getTimestampMillis(), is(equalTo(FIXTURE_SECONDS * 1000)));
+        assertThat(first.getMessage(), is(equalTo("Start proc com.example")));
+
+        LogItem crash = items.get(1);
+        assertThat(crash.getPriority(), is(equalTo(Priority.ERROR)));
+        assertThat(crash.getTimestampMillis(), is(equalTo(FIXTURE_SECONDS * 1000 + 100)));
+        assertThat(crash.getMessage(),
+                is(equalTo("java.lang.NullPointerException\n\tat com.example.Main.main(Main.java:1)")));
+
+        // same header and millisecond as the crash but a record of its own
+        LogItem second = items.get(2);
+        assertThat(second.getTid(), is(equalTo(7540)));
+        assertThat(second.getMessage(), is(equalTo("second entry in the same millisecond")));
+
+        assertThat(items.get(3).getTag(), is(equalTo("Tag(with)parens")));
+        assertThat(items.get(3).getPriority(), is(equalTo(Priority.WARNING)));
+
+        assertThat(items.get(4).getTag(), is(equalTo("T\u00e5g")));
+        assertThat(items.get(4).getMessage(), is(equalTo("sm\u00f6rg\u00e5sbord \u20ac")));
+        assertThat(items.get(4).getTimestampMillis(), is(equalTo(FIXTURE_SECONDS * 1000 + 446)));
+    }
+
+    @Test
+    public void testShouldDecodeRecordsSplitAcrossReads() throws IOException, ParseException {
+        final byte[] fixture = readFixture();
+        ReadableByteChannel trickle = new ReadableByteChannel() {
+            private int mPosition;
+
+            @Override
+            public int read(ByteBuffer dst) {
+                if(mPosition == fixture.length)
+                    return -1;
+
+                int count = Math.min(dst.remaining(), 3);
+                count = Math.min(count, fixture.length - mPosition);
+                dst.put(fixture, mPosition, count);
+                mPosition += count;
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        List<LogItem> items = read(trickle);
+
+        assertThat(items.size(), is(equalTo(5)));
+        assertThat(items.get(4).getMessage(), is(equalTo("sm\u00f6rg\u00e5sbord \u20ac")));
+    }
+
+    @Test
+    public void testShouldNotMovePositionForIncompleteRecord() throws IOException, ParseException {
+        byte[] fixture = readFixture();
+        ByteBuffer buffer = ByteBuffer.wrap(fixture, 0, 30);
+
+        LogItem item = new BinaryLogItemFactory().create(buffer);
+
+        assertThat(item, is(nullValue()));
+        assertThat(buffer.position(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testShouldSkipAndCountMalformedRecords() throws IOException, ParseException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // header size too small, skipped using the payload length
+        outputStream.write(new byte[] { 5, 0, 4, 0 });
+        outputStream.write(new byte[16 + 5]);
+        // no payload
+        outputStream.write(new byte[20]);
+        outputStream.write(readFixture());
+
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        ParseFailures failures = new ParseFailures();
+        LogcatReader reader = new LogcatReader(new BinaryLogItemFactory(), store, null, null);
+        reader.setParseFailures(failures);
+        reader.read(Channels.newChannel(new ByteArrayInputStream(outputStream.toByteArray())));
+
+        List<LogItem> items = store.getItems();
+        assertThat(items.size(), is(equalTo(5)));
+        assertThat(items.get(0).getTag(), is(equalTo("ActivityManager")));
+        assertThat(failures.getMetrics().getCount(ParseResult.BAD_RECORD), is(equalTo(2L)));
+    }
+
+    @Test
+    public void testShouldMovePositionPastMalformedRecord() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 4, 42 });
+
+        try {
+            new BinaryLogItemFactory().create(buffer);
+        } catch (ParseException e) {
+            assertThat(buffer.position(), is(equalTo(21)));
+            return;
+        }
+        throw new AssertionError("malformed record was decoded");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testShouldThrowParseExceptionForLines() throws ParseException {
+        new BinaryLogItemFactory().create("10-12 15:59:01.840 I/GCoreUlr(21516): line");
+    }
+
+    private static List<LogItem> read(ReadableByteChannel channel) throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        LogcatReader reader = new LogcatReader(new BinaryLogItemFactory(), store, null, null);
+        try {
+            reader.read(channel);
+        } finally {
+            channel.close();
+        }
+        return store.getItems();
+    }
+
+    private InputStream openFixture() {
+        return getClass().getResourceAsStream("/logcat-binary.bin");
+    }
+
+    private byte[] readFixture() throws IOException {
+        InputStream inputStream = openFixture();
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
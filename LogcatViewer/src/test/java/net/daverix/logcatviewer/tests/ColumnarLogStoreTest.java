@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.TagPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ColumnarLogStoreTest {
+    private final TagPool mTagPool = new TagPool();
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory(mTagPool);
+
+    @Test
+    public void testShouldKeepAllFieldsOfAppendedItems() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(10, Long.MAX_VALUE, mTagPool);
+        LogItem expected = createItem("Gr\u00fc\u00dfe fr\u00e5n \u6771\u4eac \ud83d\ude00");
+
+        long sequence = store.append(expected);
+        LogItem actual = store.get(sequence);
+
+        assertThat(actual.getSequence(), is(equalTo(expected.getSequence())));
+        assertThat(actual.getPriority(), is(equalTo(Priority.WARNING)));
+        assertThat(actual.getTag() == expected.getTag(), is(true));
+        assertThat(actual.getPid(), is(equalTo(expected.getPid())));
+        assertThat(actual.getTimestampMillis(), is(equalTo(expected.getTimestampMillis())));
+        assertThat(actual.getMessage(), is(equalTo(expected.getMessage())));
+    }
+
+    @Test
+    public void testShouldEvictOldestItemsWhenFull() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(3, Long.MAX_VALUE, mTagPool);
+        for(int i = 0; i < 5; i++) {
+            store.append(createItem("message " + i));
+        }
+
+        assertThat(store.size(), is(equalTo(3)));
+        assertThat(store.getEvictedCount(), is(equalTo(2L)));
+        assertThat(store.get(1), is(nullValue()));
+        assertThat(store.getItemsSince(2).get(0).getMessage(), is(equalTo("message 3")));
+    }
+
+    @Test
+    public void testShouldCountUpdatesOfEvictedItems() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(2, Long.MAX_VALUE, mTagPool);
+        for(int i = 0; i < 3; i++) {
+            store.append(createItem("message " + i));
+        }
+
+        store.updateMessage(0, "message 0\nsecond line");
+        store.updateMessage(2, "message 2\nsecond line");
+
+        assertThat(store.getDroppedUpdateCount(), is(equalTo(1L)));
+        assertThat(store.get(2).getMessage(), is(equalTo("message 2\nsecond line")));
+    }
+
+    @Test
+    public void testShouldOnlyReturnItemsAppendedAfterSequence() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(3, Long.MAX_VALUE, mTagPool);
+        for(int i = 0; i < 5; i++) {
+            store.append(createItem("message " + i));
+        }
+
+        assertThat(store.getItemsSince(3).size(), is(equalTo(1)));
+        assertThat(store.getItemsSince(3).get(0).getMessage(), is(equalTo("message 4")));
+        assertThat(store.getItemsSince(4).size(), is(equalTo(0)));
+        assertThat(store.getItemsSince(0).size(), is(equalTo(3)));
+        assertThat(store.getItemsSince(-1).get(0).getSequence(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void testShouldKeepSequenceNumbersWhenCleared() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(10, Long.MAX_VALUE, mTagPool);
+        store.append(createItem("first"));
+        store.append(createItem("second"));
+
+        store.clear();
+
+        assertThat(store.size(), is(equalTo(0)));
+        assertThat(store.getEvictedCount(), is(equalTo(0L)));
+        assertThat(store.append(createItem("third")), is(equalTo(2L)));
+        assertThat(store.get(2).getMessage(), is(equalTo("third")));
+    }
+
+    @Test
+    public void testShouldShowUpdatedMessageInExistingViews() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(3, Long.MAX_VALUE, mTagPool);
+        long sequence = store.append(createItem("first line"));
+        LogItem view = store.get(sequence);
+
+        store.updateMessage(sequence, "first line\nsecond line");
+
+        assertThat(view.getMessage(), is(equalTo("first line\nsecond line")));
+    }
+
+    @Test
+    public void testShouldFreeMessageBytesOfEvictedItems() throws ParseException {
+        // random characters, so the chunks can't be compressed
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 40 * 1024; i++) {
+            builder.append((char) ('!' + random.nextInt(94)));
+        }
+        String message = builder.toString();
+        ColumnarLogStore store = new ColumnarLogStore(100, 200 * 1024, mTagPool);
+
+        for(int i = 0; i < 20; i++) {
+            store.append(createItem(message));
+            assertThat(store.getMessageBytes() <= 200 * 1024, is(true));
+        }
+
+        LogItem last = store.get(store.getNextSequence() - 1);
+        assertThat(last.getMessage(), is(equalTo(message)));
+        assertThat(store.getEvictedCount() > 0, is(true));
+    }
+
+    @Test
+    public void testShouldCompressFullChunks() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(20000, Long.MAX_VALUE, mTagPool);
+        LogItem first = null;
+        int messageBytes = 0;
+        for(int i = 0; i < 20000; i++) {
+            String message = "Successfully inserted location " + i;
+            long sequence = store.append(createItem(message));
+            messageBytes += message.length();
+            if(i == 0) {
+                first = store.get(sequence);
+            }
+        }
+
+        assertTrue(store.getMessageBytes() < messageBytes / 2);
+        assertThat(first.getMessage(), is(equalTo("Successfully inserted location 0")));
+        assertThat(store.get(1234).getMessage(), is(equalTo("Successfully inserted location 1234")));
+        assertThat(store.getItems().get(19999).getMessage(), is(equalTo("Successfully inserted location 19999")));
+    }
+
+    @Test
+    public void testItemsShouldNotChangeWhenAppendingMore() throws ParseException {
+        ColumnarLogStore store = new ColumnarLogStore(3000, Long.MAX_VALUE, mTagPool);
+        for(int i = 0; i < 1000; i++) {
+            store.append(createItem("message " + i));
+        }
+
+        List<LogItem> items = store.getItems();
+        for(int i = 1000; i < 3000; i++) {
+            store.append(createItem("message " + i));
+        }
+
+        assertThat(items.size(), is(equalTo(1000)));
+        assertThat(items.get(0).getSequence(), is(equalTo(0L)));
+        assertThat(items.get(0).getMessage(), is(equalTo("message 0")));
+        assertThat(items.get(999).getMessage(), is(equalTo("message 999")));
+        assertThat(store.getItemsSince(2998).size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void testShouldKeepFieldsButNotMessageOfEvictedItems() throws ParseException {
+        // random characters, so every chunk only holds a few messages and can't be compressed
+        Random random = new Random(0);
+        ColumnarLogStore store = new ColumnarLogStore(2, Long.MAX_VALUE, mTagPool);
+        List<String> messages = new ArrayList<String>();
+        for(int i = 0; i < 10; i++) {
+            StringBuilder builder = new StringBuilder();
+            for(int j = 0; j < 40 * 1024; j++) {
+                builder.append((char) ('!' + random.nextInt(94)));
+            }
+            messages.add(builder.toString());
+        }
+        store.append(createItem(messages.get(0)));
+        LogItem first = store.get(0);
+
+        for(int i = 1; i < 10; i++) {
+            store.append(createItem(messages.get(i)));
+        }
+
+        assertThat(first.getSequence(), is(equalTo(0L)));
+        assertThat(first.getTag(), is(equalTo("GCoreUlr")));
+        assertThat(first.getPid(), is(equalTo(21516)));
+        assertThat(first.getMessage(), is(equalTo("")));
+        assertThat(store.get(9).getMessage(), is(equalTo(messages.get(9))));
+    }
+
+    @Test
+    public void testReadersShouldSeeConsistentItemsWhileWriting() throws Exception {
+        final int itemCount = 200000;
+        final int capacity = 5000;
+        final ColumnarLogStore store = new ColumnarLogStore(capacity, Long.MAX_VALUE, mTagPool);
+        final List<LogItem> items = new ArrayList<LogItem>(itemCount);
+        for(int i = 0; i < itemCount; i++) {
+            items.add(createItem("message " + i));
+        }
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> readers = new ArrayList<Thread>();
+        for(int i = 0; i < 4; i++) {
+            final Random random = new Random(i);
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long lastSeen = -1;
+                        while(writing.get()) {
+                            checkContiguous(store, store.getItems(), capacity);
+
+                            List<LogItem> newItems = store.getItemsSince(lastSeen);
+                            checkContiguous(store, newItems, capacity);
+                            if(!newItems.isEmpty()) {
+                                assertTrue(newItems.get(0).getSequence() > lastSeen);
+                                lastSeen = newItems.get(newItems.size() - 1).getSequence();
+                            }
+
+                            long sequence = (long) (random.nextDouble() * store.getNextSequence());
+                            LogItem item = store.get(sequence);
+                            if(item != null) {
+                                assertThat(item.getSequence(), is(equalTo(sequence)));
+                                checkMessage(store, item);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+
+        for(Thread reader : readers) {
+            reader.start();
+        }
+        for(LogItem item : items) {
+            long sequence = store.append(item);
+            // every third message gets a continuation line, like a stack trace
+            if(sequence % 3 == 0) {
+                store.updateMessage(sequence, "message " + sequence + "\nmore");
+            }
+        }
+        writing.set(false);
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        if(failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assertThat(store.size(), is(equalTo(capacity)));
+        assertThat(store.getFirstSequence(), is(equalTo((long) (itemCount - capacity))));
+    }
+
+    private static void checkContiguous(ColumnarLogStore store, List<LogItem> items, int capacity) {
+        assertTrue(items.size() <= capacity);
+        for(int i = 1; i < items.size(); i++) {
+            LogItem item = items.get(i);
+            assertThat(item.getSequence(), is(equalTo(items.get(i - 1).getSequence() + 1)));
+            checkMessage(store, item);
+        }
+    }
+
+    private static void checkMessage(ColumnarLogStore store, LogItem item) {
+        String message = item.getMessage();
+        String expected = "message " + item.getSequence();
+        // the message is gone once the item has been evicted and its chunk freed
+        assertTrue(message, message.equals(expected) ||
+                item.getSequence() % 3 == 0 && message.equals(expected + "\nmore") ||
+                message.isEmpty() && item.getSequence() < store.getFirstSequence());
+        assertThat(item.getTag(), is(equalTo("GCoreUlr")));
+        assertThat(item.getPid(), is(equalTo(21516)));
+    }
+
+    private LogItem createItem(String message) throws ParseException {
+        return mLogItemFactory.create("10-12 15:59:01.840 W/GCoreUlr(21516): " + message);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.CompositeLogFilter;
+import net.daverix.logcatviewer.LogFilterSpec;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CompositeLogFilterTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+    private LogStore mLogStore;
+    private StoreLogHandler mLogHandler;
+
+    @Before
+    public void setUp() throws ParseException {
+        mLogStore = new ColumnarLogStore(100, Long.MAX_VALUE);
+        mLogHandler = new StoreLogHandler(mLogStore);
+
+        mLogStore.append(createItem('D', "Network", 100, "connected to wifi"));
+        mLogStore.append(createItem('E', "Network", 100, "Connection timed out after 30s"));
+        mLogStore.append(createItem('I', "Chatty", 100, "connection pool size 4"));
+        mLogStore.append(createItem('W', "Network", 200, "connection reset"));
+    }
+
+    @Test
+    public void testShouldCombineAllClauses() {
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setPids(100);
+        spec.setExcludedTags(new HashSet<String>(Arrays.asList("Chatty")));
+        spec.setMessageText("CONNECT");
+        spec.setMessageRegex("[0-9]+s$");
+
+        CompositeLogFilter filter = new CompositeLogFilter(mLogHandler, spec);
+
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE), "Connection timed out after 30s");
+    }
+
+    @Test
+    public void testShouldUpdateResultsWhenClauseChanges() throws ParseException {
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setIncludedTags(new HashSet<String>(Arrays.asList("Network")));
+        spec.setMessageText("connect");
+
+        CompositeLogFilter filter = new CompositeLogFilter(mLogHandler, spec);
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE),
+                "connected to wifi", "Connection timed out after 30s", "connection reset");
+
+        spec.setMessageText("reset");
+        filter.setSpec(spec);
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE), "connection reset");
+
+        spec.setIncludedTags(null);
+        spec.setMessageText(null);
+        spec.setMinPriority(Priority.INFO);
+        filter.setSpec(spec);
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE),
+                "Connection timed out after 30s", "connection pool size 4", "connection reset");
+
+        mLogStore.append(createItem('V', "Network", 100, "verbose"));
+        mLogStore.append(createItem('I', "Network", 100, "info"));
+        assertMessages(filter.getNewFilteredItems(Priority.VERBOSE), "info");
+    }
+
+    @Test
+    public void testShouldEvaluateMessageAgainWhenLinesAreAdded() throws ParseException {
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setIncludedTags(new HashSet<String>(Arrays.asList("Network")));
+        spec.setMessageText("NullPointerException");
+
+        CompositeLogFilter filter = new CompositeLogFilter(mLogHandler, spec);
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE));
+
+        // the stack trace is added after the items have been filtered
+        mLogStore.updateMessage(1, "Connection timed out after 30s\njava.lang.NullPointerException");
+        mLogStore.updateMessage(2, "connection pool size 4\njava.lang.NullPointerException");
+        mLogStore.append(createItem('E', "Network", 100, "another NullPointerException"));
+        List<LogItem> read = mLogStore.getItemsSince(0);
+
+        assertMessages(filter.getUpdatedFilteredItems(read, Priority.VERBOSE),
+                "Connection timed out after 30s\njava.lang.NullPointerException");
+        assertMessages(filter.getNewFilteredItems(Priority.VERBOSE), "another NullPointerException");
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE),
+                "Connection timed out after 30s\njava.lang.NullPointerException", "another NullPointerException");
+    }
+
+    private void assertMessages(List<LogItem> items, String... messages) {
+        assertThat(items.size(), is(equalTo(messages.length)));
+        for(int i = 0; i < messages.length; i++) {
+            assertThat(items.get(i).getMessage(), is(equalTo(messages[i])));
+        }
+    }
+
+    private LogItem createItem(char priority, String tag, int pid, String message) throws ParseException {
+        return mLogItemFactory.create("10-12 15:59:01.840 " + priority + "/" + tag + "(" + pid + "): " + message);
+    }
+}
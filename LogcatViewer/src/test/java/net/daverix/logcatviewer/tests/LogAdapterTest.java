@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogAdapter;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogAdapterTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldAppendItems() throws ParseException {
+        List<LogItem> items = createItems(15);
+        LogAdapter adapter = new LogAdapter(Robolectric.application, items.subList(0, 10));
+
+        assertTrue(adapter.addItems(items.subList(10, 15)));
+        assertTrue(!adapter.addItems(new ArrayList<LogItem>()));
+
+        assertThat(adapter.getCount(), is(equalTo(15)));
+        for(int i = 0; i < 15; i++) {
+            assertThat(adapter.getItem(i).getSequence(), is(equalTo((long) i)));
+        }
+    }
+
+    @Test
+    public void testShouldInsertUpdatedItemsInOrder() throws ParseException {
+        List<LogItem> items = createItems(10);
+        List<LogItem> shown = new ArrayList<LogItem>();
+        for(int i = 0; i < 10; i += 3) {
+            shown.add(items.get(i));
+        }
+        LogAdapter adapter = new LogAdapter(Robolectric.application, shown);
+
+        List<LogItem> updated = new ArrayList<LogItem>();
+        updated.add(items.get(1));
+        updated.add(items.get(3));
+        updated.add(items.get(8));
+        assertTrue(adapter.addUpdatedItems(updated));
+        assertTrue(!adapter.addUpdatedItems(updated));
+
+        assertThat(adapter.getCount(), is(equalTo(6)));
+        long[] expected = { 0, 1, 3, 6, 8, 9 };
+        for(int position = 0; position < expected.length; position++) {
+            assertThat(adapter.getItemId(position), is(equalTo(expected[position])));
+        }
+    }
+
+    @Test
+    public void testShouldMoveWindowWhenRemovingItems() throws ParseException {
+        LogAdapter adapter = new LogAdapter(Robolectric.application, createItems(10));
+
+        assertTrue(adapter.removeItemsBefore(3));
+
+        assertThat(adapter.getCount(), is(equalTo(7)));
+        assertThat(adapter.getItem(0).getSequence(), is(equalTo(3L)));
+        assertThat(adapter.getItem(6).getSequence(), is(equalTo(9L)));
+
+        // nothing left to remove before the first shown item
+        assertTrue(!adapter.removeItemsBefore(3));
+        assertTrue(!adapter.removeItemsBefore(1));
+        assertThat(adapter.getCount(), is(equalTo(7)));
+    }
+
+    @Test
+    public void testShouldKeepItemsWhenCompacting() throws ParseException {
+        List<LogItem> items = createItems(100);
+        LogAdapter adapter = new LogAdapter(Robolectric.application, items.subList(0, 20));
+        long first = 0;
+
+        // removing more than half of the list compacts it, removing less only moves the window
+        for(int end = 20; end < 100; end += 10) {
+            adapter.addItems(items.subList(end, end + 10));
+            first += end % 20 == 0 ? 3 : 14;
+            assertTrue(adapter.removeItemsBefore(first));
+
+            assertThat(adapter.getCount(), is(equalTo((int) (end + 10 - first))));
+            for(int position = 0; position < adapter.getCount(); position++) {
+                assertThat(adapter.getItem(position).getSequence(), is(equalTo(first + position)));
+            }
+        }
+    }
+
+    @Test
+    public void testShouldFindPositionAfterEviction() throws ParseException {
+        // only every other item is shown, like when the items are filtered
+        List<LogItem> items = new ArrayList<LogItem>();
+        for(LogItem item : createItems(40)) {
+            if(item.getSequence() % 2 == 0) {
+                items.add(item);
+            }
+        }
+        LogAdapter adapter = new LogAdapter(Robolectric.application, items);
+
+        // the first item to keep isn't shown, the next shown one becomes the first
+        assertTrue(adapter.removeItemsBefore(25));
+        assertThat(adapter.getItem(0).getSequence(), is(equalTo(26L)));
+
+        assertThat(adapter.getPosition(26), is(equalTo(0)));
+        assertThat(adapter.getPosition(30), is(equalTo(2)));
+        assertThat(adapter.getPosition(38), is(equalTo(6)));
+        assertThat(adapter.getPosition(24), is(equalTo(-1)));
+        assertThat(adapter.getPosition(0), is(equalTo(-1)));
+        assertThat(adapter.getPosition(27), is(equalTo(-1)));
+        assertThat(adapter.getPosition(40), is(equalTo(-1)));
+        assertThat(adapter.updateMessage(30), is(equalTo(2)));
+        assertThat(adapter.updateMessage(24), is(equalTo(-1)));
+
+        assertTrue(adapter.removeItemsBefore(36));
+        assertThat(adapter.getPosition(36), is(equalTo(0)));
+        assertThat(adapter.getPosition(38), is(equalTo(1)));
+        assertThat(adapter.getPosition(30), is(equalTo(-1)));
+    }
+
+    @Test
+    public void testShouldHaveStableIds() throws ParseException {
+        LogStore store = new ColumnarLogStore(50, Long.MAX_VALUE);
+        for(int i = 0; i < 50; i++) {
+            store.append(mLogItemFactory.create("10-12 15:59:01.840 I/GCoreUlr(21516): message " + i));
+        }
+        LogAdapter adapter = new LogAdapter(Robolectric.application, store.getItems());
+
+        assertTrue(adapter.hasStableIds());
+        assertThat(adapter.getItemId(10), is(equalTo(10L)));
+
+        store.updateMessage(10, "message 10\nmore");
+        adapter.updateMessage(10);
+        adapter.removeItemsBefore(30);
+
+        // the ids follow the items, not the positions
+        assertThat(adapter.getItemId(0), is(equalTo(30L)));
+        assertThat(adapter.getItemId(adapter.getPosition(45)), is(equalTo(45L)));
+        for(int position = 0; position < adapter.getCount(); position++) {
+            assertThat(adapter.getItemId(position), is(equalTo(adapter.getItem(position).getSequence())));
+        }
+    }
+
+    private List<LogItem> createItems(int count) throws ParseException {
+        LogStore store = new ColumnarLogStore(count, Long.MAX_VALUE);
+        for(int i = 0; i < count; i++) {
+            store.append(mLogItemFactory.create("10-12 15:59:01.840 I/GCoreUlr(21516): message " + i));
+        }
+        return store.getItems();
+    }
+}
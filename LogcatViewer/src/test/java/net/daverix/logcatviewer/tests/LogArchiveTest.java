@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ArchiveLogStore;
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogArchive;
+import net.daverix.logcatviewer.LogBuffer;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.TagPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogArchiveTest {
+    private static final int SEGMENT_SIZE = 8 * 1024;
+
+    private final LogcatItemFactory mLogItemFactory = new LogcatItemFactory();
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("archive", "");
+        assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testReopenedArchiveShouldHaveSameItems() throws IOException, ParseException {
+        LogArchive archive = openArchive(Long.MAX_VALUE);
+        for(int i = 0; i < 1000; i++) {
+            archive.write(i, createItem(i));
+        }
+        archive.close();
+
+        LogArchive reopened = openArchive(Long.MAX_VALUE);
+        assertThat(reopened.getFirstSequence(), is(equalTo(0L)));
+        assertThat(reopened.getNextSequence(), is(equalTo(1000L)));
+        for(int i = 0; i < 1000; i += 37) {
+            LogItem item = reopened.get(i);
+            assertThat(item.getSequence(), is(equalTo((long) i)));
+            assertThat(item.getMessage(), is(equalTo("message " + i + " \u00e5\u00e4\u00f6")));
+            assertThat(item.getTag(), is(equalTo("Tag" + (i % 7))));
+            assertThat(item.getTimestampMillis(), is(equalTo(createItem(i).getTimestampMillis())));
+            assertThat(item.getPid(), is(equalTo(i)));
+        }
+
+        reopened.write(1000, createItem(1000));
+        assertThat(reopened.get(1000).getMessage(), is(equalTo("message 1000 \u00e5\u00e4\u00f6")));
+    }
+
+    @Test
+    public void testWritingLastItemAgainShouldReplaceIt() throws IOException, ParseException {
+        LogArchive archive = openArchive(Long.MAX_VALUE);
+        archive.write(0, createItem(0));
+        archive.write(1, createItem(1));
+        LogItem updated = new CrashLogItem(createItem(1));
+        updated.setMessage("first line\nsecond line");
+        archive.write(1, updated);
+        archive.write(2, createItem(2));
+
+        assertThat(archive.get(1).getMessage(), is(equalTo("first line\nsecond line")));
+        assertThat(archive.get(1).getBuffer(), is(equalTo(LogBuffer.CRASH)));
+        assertThat(archive.get(1).getPriority(), is(equalTo(updated.getPriority())));
+        assertThat(archive.get(2).getBuffer(), is(equalTo(LogBuffer.UNKNOWN)));
+        List<LogItem> items = archive.read(0, 10);
+        assertThat(items.size(), is(equalTo(3)));
+        assertThat(items.get(1).getMessage(), is(equalTo("first line\nsecond line")));
+    }
+
+    @Test
+    public void testOldestSegmentsShouldBeDeletedOverLimit() throws IOException, ParseException {
+        LogArchive archive = openArchive(3 * SEGMENT_SIZE);
+        for(int i = 0; i < 2000; i++) {
+            archive.write(i, createItem(i));
+        }
+
+        assertThat(archive.getSize(), is(equalTo(3L * SEGMENT_SIZE)));
+        assertTrue(archive.getFirstSequence() > 0);
+        assertThat(archive.get(0), is(nullValue()));
+        assertThat(archive.get(archive.getFirstSequence()).getSequence(), is(equalTo(archive.getFirstSequence())));
+        assertThat(archive.get(1999).getMessage(), is(equalTo("message 1999 \u00e5\u00e4\u00f6")));
+
+        List<LogItem> items = archive.read(0, Integer.MAX_VALUE);
+        assertThat(items.size(), is(equalTo((int) (2000 - archive.getFirstSequence()))));
+        for(int i = 1; i < items.size(); i++) {
+            assertThat(items.get(i).getSequence(), is(equalTo(items.get(i - 1).getSequence() + 1)));
+        }
+    }
+
+    @Test
+    public void testShouldFindSequenceByTime() throws IOException, ParseException {
+        LogArchive archive = openArchive(Long.MAX_VALUE);
+        for(int i = 0; i < 1000; i++) {
+            archive.write(i, createItem(i));
+        }
+
+        long timestamp = createItem(500).getTimestampMillis();
+        assertThat(archive.findSequence(0), is(equalTo(0L)));
+        assertThat(archive.findSequence(timestamp), is(equalTo(500L)));
+        assertThat(archive.findSequence(timestamp - 1), is(equalTo(500L)));
+        assertThat(archive.findSequence(Long.MAX_VALUE), is(equalTo(1000L)));
+    }
+
+    @Test
+    public void testStoreShouldTakeOverArchivedItems() throws IOException, ParseException {
+        TagPool tagPool = new TagPool();
+        ArchiveLogStore store = new ArchiveLogStore(new ColumnarLogStore(10, Long.MAX_VALUE, tagPool),
+                openArchive(Long.MAX_VALUE));
+        for(int i = 0; i < 25; i++) {
+            store.append(createItem(i));
+        }
+        store.updateMessage(24, "updated");
+        store.getArchive().close();
+
+        ArchiveLogStore restored = new ArchiveLogStore(new ColumnarLogStore(10, Long.MAX_VALUE, tagPool),
+                openArchive(Long.MAX_VALUE));
+        assertThat(restored.size(), is(equalTo(0)));
+
+        restored.restore();
+        assertThat(restored.size(), is(equalTo(10)));
+        assertThat(restored.getFirstSequence(), is(equalTo(15L)));
+        assertThat(restored.getNextSequence(), is(equalTo(25L)));
+        assertThat(restored.get(24).getMessage(), is(equalTo("updated")));
+        assertThat(restored.getItems().get(0).getMessage(), is(equalTo("message 15 \u00e5\u00e4\u00f6")));
+
+        // evicted from the store but still archived
+        assertThat(restored.get(3).getMessage(), is(equalTo("message 3 \u00e5\u00e4\u00f6")));
+        assertThat(restored.append(createItem(25)), is(equalTo(25L)));
+    }
+
+    private LogArchive openArchive(long maxBytes) throws IOException {
+        return new LogArchive(mDirectory, SEGMENT_SIZE, maxBytes, new TagPool());
+    }
+
+    private LogItem createItem(int i) throws ParseException {
+        // one item a second
+        return mLogItemFactory.create(String.format(Locale.US, "01-01 %02d:%02d:%02d.000 %c/Tag%d(%d): message %d \u00e5\u00e4\u00f6",
+                i / 3600, i / 60 % 60, i % 60, "VDIWEF".charAt(i % 6), i % 7, i, i));
+    }
+
+    /**
+     * An item read from the crash buffer, only the stores and readers can set the buffer of the
+     * items they create
+     */
+    private static class CrashLogItem implements LogItem {
+        private final LogItem mItem;
+
+        public CrashLogItem(LogItem item) {
+            mItem = item;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return mItem.getPriority();
+        }
+
+        @Override
+        public String getTag() {
+            return mItem.getTag();
+        }
+
+        @Override
+        @Deprecated
+        public Date getDate() {
+            return mItem.getDate();
+        }
+
+        @Override
+        public long getTimestampMillis() {
+            return mItem.getTimestampMillis();
+        }
+
+        @Override
+        public String getMessage() {
+            return mItem.getMessage();
+        }
+
+        @Override
+        public void setMessage(String message) {
+            mItem.setMessage(message);
+        }
+
+        @Override
+        public int getPid() {
+            return mItem.getPid();
+        }
+
+        @Override
+        public int getTid() {
+            return mItem.getTid();
+        }
+
+        @Override
+        public long getSequence() {
+            return mItem.getSequence();
+        }
+
+        @Override
+        public LogBuffer getBuffer() {
+            return LogBuffer.CRASH;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogBuffer;
+import net.daverix.logcatviewer.LogBufferMerger;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.OverloadPolicy;
+import net.daverix.logcatviewer.ParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogBufferMergerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testShouldMergeBuffersInTimestampOrder() throws IOException, ParseException {
+        LogBufferMerger merger = createMerger(LogBuffer.MAIN, LogBuffer.SYSTEM, LogBuffer.CRASH);
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+
+        Map<LogBuffer, ReadableByteChannel> channels = new EnumMap<LogBuffer, ReadableByteChannel>(LogBuffer.class);
+        channels.put(LogBuffer.MAIN, createChannel(
+                "10-12 15:56:42.000 D/Main( 7526): first\n" +
+                "10-12 15:56:42.020 E/Main( 7526): java.lang.RuntimeException\n" +
+                "10-12 15:56:42.020 E/Main( 7526): \tat Main.run\n" +
+                "10-12 15:56:42.040 D/Main( 7526): last\n"));
+        channels.put(LogBuffer.SYSTEM, createChannel(
+                "10-12 15:56:42.010 I/ActivityManager(  512): started\n" +
+                "10-12 15:56:42.030 I/ActivityManager(  512): stopped\n"));
+        channels.put(LogBuffer.CRASH, createChannel(
+                "10-12 15:56:42.025 E/AndroidRuntime( 7526): FATAL EXCEPTION: main\n"));
+
+        merger.read(channels, new LogcatReader(new LogcatItemFactory(), store, null, null));
+
+        List<LogItem> items = store.getItems();
+        assertThat(items.size(), is(equalTo(6)));
+        assertMerged(items.get(0), LogBuffer.MAIN, "first");
+        assertMerged(items.get(1), LogBuffer.SYSTEM, "started");
+        assertMerged(items.get(2), LogBuffer.MAIN, "java.lang.RuntimeException\n\tat Main.run");
+        assertMerged(items.get(3), LogBuffer.CRASH, "FATAL EXCEPTION: main");
+        assertMerged(items.get(4), LogBuffer.SYSTEM, "stopped");
+        assertMerged(items.get(5), LogBuffer.MAIN, "last");
+    }
+
+    @Test
+    public void testQuietBufferShouldNotHoldBackOtherBuffers() throws Exception {
+        final LogBufferMerger merger = createMerger(LogBuffer.MAIN, LogBuffer.CRASH);
+        merger.setReorderWindowMillis(10);
+        final LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+
+        // the crash buffer stays open without anything in it
+        Pipe crash = Pipe.open();
+        final Map<LogBuffer, ReadableByteChannel> channels = new EnumMap<LogBuffer, ReadableByteChannel>(LogBuffer.class);
+        channels.put(LogBuffer.CRASH, crash.source());
+        channels.put(LogBuffer.MAIN, createChannel(
+                "10-12 15:56:42.000 D/Main( 7526): first\n" +
+                "10-12 15:56:42.010 D/Main( 7526): second\n"));
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    merger.read(channels, new LogcatReader(new LogcatItemFactory(), store, null, null));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(store.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(store.size(), is(equalTo(2)));
+        assertTrue(thread.isAlive());
+
+        crash.sink().close();
+        thread.join(5000);
+        assertTrue(!thread.isAlive());
+    }
+
+    @Test
+    public void testShouldDropVerboseItemsWhenQueueIsFull() throws IOException, ParseException {
+        LogBufferMerger merger = createMerger(LogBuffer.MAIN);
+        merger.setQueueCapacity(1);
+        merger.setOverloadPolicy(OverloadPolicy.DROP_VERBOSE);
+
+        // the store is slower than the buffer is read
+        LogStore store = new ColumnarLogStore(1000, Long.MAX_VALUE) {
+            @Override
+            public synchronized long append(LogItem item) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.append(item);
+            }
+        };
+
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 200; i++) {
+            // a line with the time of the line before would continue its message
+            text.append(String.format("10-12 15:56:42.%03d V/Main( 7526): verbose\n", i));
+        }
+        text.append("10-12 15:56:42.500 E/Main( 7526): error\n");
+        Map<LogBuffer, ReadableByteChannel> channels = new EnumMap<LogBuffer, ReadableByteChannel>(LogBuffer.class);
+        channels.put(LogBuffer.MAIN, createChannel(text.toString()));
+
+        merger.read(channels, new LogcatReader(new LogcatItemFactory(), store, null, null));
+
+        LogBufferMerger.Metrics metrics = merger.getMetrics();
+        assertThat(metrics.getItemCount(), is(equalTo(201L)));
+        assertTrue(metrics.getDroppedCount() > 0);
+        assertThat(store.size(), is(equalTo((int) (201 - metrics.getDroppedCount()))));
+        assertThat(store.getItems().get(store.size() - 1).getMessage(), is(equalTo("error")));
+    }
+
+    @Test
+    public void testReaderThreadsShouldHaveStoppedWhenInterrupted() throws Exception {
+        final LogBufferMerger merger = createMerger(LogBuffer.MAIN, LogBuffer.CRASH);
+        final LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+
+        Pipe main = Pipe.open();
+        Pipe crash = Pipe.open();
+        final Map<LogBuffer, ReadableByteChannel> channels = new EnumMap<LogBuffer, ReadableByteChannel>(LogBuffer.class);
+        channels.put(LogBuffer.MAIN, main.source());
+        channels.put(LogBuffer.CRASH, crash.source());
+
+        final boolean[] readersAlive = new boolean[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    merger.read(channels, new LogcatReader(new LogcatItemFactory(), store, null, null));
+                } catch (InterruptedIOException e) {
+                    readersAlive[0] = areReadersAlive();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!areReadersAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(areReadersAlive());
+
+        thread.interrupt();
+        thread.join(5000);
+        assertTrue(!thread.isAlive());
+        assertTrue(!readersAlive[0]);
+    }
+
+    private static boolean areReadersAlive() {
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int count = Thread.enumerate(threads);
+        for(int i = 0; i < count; i++) {
+            if(threads[i].getName().startsWith("LogBufferMerger"))
+                return true;
+        }
+        return false;
+    }
+
+    private static LogBufferMerger createMerger(LogBuffer... buffers) {
+        Map<LogBuffer, LogItemFactory> factories = new EnumMap<LogBuffer, LogItemFactory>(LogBuffer.class);
+        for(LogBuffer buffer : buffers) {
+            factories.put(buffer, new LogcatItemFactory());
+        }
+
+        LogBufferMerger merger = new LogBufferMerger();
+        merger.setBuffers(factories);
+        return merger;
+    }
+
+    private static ReadableByteChannel createChannel(String text) {
+        return Channels.newChannel(new ByteArrayInputStream(text.getBytes(UTF_8)));
+    }
+
+    private static void assertMerged(LogItem item, LogBuffer buffer, String message) {
+        assertThat(item.getBuffer(), is(equalTo(buffer)));
+        assertThat(item.getMessage(), is(equalTo(message)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.LogExporter;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatTextFactory;
+import net.daverix.logcatviewer.ParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogExporterTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldWriteSameTextAsTextFactory() throws IOException, ParseException {
+        List<LogItem> items = createItems(3);
+        items.add(mLogItemFactory.create("10-12 15:59:01.840 E/GCoreUlr(21516): caf\u00e9"));
+        LogExporter exporter = new LogExporter(new LogcatTextFactory());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exporter.export(items, outputStream, null);
+
+        assertThat(outputStream.toString("UTF-8"), is(equalTo(new LogcatTextFactory().create(items))));
+        assertThat(exporter.getMimeType(), is(equalTo("text/plain")));
+    }
+
+    @Test
+    public void testShouldCompressText() throws IOException, ParseException {
+        List<LogItem> items = createItems(5000);
+        LogExporter exporter = new LogExporter(new LogcatTextFactory());
+        exporter.setCompressed(true);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exporter.export(items, outputStream, null);
+
+        String text = readText(new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+        assertThat(text, is(equalTo(new LogcatTextFactory().create(items))));
+        assertTrue(outputStream.size() < text.length());
+        assertThat(exporter.getFileExtension(), is(equalTo(".txt.gz")));
+    }
+
+    @Test
+    public void testShouldReportProgressAndReplaceFile() throws IOException, ParseException {
+        List<LogItem> items = createItems(2500);
+        LogExporter exporter = new LogExporter(new LogcatTextFactory());
+        File file = File.createTempFile("export", ".txt");
+        try {
+            final List<Integer> progress = new ArrayList<Integer>();
+            exporter.export(items, file, new LogExporter.ProgressListener() {
+                @Override
+                public void onProgress(int exportedCount, int totalCount) {
+                    assertThat(totalCount, is(equalTo(2500)));
+                    progress.add(exportedCount);
+                }
+            });
+
+            assertThat(progress.size(), is(equalTo(3)));
+            assertThat(progress.get(0), is(equalTo(1000)));
+            assertThat(progress.get(2), is(equalTo(2500)));
+            assertThat(readText(new FileInputStream(file)), is(equalTo(new LogcatTextFactory().create(items))));
+            assertTrue(!new File(file.getPath() + ".part").exists());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private List<LogItem> createItems(int count) throws ParseException {
+        List<LogItem> items = new ArrayList<LogItem>(count);
+        for(int i = 0; i < count; i++) {
+            items.add(mLogItemFactory.create("10-12 15:59:01.840 I/GCoreUlr(21516): message " + i));
+        }
+        return items;
+    }
+
+    private static String readText(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemBatcher;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogItemBatcherTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldReportFirstAndFullBatch() throws ParseException {
+        LogItemBatcher batcher = new LogItemBatcher(3);
+
+        assertThat(batcher.add(createItem("1")), is(equalTo(LogItemBatcher.FIRST_IN_BATCH)));
+        assertThat(batcher.add(createItem("2")), is(equalTo(LogItemBatcher.ADDED)));
+        assertThat(batcher.add(createItem("3")), is(equalTo(LogItemBatcher.BATCH_FULL)));
+
+        List<LogItem> batch = batcher.drain();
+        assertThat(batch.size(), is(equalTo(3)));
+        assertThat(batch.get(2).getMessage(), is(equalTo("3")));
+
+        assertThat(batcher.drain().size(), is(equalTo(0)));
+        assertThat(batcher.add(createItem("4")), is(equalTo(LogItemBatcher.FIRST_IN_BATCH)));
+    }
+
+    @Test
+    public void testShouldNotAddUpdatedItemTwice() throws ParseException {
+        LogItemBatcher batcher = new LogItemBatcher(10);
+        LogItem item = createItem("1");
+
+        batcher.add(item);
+        batcher.add(item);
+        batcher.drain();
+
+        LogItemBatcher.Metrics metrics = batcher.getMetrics();
+        assertThat(metrics.getBatchCount(), is(equalTo(1L)));
+        assertThat(metrics.getItemCount(), is(equalTo(1L)));
+        assertThat(metrics.getLargestBatchSize(), is(equalTo(1)));
+    }
+
+    private LogItem createItem(String message) throws ParseException {
+        return mLogItemFactory.create("10-12 15:59:01.840 I/GCoreUlr(21516): " + message);
+    }
+}
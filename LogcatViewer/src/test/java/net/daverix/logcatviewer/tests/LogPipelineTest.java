@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogPipeline;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.OverloadPolicy;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.SpscQueue;
+import net.daverix.logcatviewer.SyntheticLogSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogPipelineTest {
+    private static final int LINE_COUNT = 20000;
+
+    @Test
+    public void testSingleParserShouldGiveSameItemsAsReader() throws IOException, ParseException {
+        assertSameAsReader(new LogPipeline(new LogcatItemFactory()));
+    }
+
+    @Test
+    public void testSeveralParsersShouldKeepOrder() throws IOException, ParseException {
+        LogPipeline pipeline = new LogPipeline(new LogcatItemFactory());
+        pipeline.setParserFactories(new LogcatItemFactory(), new LogcatItemFactory(), new LogcatItemFactory());
+        pipeline.setQueueCapacity(16);
+
+        assertSameAsReader(pipeline);
+    }
+
+    @Test
+    public void testDropVerboseShouldOnlyDropVerboseLines() throws IOException, ParseException {
+        LogPipeline pipeline = new LogPipeline(new SlowFactory());
+        pipeline.setQueueCapacity(4);
+        pipeline.setOverloadPolicy(OverloadPolicy.DROP_VERBOSE);
+
+        SyntheticLogSource source = createSource();
+        source.setStackTraceRatio(0);
+        for(Priority priority : Priority.values()) {
+            source.setPriorityWeight(priority, 0);
+        }
+        source.setPriorityWeight(Priority.VERBOSE, 9);
+        source.setPriorityWeight(Priority.ERROR, 1);
+        source.setLineLimit(2000);
+
+        List<LogItem> items = read(pipeline, source);
+        LogPipeline.Metrics metrics = pipeline.getMetrics();
+
+        assertTrue(metrics.getDroppedCount() > 0);
+        assertThat(metrics.getLineCount(), is(equalTo(2000L)));
+        assertThat((long) items.size(), is(equalTo(2000 - metrics.getDroppedCount())));
+        assertThat(countPriority(items, Priority.ERROR), is(equalTo(countPriority(readSerial(source), Priority.ERROR))));
+        assertThat(metrics.getParserQueueMaxDepth(), is(equalTo(4)));
+    }
+
+    @Test
+    public void testSampleShouldKeepSomeLines() throws IOException, ParseException {
+        LogPipeline pipeline = new LogPipeline(new SlowFactory());
+        pipeline.setQueueCapacity(4);
+        pipeline.setOverloadPolicy(OverloadPolicy.SAMPLE);
+        pipeline.setSampleRate(5);
+
+        SyntheticLogSource source = createSource();
+        source.setStackTraceRatio(0);
+        source.setLineLimit(2000);
+
+        List<LogItem> items = read(pipeline, source);
+        LogPipeline.Metrics metrics = pipeline.getMetrics();
+
+        assertTrue(metrics.getDroppedCount() > 0);
+        assertThat((long) items.size(), is(equalTo(2000 - metrics.getDroppedCount())));
+    }
+
+    @Test
+    public void testQueueShouldHandOverItemsInOrder() throws InterruptedException {
+        final SpscQueue<Integer> queue = new SpscQueue<Integer>(8);
+        final int count = 100000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for(int i = 0; i < count; i++) {
+                        queue.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        producer.start();
+
+        for(int i = 0; i < count; i++) {
+            assertThat(queue.take(), is(equalTo(i)));
+        }
+        producer.join();
+
+        assertThat(queue.isEmpty(), is(true));
+        assertThat(queue.getMaxSize() <= queue.getCapacity(), is(true));
+    }
+
+    private static void assertSameAsReader(LogPipeline pipeline) throws IOException, ParseException {
+        List<LogItem> expected = readSerial(createSource());
+        List<LogItem> actual = read(pipeline, createSource());
+
+        assertThat(actual.size(), is(equalTo(expected.size())));
+        for(int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getTag(), is(equalTo(expected.get(i).getTag())));
+            assertThat(actual.get(i).getPriority(), is(equalTo(expected.get(i).getPriority())));
+            assertThat(actual.get(i).getMessage(), is(equalTo(expected.get(i).getMessage())));
+        }
+    }
+
+    private static int countPriority(List<LogItem> items, Priority priority) {
+        int count = 0;
+        for(LogItem item : items) {
+            if(item.getPriority() == priority) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static SyntheticLogSource createSource() {
+        SyntheticLogSource source = new SyntheticLogSource(42, 0);
+        source.setStackTraceRatio(0.05);
+        source.setLineLimit(LINE_COUNT);
+        return source;
+    }
+
+    private static List<LogItem> read(LogPipeline pipeline, SyntheticLogSource source) throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        InputStream inputStream = source.open();
+        try {
+            pipeline.read(Channels.newChannel(inputStream), new LogcatReader(new LogcatItemFactory(), store, null, null));
+        } finally {
+            inputStream.close();
+        }
+        return store.getItems();
+    }
+
+    private static List<LogItem> readSerial(SyntheticLogSource source) throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(LINE_COUNT, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, null, null);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(), "UTF-8"));
+        try {
+            logcatReader.read(reader);
+        } finally {
+            reader.close();
+        }
+        return store.getItems();
+    }
+
+    /**
+     * Parser that can't keep up with the source
+     */
+    private static class SlowFactory implements LogItemFactory {
+        private final LogItemFactory mFactory = new LogcatItemFactory();
+
+        @Override
+        public LogItem create(String line) throws ParseException {
+            try {
+                Thread.sleep(0, 200000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mFactory.create(line);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogPriorityFilter;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogPriorityFilterTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldMergeIndexesWhenLogLevelChanges() throws ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        LogPriorityFilter filter = new LogPriorityFilter(new StoreLogHandler(store));
+        store.append(createItem('V', "0"));
+        store.append(createItem('W', "1"));
+        store.append(createItem('D', "2"));
+        store.append(createItem('E', "3"));
+        store.append(createItem('I', "4"));
+
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE), "0", "1", "2", "3", "4");
+        assertMessages(filter.getFilteredItems(Priority.DEBUG), "1", "2", "3", "4");
+        assertMessages(filter.getFilteredItems(Priority.WARNING), "1", "3");
+        assertMessages(filter.getFilteredItems(Priority.FATAL));
+    }
+
+    @Test
+    public void testShouldOnlyReturnNewMatchingItems() throws ParseException {
+        LogStore store = new ColumnarLogStore(3, Long.MAX_VALUE);
+        LogPriorityFilter filter = new LogPriorityFilter(new StoreLogHandler(store));
+        store.append(createItem('E', "0"));
+        assertMessages(filter.getNewFilteredItems(Priority.INFO), "0");
+
+        store.append(createItem('V', "1"));
+        store.append(createItem('I', "2"));
+        store.append(createItem('W', "3"));
+        assertMessages(filter.getNewFilteredItems(Priority.INFO), "2", "3");
+        assertMessages(filter.getNewFilteredItems(Priority.INFO));
+
+        // the first item has been evicted from the store
+        assertMessages(filter.getFilteredItems(Priority.VERBOSE), "1", "2", "3");
+    }
+
+    private void assertMessages(List<LogItem> items, String... messages) {
+        assertThat(items.size(), is(equalTo(messages.length)));
+        for(int i = 0; i < messages.length; i++) {
+            assertThat(items.get(i).getMessage(), is(equalTo(messages[i])));
+        }
+    }
+
+    private LogItem createItem(char priority, String message) throws ParseException {
+        return mLogItemFactory.create("10-12 15:59:01.840 " + priority + "/GCoreUlr(21516): " + message);
+    }
+}
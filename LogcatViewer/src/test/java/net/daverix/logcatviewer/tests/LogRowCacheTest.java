@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogRowCache;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogTimestampFormatter;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogRowCacheTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldPrepareRow() throws ParseException {
+        LogRowCache cache = new LogRowCache(10, new LogTimestampFormatter(TimeZone.getTimeZone("UTC")));
+        LogStore store = new ColumnarLogStore(10, Long.MAX_VALUE);
+        store.append(mLogItemFactory.create("10-12 15:59:01.840 W/GCoreUlr(21516): message"));
+
+        LogRowCache.Row row = cache.get(store.get(0));
+
+        assertThat(row.getHeader().toString(), is(equalTo("W/GCoreUlr")));
+        assertThat(new String(row.getDate(), 0, row.getDateLength()), is(equalTo("10-12 15:59:01.840")));
+        assertThat(row.getColor(), is(equalTo(LogRowCache.getColor(store.get(0).getPriority()))));
+        assertThat(cache.getMissCount(), is(equalTo(1L)));
+
+        assertThat(cache.get(store.get(0)), is(sameInstance(row)));
+        assertThat(cache.getHitCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void testShouldKeepMessageUntilUpdated() throws ParseException {
+        LogRowCache cache = new LogRowCache(10);
+        LogStore store = new ColumnarLogStore(10, Long.MAX_VALUE);
+        store.append(mLogItemFactory.create("10-12 15:59:01.840 W/GCoreUlr(21516): first"));
+        LogRowCache.Row row = cache.get(store.get(0));
+        String message = row.getMessage();
+
+        store.updateMessage(0, "first\nsecond");
+
+        assertThat(cache.get(store.get(0)).getMessage(), is(sameInstance(message)));
+        assertTrue(cache.updateMessage(store.get(0)));
+        assertThat(cache.get(store.get(0)).getMessage(), is(equalTo("first\nsecond")));
+        assertTrue(!cache.updateMessage(mLogItemFactory.create("10-12 15:59:01.840 W/GCoreUlr(21516): other")));
+    }
+
+    @Test
+    public void testShouldReuseLeastRecentlyUsedRow() throws ParseException {
+        LogRowCache cache = new LogRowCache(2);
+        List<LogItem> items = createItems(3);
+
+        LogRowCache.Row first = cache.get(items.get(0));
+        LogRowCache.Row second = cache.get(items.get(1));
+        cache.get(items.get(0));
+        LogRowCache.Row third = cache.get(items.get(2));
+
+        assertThat(third, is(sameInstance(second)));
+        assertThat(third.getSequence(), is(equalTo(2L)));
+        assertThat(cache.size(), is(equalTo(2)));
+        assertThat(cache.get(items.get(0)), is(sameInstance(first)));
+        assertThat(cache.getMissCount(), is(equalTo(3L)));
+    }
+
+    @Test
+    public void testShouldFindRowsAfterManyEvictions() throws ParseException {
+        int capacity = 100;
+        LogRowCache cache = new LogRowCache(capacity);
+        List<LogItem> items = createItems(1000);
+        Random random = new Random(0);
+        for(int i = 0; i < 100000; i++) {
+            LogItem item = items.get(random.nextInt(items.size()));
+            long misses = cache.getMissCount();
+
+            LogRowCache.Row row = cache.get(item);
+
+            assertThat(row.getSequence(), is(equalTo(item.getSequence())));
+            assertThat(row.getHeader().toString(), is(equalTo("I/Tag" + item.getSequence())));
+            if(cache.getMissCount() == misses) {
+                // a row that is found must not be prepared again
+                assertThat(cache.get(item), is(sameInstance(row)));
+            }
+        }
+        assertThat(cache.size(), is(equalTo(capacity)));
+
+        // scrolling back and forth over fewer rows than the capacity prepares each row once
+        long misses = cache.getMissCount();
+        for(int pass = 0; pass < 10; pass++) {
+            for(int i = 500; i < 500 + capacity; i++) {
+                cache.get(items.get(pass % 2 == 0 ? i : 1099 - i));
+            }
+        }
+        assertTrue(cache.getMissCount() - misses <= capacity);
+    }
+
+    private List<LogItem> createItems(int count) throws ParseException {
+        LogStore store = new ColumnarLogStore(count, Long.MAX_VALUE);
+        for(int i = 0; i < count; i++) {
+            store.append(mLogItemFactory.create("10-12 15:59:01.840 I/Tag" + i + "(21516): message"));
+        }
+        return store.getItems();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogItemFactory;
+import net.daverix.logcatviewer.LogSearchFilter;
+import net.daverix.logcatviewer.LogSearchIndex;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogSearchIndexTest {
+    private final LogItemFactory mLogItemFactory = new LogcatItemFactory();
+
+    @Test
+    public void testShouldFindItemsContainingAllWordPrefixes() {
+        LogSearchIndex index = new LogSearchIndex();
+        index.add(0, "AndroidRuntime");
+        index.add(0, "java.lang.NullPointerException: oops");
+        index.add(1, "ActivityManager");
+        index.add(1, "Start proc com.example for activity");
+        index.add(2, "AndroidRuntime");
+        index.add(2, "at com.example.Main.onCreate(Main.java:12)");
+
+        assertSequences(index.search("NullPointer"), 0);
+        assertSequences(index.search("androidruntime"), 0, 2);
+        assertSequences(index.search("com.example"), 1, 2);
+        assertSequences(index.search("example main"), 2);
+        assertSequences(index.search("exception activity"));
+        assertSequences(index.search(""));
+    }
+
+    @Test
+    public void testShouldForgetEvictedItems() {
+        LogSearchIndex index = new LogSearchIndex();
+        index.add(0, "first match");
+        index.add(1, "second match");
+
+        index.trimBefore(1);
+
+        assertSequences(index.search("match"), 1);
+    }
+
+    @Test
+    public void testShouldOnlyCountWholeItemsAsIndexed() {
+        LogSearchIndex index = new LogSearchIndex();
+        assertThat(index.getLastItemSequence(), is(equalTo(-1L)));
+
+        index.addItem(0, "AndroidRuntime", "FATAL EXCEPTION: main");
+        index.add(0, "java.lang.NullPointerException");
+
+        assertThat(index.getLastItemSequence(), is(equalTo(0L)));
+        assertSequences(index.search("runtime"));
+        assertSequences(index.search("androidruntime nullpointer"), 0);
+    }
+
+    @Test
+    public void testShouldFilterNewItemsBySearchQuery() throws ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        StoreLogHandler handler = new StoreLogHandler(store);
+        store.append(createItem('E', "java.lang.NullPointerException"));
+        store.append(createItem('D', "NullPointerException while debugging"));
+
+        LogSearchFilter filter = new LogSearchFilter(handler, "nullpointer");
+        assertThat(filter.getFilteredItems(Priority.INFO).size(), is(equalTo(1)));
+
+        store.append(createItem('W', "nothing to see"));
+        store.append(createItem('W', "another NullPointerException"));
+
+        List<LogItem> newItems = filter.getNewFilteredItems(Priority.INFO);
+        assertThat(newItems.size(), is(equalTo(1)));
+        assertThat(newItems.get(0).getMessage(), is(equalTo("another NullPointerException")));
+    }
+
+    @Test
+    public void testShouldNotCheckOldItemsAgainWithoutMatches() throws ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        final List<Long> requested = new ArrayList<Long>();
+        StoreLogHandler handler = new StoreLogHandler(store) {
+            @Override
+            public List<LogItem> getItemsSince(long sequence) {
+                requested.add(sequence);
+                return super.getItemsSince(sequence);
+            }
+        };
+        for(int i = 0; i < 10; i++) {
+            store.append(createItem('I', "message " + i));
+        }
+
+        LogSearchFilter filter = new LogSearchFilter(handler, "nullpointer");
+        assertThat(filter.getFilteredItems(Priority.INFO).size(), is(equalTo(0)));
+        store.append(createItem('E', "java.lang.NullPointerException"));
+        List<LogItem> newItems = filter.getNewFilteredItems(Priority.INFO);
+
+        assertThat(newItems.size(), is(equalTo(1)));
+        assertThat(requested.get(requested.size() - 1), is(equalTo(9L)));
+    }
+
+    @Test
+    public void testShouldFilterItemsAgainWhenLinesAreAdded() throws ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        StoreLogHandler handler = new StoreLogHandler(store);
+        store.append(createItem('E', "FATAL EXCEPTION: main"));
+        store.append(createItem('I', "unrelated"));
+
+        LogSearchFilter filter = new LogSearchFilter(handler, "nullpointer");
+        assertThat(filter.getFilteredItems(Priority.INFO).size(), is(equalTo(0)));
+
+        // the stack trace is added to the first item after it has been filtered
+        store.updateMessage(0, "FATAL EXCEPTION: main\njava.lang.NullPointerException");
+        store.append(createItem('E', "another NullPointerException"));
+        List<LogItem> read = store.getItemsSince(-1);
+
+        List<LogItem> updated = filter.getUpdatedFilteredItems(read, Priority.INFO);
+        assertThat(updated.size(), is(equalTo(1)));
+        assertThat(updated.get(0).getSequence(), is(equalTo(0L)));
+
+        // the new item is left to getNewFilteredItems
+        List<LogItem> newItems = filter.getNewFilteredItems(Priority.INFO);
+        assertThat(newItems.size(), is(equalTo(1)));
+        assertThat(newItems.get(0).getSequence(), is(equalTo(2L)));
+        assertThat(filter.getUpdatedFilteredItems(read, Priority.ERROR).size(), is(equalTo(2)));
+        assertThat(filter.getUpdatedFilteredItems(read, Priority.FATAL).size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testShouldFindNewestItemWithSearch() throws ParseException {
+        LogStore store = new ColumnarLogStore(100, Long.MAX_VALUE);
+        store.append(createItem('I', "first match"));
+        store.append(createItem('I', "second match"));
+
+        LogSearchFilter filter = new LogSearchFilter(new StoreLogHandler(store), "match");
+
+        assertThat(filter.getFilteredItems(Priority.INFO).size(), is(equalTo(2)));
+        assertThat(filter.getNewFilteredItems(Priority.INFO).size(), is(equalTo(0)));
+    }
+
+    private void assertSequences(long[] actual, long... expected) {
+        assertThat(actual.length, is(equalTo(expected.length)));
+        for(int i = 0; i < expected.length; i++) {
+            assertThat(actual[i], is(equalTo(expected[i])));
+        }
+    }
+
+    private LogItem createItem(char priority, String message) throws ParseException {
+        return mLogItemFactory.create("10-12 15:59:01.840 " + priority + "/GCoreUlr(21516): " + message);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.LogSelection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogSelectionTest {
+    @Test
+    public void testShouldKeepSequencesSorted() {
+        LogSelection selection = new LogSelection();
+
+        assertTrue(selection.add(30));
+        assertTrue(selection.add(10));
+        assertTrue(selection.add(20));
+        assertTrue(!selection.add(10));
+
+        assertThat(selection.size(), is(equalTo(3)));
+        assertThat(selection.get(0), is(equalTo(10L)));
+        assertThat(selection.get(1), is(equalTo(20L)));
+        assertThat(selection.get(2), is(equalTo(30L)));
+
+        assertTrue(selection.remove(20));
+        assertTrue(!selection.remove(20));
+        assertTrue(!selection.contains(20));
+        assertThat(selection.get(1), is(equalTo(30L)));
+
+        selection.clear();
+        assertThat(selection.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testShouldFollowRandomChecks() {
+        LogSelection selection = new LogSelection();
+        TreeSet<Long> expected = new TreeSet<Long>();
+        Random random = new Random(0);
+        for(int i = 0; i < 20000; i++) {
+            long sequence = random.nextInt(5000);
+            if(random.nextBoolean()) {
+                assertThat(selection.add(sequence), is(equalTo(expected.add(sequence))));
+            }
+            else {
+                assertThat(selection.remove(sequence), is(equalTo(expected.remove(sequence))));
+            }
+        }
+
+        assertThat(selection.size(), is(equalTo(expected.size())));
+        int index = 0;
+        for(long sequence : expected) {
+            assertThat(selection.get(index++), is(equalTo(sequence)));
+        }
+    }
+}
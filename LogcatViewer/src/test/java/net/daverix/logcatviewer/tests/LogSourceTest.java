@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.FileReplayLogSource;
+import net.daverix.logcatviewer.LogFilterSpec;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogSource;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.ProcessLogSource;
+import net.daverix.logcatviewer.SyntheticLogSource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogSourceTest {
+    private static final String[] LOG = {
+            "--------- beginning of /dev/log/main",
+            "10-12 15:56:42.000 I/ActivityManager(  512): Start proc com.example",
+            "10-12 15:56:42.100 E/AndroidRuntime( 7526): java.lang.NullPointerException",
+            "10-12 15:56:42.100 E/AndroidRuntime( 7526): \tat com.example.Main.main(Main.java:1)",
+            "10-12 15:56:42.200 W/ActivityManager(  512): Force finishing activity"
+    };
+
+    @Test
+    public void testSyntheticSourceShouldBeReproducible() throws IOException, ParseException {
+        List<LogItem> first = read(createSyntheticSource());
+        List<LogItem> second = read(createSyntheticSource());
+
+        assertThat(first.size(), is(equalTo(second.size())));
+        for(int i = 0; i < first.size(); i++) {
+            assertThat(first.get(i).getTag(), is(equalTo(second.get(i).getTag())));
+            assertThat(first.get(i).getPriority(), is(equalTo(second.get(i).getPriority())));
+            assertThat(first.get(i).getMessage(), is(equalTo(second.get(i).getMessage())));
+        }
+    }
+
+    @Test
+    public void testSyntheticSourceShouldOnlyEmitWeightedPriorities() throws IOException, ParseException {
+        SyntheticLogSource source = createSyntheticSource();
+        for(Priority priority : Priority.values()) {
+            source.setPriorityWeight(priority, 0);
+        }
+        source.setPriorityWeight(Priority.WARNING, 1);
+        source.setStackTraceRatio(0);
+
+        List<LogItem> items = read(source);
+
+        assertThat(items.size(), is(equalTo(1000)));
+        for(LogItem item : items) {
+            assertThat(item.getPriority(), is(equalTo(Priority.WARNING)));
+        }
+    }
+
+    @Test
+    public void testSyntheticSourceShouldMergeStackTraces() throws IOException, ParseException {
+        SyntheticLogSource source = createSyntheticSource();
+        source.setStackTraceRatio(1);
+
+        List<LogItem> items = read(source);
+
+        assertTrue(items.size() < 1000 / 3);
+        for(LogItem item : items) {
+            assertTrue(item.getMessage().startsWith("java.lang.NullPointerException\n\tat "));
+        }
+    }
+
+    @Test
+    public void testReplayShouldKeepPaceOfTimestamps() throws IOException, ParseException {
+        File file = writeLog();
+        try {
+            long start = System.nanoTime();
+            List<LogItem> items = read(new FileReplayLogSource(file, 2));
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+            assertThat(items.size(), is(equalTo(3)));
+            assertThat(items.get(1).getMessage(),
+                    is(equalTo("java.lang.NullPointerException\n\tat com.example.Main.main(Main.java:1)")));
+            assertTrue(elapsedMillis >= 95);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReplayWithoutPacingShouldReturnAllLines() throws IOException {
+        File file = writeLog();
+        try {
+            InputStream inputStream = new FileReplayLogSource(file, 0).open();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+            try {
+                for(String line : LOG) {
+                    assertThat(reader.readLine(), is(equalTo(line)));
+                }
+                assertThat(reader.readLine(), is(equalTo((String) null)));
+            } finally {
+                reader.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFilterSpecShouldBecomeLogcatArguments() {
+        LogFilterSpec spec = new LogFilterSpec();
+        assertThat(ProcessLogSource.getFilterArguments(spec, true), is(equalTo(Collections.<String>emptyList())));
+
+        spec.setMinPriority(Priority.WARNING);
+        assertThat(ProcessLogSource.getFilterArguments(spec, true), is(equalTo(Arrays.asList("*:W"))));
+
+        spec.setExcludedTags(new HashSet<String>(Arrays.asList("Chatty", "Noisy")));
+        assertThat(ProcessLogSource.getFilterArguments(spec, true), is(equalTo(Arrays.asList("Chatty:S", "Noisy:S", "*:W"))));
+
+        spec.setIncludedTags(new HashSet<String>(Arrays.asList("MyTag", "Noisy")));
+        spec.setPids(7526);
+        assertThat(ProcessLogSource.getFilterArguments(spec, true), is(equalTo(Arrays.asList("--pid=7526", "MyTag:W", "*:S"))));
+        assertThat(ProcessLogSource.getFilterArguments(spec, false), is(equalTo(Arrays.asList("MyTag:W", "*:S"))));
+    }
+
+    @Test
+    public void testTagsThatCantBeWrittenShouldNotBeLeftOut() {
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setIncludedTags(new HashSet<String>(Arrays.asList("MyTag", "My Tag")));
+        spec.setExcludedTags(new HashSet<String>(Arrays.asList("a:b")));
+        spec.setPids(1, 2);
+
+        // every tag has to be read, and the reader filters the pids
+        assertThat(ProcessLogSource.getFilterArguments(spec, true), is(equalTo(Collections.<String>emptyList())));
+    }
+
+    @Test
+    public void testSourceShouldTellWhenItHasToBeOpenedAgain() {
+        ProcessLogSource source = new ProcessLogSource();
+        LogFilterSpec spec = new LogFilterSpec();
+        spec.setMinPriority(Priority.WARNING);
+
+        assertTrue(source.setFilterSpec(spec));
+        assertTrue(!source.setFilterSpec(new LogFilterSpec(spec)));
+
+        // only the reader can filter the message
+        spec.setMessageText("text");
+        assertTrue(!source.setFilterSpec(spec));
+
+        assertTrue(source.setFilterSpec(null));
+    }
+
+    @Test
+    public void testUnionShouldMatchWhatEitherSpecMatches() {
+        LogFilterSpec shown = new LogFilterSpec();
+        shown.setMinPriority(Priority.ERROR);
+        shown.setIncludedTags(new HashSet<String>(Arrays.asList("MyTag")));
+        shown.setExcludedTags(new HashSet<String>(Arrays.asList("Chatty", "Noisy")));
+        shown.setMessageText("text");
+        LogFilterSpec retained = new LogFilterSpec();
+        retained.setMinPriority(Priority.WARNING);
+        retained.setExcludedTags(new HashSet<String>(Arrays.asList("Noisy")));
+
+        LogFilterSpec union = LogFilterSpec.union(shown, retained);
+        assertThat(union.getMinPriority(), is(equalTo(Priority.WARNING)));
+        assertTrue(union.getIncludedTags().isEmpty());
+        assertThat(union.getExcludedTags(), is(equalTo(Collections.singleton("Noisy"))));
+        assertThat(union.getMessageText(), is(equalTo((String) null)));
+    }
+
+    @Test
+    public void testReadingBytesShouldGiveSameItemsAsReadingLines() throws IOException, ParseException {
+        SyntheticLogSource source = createSyntheticSource();
+        source.setStackTraceRatio(0.1);
+        List<LogItem> expected = read(source);
+
+        LogStore store = new ColumnarLogStore(10000, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, null, null);
+        InputStream inputStream = source.open();
+        try {
+            logcatReader.read(Channels.newChannel(inputStream));
+        } finally {
+            inputStream.close();
+        }
+        List<LogItem> actual = store.getItems();
+
+        assertThat(actual.size(), is(equalTo(expected.size())));
+        for(int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getPriority(), is(equalTo(expected.get(i).getPriority())));
+            assertThat(actual.get(i).getTag(), is(equalTo(expected.get(i).getTag())));
+            assertThat(actual.get(i).getPid(), is(equalTo(expected.get(i).getPid())));
+            assertThat(actual.get(i).getMessage(), is(equalTo(expected.get(i).getMessage())));
+        }
+    }
+
+    private static SyntheticLogSource createSyntheticSource() {
+        SyntheticLogSource source = new SyntheticLogSource(42, 0);
+        source.setLineLimit(1000);
+        return source;
+    }
+
+    private static List<LogItem> read(LogSource source) throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(10000, Long.MAX_VALUE);
+        LogcatReader logcatReader = new LogcatReader(new LogcatItemFactory(), store, null, null);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(), "UTF-8"));
+        try {
+            logcatReader.read(reader);
+        } finally {
+            reader.close();
+        }
+        return new ArrayList<LogItem>(store.getItems());
+    }
+
+    private static File writeLog() throws IOException {
+        File file = File.createTempFile("logcat", ".txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for(String line : LOG) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
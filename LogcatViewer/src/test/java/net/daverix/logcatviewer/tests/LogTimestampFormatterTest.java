@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.LogTimestampFormatter;
+import net.daverix.logcatviewer.LogTimestampResolver;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogTimestampFormatterTest {
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Stockholm");
+
+    @Test
+    public void testShouldFormatLikeCalendar() {
+        LogTimestampFormatter formatter = new LogTimestampFormatter(TIME_ZONE);
+        Calendar cal = Calendar.getInstance(TIME_ZONE);
+        cal.set(2013, Calendar.JANUARY, 1, 0, 0, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        // steps through a whole year including both daylight saving time changes
+        long start = cal.getTimeInMillis();
+        for(long millis = start; millis < start + 366L * 24 * 60 * 60 * 1000; millis += 3599999L) {
+            assertThat(formatter.format(millis), is(equalTo(formatWithCalendar(millis))));
+        }
+    }
+
+    @Test
+    public void testShouldFormatDaylightSavingTimeDaysLikeCalendar() {
+        LogTimestampFormatter formatter = new LogTimestampFormatter(TIME_ZONE);
+        Calendar cal = Calendar.getInstance(TIME_ZONE);
+        cal.set(2013, Calendar.MARCH, 31, 0, 0, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        long spring = cal.getTimeInMillis();
+        cal.set(2013, Calendar.OCTOBER, 27, 0, 0, 0);
+        long autumn = cal.getTimeInMillis();
+
+        // the offset changes at 01:00 UTC on both days, local midnight is 23:00 UTC
+        for(long start : new long[] { spring, autumn }) {
+            for(long millis = start - 60000; millis < start + 25L * 60 * 60 * 1000; millis += 59999L) {
+                assertThat(formatter.format(millis), is(equalTo(formatWithCalendar(millis))));
+            }
+        }
+
+        long change = spring + 2 * 60 * 60 * 1000;
+        assertThat(formatter.format(change - 1), is(equalTo("03-31 01:59:59.999")));
+        assertThat(formatter.format(change), is(equalTo("03-31 03:00:00.000")));
+    }
+
+    @Test
+    public void testShouldResolveSameTimestampAsCalendar() {
+        LogTimestampResolver resolver = new LogTimestampResolver(TIME_ZONE);
+        Calendar cal = Calendar.getInstance(TIME_ZONE);
+        cal.set(Calendar.MONTH, Calendar.OCTOBER);
+        cal.set(Calendar.DAY_OF_MONTH, 12);
+        cal.set(Calendar.HOUR_OF_DAY, 15);
+        cal.set(Calendar.MINUTE, 59);
+        cal.set(Calendar.SECOND, 1);
+        cal.set(Calendar.MILLISECOND, 840);
+
+        assertThat(resolver.resolve(10, 12, 15, 59, 1, 840), is(equalTo(cal.getTimeInMillis())));
+    }
+
+    @Test
+    public void testShouldWriteIntoBuffer() {
+        LogTimestampFormatter formatter = new LogTimestampFormatter(TIME_ZONE);
+        LogTimestampResolver resolver = new LogTimestampResolver(TIME_ZONE);
+        char[] buffer = new char[LogTimestampFormatter.LENGTH + 2];
+
+        int length = formatter.format(resolver.resolve(1, 2, 3, 4, 5, 6), buffer, 2);
+
+        assertThat(length, is(equalTo(LogTimestampFormatter.LENGTH)));
+        assertThat(new String(buffer, 2, length), is(equalTo("01-02 03:04:05.006")));
+    }
+
+    private String formatWithCalendar(long millis) {
+        Calendar cal = Calendar.getInstance(TIME_ZONE);
+        cal.setTimeInMillis(millis);
+
+        return String.format("%02d-%02d %02d:%02d:%02d.%03d",
+                cal.get(Calendar.MONTH)+1,
+                cal.get(Calendar.DAY_OF_MONTH),
+                cal.get(Calendar.HOUR_OF_DAY),
+                cal.get(Calendar.MINUTE),
+                cal.get(Calendar.SECOND),
+                cal.get(Calendar.MILLISECOND));
+    }
+}
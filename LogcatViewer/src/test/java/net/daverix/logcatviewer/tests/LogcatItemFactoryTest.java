@@ -21,11 +21,15 @@ import net.daverix.logcatviewer.LogItem;
 import net.daverix.logcatviewer.LogItemFactory;
 import net.daverix.logcatviewer.LogcatItemFactory;
 import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.ParseResult;
 import net.daverix.logcatviewer.Priority;
+import net.daverix.logcatviewer.RegexLogcatItemFactory;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.regex.Matcher;
@@ -37,6 +41,16 @@ import static org.junit.Assert.assertThat;
 
 @RunWith(RobolectricGradleTestRunner.class)
 public class LogcatItemFactoryTest {
+    private static final String[] CORPUS = new String[] {
+            "10-12 15:59:01.840 I/GCoreUlr(21516): Successfully inserted location",
+            "10-12 15:56:41.891 D/AlertReceiver( 7526): onReceive: a=android.intent.action.PROVIDER_CHANGED Intent { act=android.intent.action.PROVIDER_CHANGED dat=content://com.android.calendar flg=0x10 cmp=com.google.android.calendar/com.android.calendar.alerts.AlertReceiver }",
+            "10-12 15:56:42.002 W/ActivityManager(  512): Unable to start service Intent { act=com.google.android.c2dm.intent.REGISTER }: not found",
+            "10-12 15:56:42.113 E/AndroidRuntime( 7526): \tat java.lang.reflect.Method.invokeNative(Native Method)",
+            "1-2 03:04:05.006 V/My Tag(1): ",
+            "10-12 15:56:42.224 F/libc    (   99): Fatal signal 11 (SIGSEGV) at 0x00000000 (code=1)",
+            "10-12 15:56:42.335 S/Tag(with)parens( 123): message with (parens)"
+    };
+
     @Test
     public void testShouldCheckIfRegexHasCorrectGroups() {
         final String debugString = "10-12 15:56:41.891 D/AlertReceiver( 7526): onReceive: a=android.intent.action.PROVIDER_CHANGED Intent { act=android.intent.action.PROVIDER_CHANGED dat=content://com.android.calendar flg=0x10 cmp=com.google.android.calendar/com.android.calendar.alerts.AlertReceiver }";
@@ -99,6 +113,118 @@ public class LogcatItemFactoryTest {
         assertThat(actual.getMessage(), is(equalTo("onReceive: a=android.intent.action.PROVIDER_CHANGED Intent { act=android.intent.action.PROVIDER_CHANGED dat=content://com.android.calendar flg=0x10 cmp=com.google.android.calendar/com.android.calendar.alerts.AlertReceiver }")));
     }
 
+    @Test
+    public void testShouldParseCorpusLikeRegexParser() throws ParseException {
+        LogItemFactory factory = getLogItemFactory();
+        LogItemFactory regexFactory = new RegexLogcatItemFactory();
+
+        for(String line : CORPUS) {
+            LogItem actual = factory.create(line);
+            LogItem expected = regexFactory.create(line);
+
+            assertThat(line, actual.getDate(), is(equalTo(expected.getDate())));
+            assertThat(line, actual.getPriority(), is(equalTo(expected.getPriority())));
+            assertThat(line, actual.getTag(), is(equalTo(expected.getTag())));
+            assertThat(line, actual.getPid(), is(equalTo(expected.getPid())));
+            assertThat(line, actual.getMessage(), is(equalTo(expected.getMessage())));
+        }
+    }
+
+    @Test
+    public void testShouldParseBytesLikeString() throws Exception {
+        LogcatItemFactory factory = new LogcatItemFactory();
+        String[] lines = new String[CORPUS.length + 1];
+        System.arraycopy(CORPUS, 0, lines, 0, CORPUS.length);
+        lines[CORPUS.length] = "10-12 15:56:42.446 I/T\u00e5g( 123): sm\u00f6rg\u00e5sbord \u20ac";
+
+        for(String line : lines) {
+            byte[] bytes = ("xx" + line + "\n").getBytes("UTF-8");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+
+            LogItem actual = factory.create(buffer, 2, bytes.length - 1);
+            LogItem expected = factory.create(line);
+
+            assertThat(line, actual.getTimestampMillis(), is(equalTo(expected.getTimestampMillis())));
+            assertThat(line, actual.getPriority(), is(equalTo(expected.getPriority())));
+            assertThat(line, actual.getTag() == expected.getTag(), is(true));
+            assertThat(line, actual.getPid(), is(equalTo(expected.getPid())));
+            assertThat(line, actual.getMessage(), is(equalTo(expected.getMessage())));
+            assertThat(line, buffer.position(), is(equalTo(bytes.length)));
+        }
+    }
+
+    @Test
+    public void testShouldUseFirstPidGroupWhenMessageLooksLikePid() throws ParseException {
+        final String debugString = "10-12 15:56:42.335 I/Tag( 123): message (456): more";
+        LogItem actual = getLogItemFactory().create(debugString);
+
+        assertThat(actual.getTag(), is(equalTo("Tag")));
+        assertThat(actual.getPid(), is(equalTo(123)));
+        assertThat(actual.getMessage(), is(equalTo("message (456): more")));
+    }
+
+    @Test
+    public void testShouldShareTagInstances() throws ParseException {
+        LogItemFactory factory = getLogItemFactory();
+
+        LogItem first = factory.create("10-12 15:59:01.840 I/GCoreUlr(21516): first");
+        LogItem second = factory.create("10-12 15:59:01.841 I/GCoreUlr(21516): second");
+
+        assertThat(second.getTag() == first.getTag(), is(true));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testShouldThrowParseExceptionWhenLineIsNotALogcatLine() throws ParseException {
+        getLogItemFactory().create("--------- beginning of /dev/log/main");
+    }
+
+    @Test
+    public void testShouldReportWhyLineCouldNotBeParsed() {
+        LogcatItemFactory factory = new LogcatItemFactory();
+        ParseResult result = new ParseResult();
+
+        assertThat(factory.create("not a logcat line", result), is(equalTo(ParseResult.BAD_TIMESTAMP)));
+        assertThat(factory.create("10-12 15:59:01.840 X/GCoreUlr(21516): message", result),
+                is(equalTo(ParseResult.BAD_PRIORITY)));
+        assertThat(factory.create("10-12 15:59:01.840 I/GCoreUlr: message", result),
+                is(equalTo(ParseResult.BAD_PID)));
+        assertThat(result.getStatus(), is(equalTo(ParseResult.BAD_PID)));
+    }
+
+    @Test
+    public void testBadLineShouldBeKeptAsRawItemWithTimeOfLastGoodLine() throws ParseException {
+        LogcatItemFactory factory = new LogcatItemFactory();
+        ParseResult result = new ParseResult();
+        String good = "10-12 15:59:01.840 I/GCoreUlr(21516): Successfully inserted location";
+        byte[] bad = "garbage \u00e5\u00e4\u00f6".getBytes(Charset.forName("UTF-8"));
+
+        assertThat(factory.create(good, result), is(equalTo(ParseResult.OK)));
+        long timestamp = result.getItem().getTimestampMillis();
+        assertThat(factory.create(ByteBuffer.wrap(bad), 0, bad.length, result), is(equalTo(ParseResult.BAD_TIMESTAMP)));
+
+        LogItem item = result.getItem();
+        assertThat(item.getPriority(), is(equalTo(Priority.UNKNOWN)));
+        assertThat(item.getMessage(), is(equalTo("garbage \u00e5\u00e4\u00f6")));
+        assertThat(item.getTag(), is(equalTo("")));
+        assertThat(item.getTimestampMillis(), is(equalTo(timestamp)));
+    }
+
+    @Test
+    public void testNonTolerantFactoryShouldBeRejected() {
+        ParseResult result = new ParseResult();
+        LogItemFactory factory = new LogItemFactory() {
+            @Override
+            public LogItem create(String line) throws ParseException {
+                throw new ParseException("never parses");
+            }
+        };
+
+        assertThat(result.parse(factory, "10-12 15:59:01.840 I/GCoreUlr(21516): message"),
+                is(equalTo(ParseResult.REJECTED)));
+        assertThat(result.getItem().getPriority(), is(equalTo(Priority.UNKNOWN)));
+    }
+
     private Calendar getCalendarForDate(Date date) {
         Calendar cal = Calendar.getInstance();
         cal.setTime(date);
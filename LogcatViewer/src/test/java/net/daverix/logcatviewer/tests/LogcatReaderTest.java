@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.ColumnarLogStore;
+import net.daverix.logcatviewer.LogCheckpoint;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogStore;
+import net.daverix.logcatviewer.LogcatItemFactory;
+import net.daverix.logcatviewer.LogcatReader;
+import net.daverix.logcatviewer.ParseException;
+import net.daverix.logcatviewer.ParseFailures;
+import net.daverix.logcatviewer.ParseResult;
+import net.daverix.logcatviewer.Priority;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class LogcatReaderTest {
+    private static final String HEADER = "10-12 15:56:42.100 E/AndroidRuntime( 7526): ";
+    private static final int FRAME_COUNT = 200;
+
+    @Test
+    public void testStackTraceShouldBePublishedOnceWhenComplete() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        RecordingCallback callback = new RecordingCallback();
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, callback);
+        reader.setFlushInterval(Long.MAX_VALUE / 2);
+
+        reader.read(new BufferedReader(new StringReader(createLog())));
+
+        assertThat(store.size(), is(equalTo(2)));
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo(createStackTrace())));
+        assertThat(store.get(store.getFirstSequence() + 1).getMessage(), is(equalTo("Force finishing activity")));
+
+        // appended, updated with all the frames at once, next item appended
+        assertThat(callback.items.size(), is(equalTo(3)));
+        assertThat(callback.messages.get(1), is(equalTo(createStackTrace())));
+    }
+
+    @Test
+    public void testStackTraceFromBytesShouldBePublishedOnceWhenComplete() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        RecordingCallback callback = new RecordingCallback();
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, callback);
+        reader.setFlushInterval(Long.MAX_VALUE / 2);
+
+        reader.read(Channels.newChannel(new ByteArrayInputStream(createLog().getBytes("UTF-8"))));
+
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo(createStackTrace())));
+        assertThat(callback.items.size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void testStackTraceReadOneLineAtATimeShouldBePublishedOnce() throws IOException, ParseException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        RecordingCallback callback = new RecordingCallback();
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, callback);
+        reader.setFlushInterval(Long.MAX_VALUE / 2);
+
+        reader.read(new LineChannel(createLog().getBytes("UTF-8")));
+
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo(createStackTrace())));
+        assertThat(callback.items.size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void testFlushIfDueShouldWaitForFlushInterval() throws ParseException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        RecordingCallback callback = new RecordingCallback();
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, callback);
+        reader.setFlushInterval(Long.MAX_VALUE / 2);
+
+        assertThat(reader.flushIfDue(), is(equalTo(-1L)));
+        reader.readLine(HEADER + "first");
+        reader.readLine(HEADER + "second");
+        assertTrue(reader.flushIfDue() > 0);
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo("first")));
+
+        reader.setFlushInterval(0);
+        assertThat(reader.flushIfDue(), is(equalTo(-1L)));
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo("first\nsecond")));
+        assertThat(callback.items.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void testFlushShouldFinishMessageWithoutNextItem() throws ParseException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        RecordingCallback callback = new RecordingCallback();
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, callback);
+        reader.setFlushInterval(Long.MAX_VALUE / 2);
+
+        reader.readLine(HEADER + "first");
+        reader.readLine(HEADER + "second");
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo("first")));
+
+        reader.flush();
+        reader.flush();
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo("first\nsecond")));
+        assertThat(callback.items.size(), is(equalTo(2)));
+
+        reader.readLine(HEADER + "third");
+        reader.flush();
+        assertThat(store.get(store.getFirstSequence()).getMessage(), is(equalTo("first\nsecond\nthird")));
+        assertThat(store.size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void testBadLinesShouldBeKeptAndCounted() throws IOException {
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, null);
+        String log = HEADER + "before\n" +
+                "garbage\n" +
+                "garbage\n" +
+                "10-12 15:56:42.200 W/ActivityManager: no pid\n" +
+                HEADER + "after\n";
+
+        reader.read(new BufferedReader(new StringReader(log)));
+
+        // bad lines don't continue a message, not even each other
+        assertThat(store.size(), is(equalTo(5)));
+        LogItem bad = store.get(store.getFirstSequence() + 1);
+        assertThat(bad.getPriority(), is(equalTo(Priority.UNKNOWN)));
+        assertThat(bad.getMessage(), is(equalTo("garbage")));
+        assertThat(store.get(store.getFirstSequence() + 4).getMessage(), is(equalTo("after")));
+
+        ParseFailures.Metrics metrics = reader.getParseFailures().getMetrics();
+        assertThat(metrics.getCount(), is(equalTo(3L)));
+        assertThat(metrics.getCount(ParseResult.BAD_TIMESTAMP), is(equalTo(2L)));
+        assertThat(metrics.getCount(ParseResult.BAD_PID), is(equalTo(1L)));
+        assertThat(metrics.getRecentLines().get(2), is(equalTo("10-12 15:56:42.200 W/ActivityManager: no pid")));
+    }
+
+    @Test
+    public void testParseFailuresShouldOnlySampleLinesWhenFull() {
+        ParseFailures failures = new ParseFailures(2, 10);
+        for(int i = 1; i <= 30; i++) {
+            failures.record(ParseResult.REJECTED, "line " + i);
+        }
+
+        ParseFailures.Metrics metrics = failures.getMetrics();
+        assertThat(metrics.getCount(), is(equalTo(30L)));
+        assertThat(metrics.getRecentLines().size(), is(equalTo(2)));
+        assertThat(metrics.getRecentLines().get(0), is(equalTo("line 20")));
+        assertThat(metrics.getRecentLines().get(1), is(equalTo("line 30")));
+    }
+
+    @Test
+    public void testShouldSkipItemsReadBeforeCheckpoint() throws IOException {
+        String before = "10-12 15:56:40.000 I/ActivityManager(  512): long ago\n" +
+                "10-12 15:56:41.900 I/ActivityManager(  512): shortly before\n" +
+                HEADER + "stored\n" +
+                HEADER + "\tcontinued\n";
+        LogStore store = new ColumnarLogStore(16, Long.MAX_VALUE);
+        new LogcatReader(new LogcatItemFactory(), store, null, null)
+                .read(new BufferedReader(new StringReader(before)));
+        assertThat(store.size(), is(equalTo(3)));
+
+        // the source starts a second early and prints a new line in the same millisecond
+        LogcatReader reader = new LogcatReader(new LogcatItemFactory(), store, null, null);
+        LogCheckpoint checkpoint = LogCheckpoint.create(store, LogCheckpoint.DEFAULT_OVERLAP_MILLIS);
+        reader.setCheckpoint(checkpoint);
+        String after = before +
+                "10-12 15:56:42.100 I/Choreographer( 7526): same millisecond\n" +
+                "10-12 15:56:42.200 W/ActivityManager(  512): newer\n" +
+                "10-12 15:56:42.150 W/ActivityManager(  512): logged out of order\n";
+
+        reader.read(new BufferedReader(new StringReader(after)));
+
+        assertThat(checkpoint.getStartMillis(), is(equalTo(checkpoint.getLastTimestampMillis() - 1000)));
+        assertThat(store.size(), is(equalTo(6)));
+        long first = store.getFirstSequence();
+        assertThat(store.get(first + 2).getMessage(), is(equalTo("stored\n\tcontinued")));
+        assertThat(store.get(first + 3).getMessage(), is(equalTo("same millisecond")));
+        assertThat(store.get(first + 4).getMessage(), is(equalTo("newer")));
+        assertThat(store.get(first + 5).getMessage(), is(equalTo("logged out of order")));
+    }
+
+    private static String createStackTrace() {
+        StringBuilder builder = new StringBuilder("java.lang.NullPointerException");
+        for(int i = 0; i < FRAME_COUNT; i++) {
+            builder.append("\n\tat com.example.Main.method").append(i).append("(Main.java:").append(i).append(")");
+        }
+        return builder.toString();
+    }
+
+    private static String createLog() {
+        StringBuilder builder = new StringBuilder();
+        for(String line : createStackTrace().split("\n")) {
+            builder.append(HEADER).append(line).append("\n");
+        }
+        builder.append("10-12 15:56:42.200 W/ActivityManager(  512): Force finishing activity\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns one line per read, like a pipe that logcat writes to line by line.
+     */
+    private static class LineChannel implements ReadableByteChannel {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        public LineChannel(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if(mPosition == mBytes.length)
+                return -1;
+
+            int start = mPosition;
+            while(mPosition < mBytes.length && dst.hasRemaining()) {
+                byte b = mBytes[mPosition++];
+                dst.put(b);
+                if(b == '\n')
+                    break;
+            }
+            return mPosition - start;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class RecordingCallback implements LogcatReader.Callback {
+        public final List<LogItem> items = new ArrayList<LogItem>();
+        public final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void onItemRead(LogItem item) {
+            items.add(item);
+            messages.add(item.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.SpscQueue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SpscQueueTest {
+    @Test
+    public void testShouldHandOverItemsInOrderBetweenThreads() throws InterruptedException {
+        final SpscQueue<Integer> queue = new SpscQueue<Integer>(4);
+        final int count = 200000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for(int i = 0; i < count; i++) {
+                        queue.put(i);
+
+                        // let the consumer park on an empty queue now and then
+                        if(i % 10000 == 0) {
+                            Thread.sleep(1);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        });
+        producer.start();
+
+        for(int i = 0; i < count; i++) {
+            assertThat(queue.take(), is(equalTo(i)));
+        }
+        producer.join();
+
+        assertThat(queue.poll(), is(nullValue()));
+        assertThat(queue.getCapacity(), is(equalTo(4)));
+    }
+
+    @Test
+    public void testShouldReturnNullWhenTimeRunsOut() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<Integer>(4);
+
+        assertThat(queue.poll(1000 * 1000), is(nullValue()));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 David Laurell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.daverix.logcatviewer.tests;
+
+import net.daverix.logcatviewer.LogFilterSpec;
+import net.daverix.logcatviewer.LogHandler;
+import net.daverix.logcatviewer.LogItem;
+import net.daverix.logcatviewer.LogSearchIndex;
+import net.daverix.logcatviewer.LogStore;
+
+import java.util.List;
+
+/**
+ * A {@link LogHandler} that serves the items appended to a {@link LogStore} by the caller instead
+ * of reading logcat, to test and measure the filters with known items. The items are indexed for
+ * searching the first time they are searched, so they should not be changed after that. Nothing
+ * is read, so the source filter and the listeners are ignored.
+ *
+ * The benchmarks compile this class from the test sources too.
+ */
+public class StoreLogHandler implements LogHandler {
+    private final LogStore mLogStore;
+    private final LogSearchIndex mSearchIndex = new LogSearchIndex();
+
+    public StoreLogHandler(LogStore logStore) {
+        if(logStore == null)
+            throw new IllegalArgumentException("logStore is null");
+
+        mLogStore = logStore;
+    }
+
+    public LogStore getLogStore() {
+        return mLogStore;
+    }
+
+    @Override
+    public List<LogItem> getReadItems() {
+        return mLogStore.getItems();
+    }
+
+    @Override
+    public List<LogItem> getItemsSince(long sequence) {
+        return mLogStore.getItemsSince(sequence);
+    }
+
+    @Override
+    public LogItem getItem(long sequence) {
+        return mLogStore.get(sequence);
+    }
+
+    @Override
+    public synchronized long[] search(String query) {
+        indexNewItems();
+        return mSearchIndex.search(query);
+    }
+
+    @Override
+    public synchronized long getIndexedSequence() {
+        indexNewItems();
+        return mSearchIndex.getLastItemSequence();
+    }
+
+    private void indexNewItems() {
+        for(LogItem item : mLogStore.getItemsSince(mSearchIndex.getLastItemSequence())) {
+            mSearchIndex.addItem(item.getSequence(), item.getTag(), item.getMessage());
+        }
+        mSearchIndex.trimBefore(mLogStore.getFirstSequence());
+    }
+
+    @Override
+    public long getFirstSequence() {
+        return mLogStore.getFirstSequence();
+    }
+
+    @Override
+    public long getNextSequence() {
+        return mLogStore.getNextSequence();
+    }
+
+    @Override
+    public int getCapacity() {
+        return mLogStore.getCapacity();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return mLogStore.getEvictedCount();
+    }
+
+    @Override
+    public void setSourceFilter(LogFilterSpec spec) {
+    }
+
+    @Override
+    public void addOnLogItemReadListener(OnLogItemReadListener listener) {
+    }
+
+    @Override
+    public void removeOnLogItemReadListener(OnLogItemReadListener listener) {
+    }
+}